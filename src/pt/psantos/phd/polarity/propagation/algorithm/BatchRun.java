@@ -0,0 +1,508 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+import pt.psantos.phd.polarity.propagation.loaders.ResolvedSeeds;
+import pt.psantos.phd.polarity.propagation.loaders.SeedWordsLoader;
+import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
+
+/**
+ * Runs a batch of propagations (jobs) in the same JVM, instead of one
+ * {@link Run} per job, so the JVM is started and warmed up only once. The
+ * jobs are read from a manifest file, one per line:
+ * <pre>
+ * # graph file, seed words file, output file [, part of speech [, encoding]]
+ * papel.txt, seeds.csv, papel-all.csv
+ * papel.txt, seeds.csv, papel-adj.csv, ADJECTIVE
+ * </pre>
+ * The relative file names are relative to the directory of the manifest. The
+ * part of speech is one of {@link PapelLoader.POS}. Without it, the graph is
+ * loaded as by {@link Run}.
+ *
+ * <p>
+ * The jobs run in parallel, up to a maximum number at a time. Each graph is
+ * loaded once ({@link PapelLoader#loadCompact(java.io.File, java.lang.String, PapelLoader.POS)})
+ * and shared by all the jobs with the same graph file, part of speech and
+ * encoding. The shared graphs are counted: a graph is released when the last
+ * job that uses it ends. The jobs of the same graph are started one after
+ * the other, so the graphs are released as soon as possible.
+ * </p>
+ *
+ * <p>
+ * The time and the memory allocated by each job are printed at the end. A
+ * job that fails does not stop the others.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class BatchRun {
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String encoding = null;
+
+    /** Loaded graphs, by key, while they are used by the jobs */
+    private final Map<String, SharedGraph> graphs = new HashMap<String, SharedGraph>();
+    private int loadedGraphs = 0;
+    private long batchTime = 0;
+
+    /**
+     * Sets the maximum number of jobs running at the same time. By default,
+     * the number of processors.
+     *
+     * @return this object.
+     */
+    public BatchRun setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Sets the encoding of the manifest, and of the files of the jobs without
+     * an encoding. By default, the default charset.
+     *
+     * @return this object.
+     */
+    public BatchRun setEncoding(String encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    /**
+     * Returns the number of graphs loaded by the last batch.
+     */
+    public int getLoadedGraphs() {
+        return loadedGraphs;
+    }
+
+    /**
+     * Returns the time used by the last batch, in nanoseconds.
+     */
+    public long getBatchTime() {
+        return batchTime;
+    }
+
+    /**
+     * Reads the jobs of a manifest file.
+     *
+     * @throws IllegalArgumentException if a line is not valid.
+     */
+    public List<Job> readManifest(File manifest) throws IOException {
+        File directory = manifest.getAbsoluteFile().getParentFile();
+        List<Job> jobs = new ArrayList<Job>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifest), charset(encoding)));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3 || fields.length > 5) {
+                    throw new IllegalArgumentException("Invalid job at line " + lineNumber
+                            + " of " + manifest + ": " + line);
+                }
+                PapelLoader.POS pos = (fields.length > 3
+                        ? PapelLoader.POS.valueOf(fields[3].trim().toUpperCase())
+                        : PapelLoader.POS.ALL);
+                String jobEncoding = (fields.length > 4 ? fields[4].trim() : encoding);
+                jobs.add(new Job(jobs.size() + 1, resolve(directory, fields[0])
+                        , resolve(directory, fields[1]), resolve(directory, fields[2])
+                        , pos, jobEncoding));
+            }
+        } finally {
+            reader.close();
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs the jobs. Returns when all have ended.
+     *
+     * @return the jobs passed as parameter, with their report.
+     * @throws IllegalArgumentException if two jobs write the same output file
+     * (they would write it at the same time). No job is run.
+     */
+    public List<Job> run(List<Job> jobs) {
+        Map<String, Job> byOutput = new HashMap<String, Job>();
+        for (Job job : jobs) {
+            String output = outputKey(job.outputFile);
+            Job other = byOutput.put(output, job);
+            if (other != null) {
+                throw new IllegalArgumentException("Jobs " + other.number + " and " + job.number
+                        + " write the same output file: " + job.outputFile.getPath());
+            }
+        }
+        long start = System.nanoTime();
+
+        // The jobs of the same graph together, in the order of the first one
+        Map<String, List<Job>> byGraph = new LinkedHashMap<String, List<Job>>();
+        for (Job job : jobs) {
+            List<Job> sameGraph = byGraph.get(job.graphKey());
+            if (sameGraph == null) {
+                sameGraph = new ArrayList<Job>();
+                byGraph.put(job.graphKey(), sameGraph);
+            }
+            sameGraph.add(job);
+        }
+        synchronized (graphs) {
+            graphs.clear();
+            for (List<Job> sameGraph : byGraph.values()) {
+                Job first = sameGraph.get(0);
+                graphs.put(first.graphKey(), new SharedGraph(first, sameGraph.size()));
+            }
+        }
+        this.loadedGraphs = byGraph.size();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (List<Job> sameGraph : byGraph.values()) {
+            for (final Job job : sameGraph) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        runJob(job);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tasks.size())));
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        this.batchTime = System.nanoTime() - start;
+        return jobs;
+    }
+
+    /**
+     * Loads the graph of the job (or waits for another job to load it),
+     * propagates the polarity of the seed words and writes the output file.
+     */
+    private void runJob(Job job) {
+        long start = System.nanoTime();
+        long allocatedStart = allocatedBytes();
+        SharedGraph shared;
+        synchronized (graphs) {
+            shared = graphs.get(job.graphKey());
+        }
+        PropagationState state = null;
+        try {
+            long loadStart = System.nanoTime();
+            CsrGraph graph = shared.acquire();
+            job.loadTime = System.nanoTime() - loadStart;
+            job.vertexCount = graph.vertexCount();
+
+            long propagationStart = System.nanoTime();
+            state = PropagationState.allocateDirect(graph.vertexCount());
+            ResolvedSeeds seeds = SeedWordsLoader.load(job.seedWordsFile, job.encoding, graph, state);
+            job.seedCount = seeds.getVertices().length;
+            CsrPropagation.propagate(graph, seeds.getSortedVertices(), state);
+            job.propagationTime = System.nanoTime() - propagationStart;
+
+            long writeStart = System.nanoTime();
+            CsvOutput csv = new CsvOutput(job.outputFile, job.encoding);
+            csv.write(graph, state);
+            if (csv.getFailure() != null) {
+                throw csv.getFailure();
+            }
+            job.writeTime = System.nanoTime() - writeStart;
+            job.stateBytes = PropagationState.byteSize(graph.vertexCount());
+        } catch (Exception ex) {
+            job.error = ex.toString();
+        } finally {
+            if (state != null) {
+                try {
+                    state.close();
+                } catch (IOException ex) {
+                    if (job.error == null) {
+                        job.error = ex.toString();
+                    }
+                }
+            }
+            if (shared.release()) {
+                synchronized (graphs) {
+                    graphs.remove(job.graphKey());
+                }
+            }
+            job.time = System.nanoTime() - start;
+            long allocated = allocatedBytes();
+            job.allocatedBytes = (allocated >= 0 && allocatedStart >= 0 ? allocated - allocatedStart : -1);
+        }
+    }
+
+    /**
+     * Returns a table with the report of each job, and the totals.
+     */
+    public String report(List<Job> jobs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("BATCH: ").append(jobs.size()).append(" jobs, ").append(getLoadedGraphs())
+                .append(" graphs loaded, ").append(getBatchTime() / 1000000).append(" ms\n");
+        sb.append("job,words,seeds,load_ms,propagation_ms,write_ms,total_ms,allocated_mb,state_mb,output\n");
+        long sum = 0;
+        int failed = 0;
+        for (Job job : jobs) {
+            sb.append(job).append('\n');
+            sum += job.time;
+            if (job.error != null) {
+                failed++;
+            }
+        }
+        sb.append("Sum of the job times: ").append(sum / 1000000).append(" ms\n");
+        sb.append("Failed jobs: ").append(failed);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the bytes allocated in the heap by the current thread, or -1 if
+     * the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the canonical path of the output file, so the same file given
+     * by different paths has the same key.
+     */
+    private static String outputKey(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException ex) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static File resolve(File directory, String name) {
+        File file = new File(name.trim());
+        return (file.isAbsolute() ? file : new File(directory, name.trim()));
+    }
+
+    private static Charset charset(String encoding) {
+        return (encoding != null ? Charset.forName(encoding) : Charset.defaultCharset());
+    }
+
+    /**
+     * A job of a batch: the files, and its report after the batch.
+     */
+    public static class Job {
+
+        private final int number;
+        private final File graphFile;
+        private final File seedWordsFile;
+        private final File outputFile;
+        private final PapelLoader.POS pos;
+        private final String encoding;
+
+        /** Report, in nanoseconds and bytes */
+        private int vertexCount = 0;
+        private int seedCount = 0;
+        private long loadTime = 0;
+        private long propagationTime = 0;
+        private long writeTime = 0;
+        private long time = 0;
+        private long allocatedBytes = 0;
+        private long stateBytes = 0;
+        private String error = null;
+
+        public Job(int number, File graphFile, File seedWordsFile, File outputFile
+                , PapelLoader.POS pos, String encoding) {
+            this.number = number;
+            this.graphFile = graphFile;
+            this.seedWordsFile = seedWordsFile;
+            this.outputFile = outputFile;
+            this.pos = (pos != null ? pos : PapelLoader.POS.ALL);
+            this.encoding = encoding;
+        }
+
+        public File getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * Returns the time the job waited for its graph to be loaded (by
+         * itself or by another job), in nanoseconds.
+         */
+        public long getLoadTime() {
+            return loadTime;
+        }
+
+        public long getPropagationTime() {
+            return propagationTime;
+        }
+
+        public long getWriteTime() {
+            return writeTime;
+        }
+
+        /**
+         * Returns the time of the whole job, in nanoseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the bytes allocated in the heap by the job (including the
+         * graph, if it was loaded by this job), or -1 if not known.
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * Returns the error that stopped the job, or {@code null}.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * The jobs with the same key share the graph.
+         */
+        private String graphKey() {
+            return graphFile.getAbsolutePath() + "|" + pos + "|" + encoding;
+        }
+
+        @Override
+        public String toString() {
+            return number + "," + vertexCount + "," + seedCount + "," + loadTime / 1000000
+                    + "," + propagationTime / 1000000 + "," + writeTime / 1000000
+                    + "," + time / 1000000
+                    + "," + (allocatedBytes >= 0 ? String.valueOf(allocatedBytes >> 20) : "?")
+                    + "," + (stateBytes >> 20)
+                    + "," + (error != null ? "ERROR " + error : outputFile.getPath());
+        }
+    }
+
+    /**
+     * A graph shared by several jobs. Loaded by the first job that needs it,
+     * and released by the last one.
+     */
+    private static class SharedGraph {
+
+        private final FutureTask<CsrGraph> loading;
+        private final AtomicInteger references;
+
+        SharedGraph(final Job job, int references) {
+            this.references = new AtomicInteger(references);
+            this.loading = new FutureTask<CsrGraph>(new Callable<CsrGraph>() {
+                @Override
+                public CsrGraph call() throws Exception {
+                    // Without a part of speech, the same graph as Run
+                    PapelLoader loader = new PapelLoader();
+                    return (job.pos == PapelLoader.POS.ALL
+                            ? loader.loadCompact(job.graphFile, job.encoding)
+                            : loader.loadCompact(job.graphFile, job.encoding, job.pos));
+                }
+            });
+        }
+
+        /**
+         * Returns the graph. Loads it if no other job did it, or waits while
+         * other job loads it.
+         */
+        CsrGraph acquire() throws Exception {
+            loading.run(); // Does nothing if the graph is loaded (or being loaded)
+            try {
+                return loading.get();
+            } catch (ExecutionException ex) {
+                throw (ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+            }
+        }
+
+        /**
+         * Returns {@code true} if this was the last job using the graph.
+         */
+        boolean release() {
+            return references.decrementAndGet() == 0;
+        }
+    }
+
+    /**
+     * Runs the jobs of a manifest. Exits with status 1 if the manifest is not
+     * valid or any job failed.
+     * <pre>
+     * USAGE: BatchRun [-t threads] [-e encoding] manifest_file
+     * </pre>
+     */
+    public static void main(String[] args) throws Exception {
+        BatchRun batch = new BatchRun();
+        int i = 0;
+        for (; i < args.length - 1 && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-t")) {
+                batch.setThreads(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-e")) {
+                batch.setEncoding(args[++i]);
+            } else {
+                System.err.println("Unrecognised option " + args[i]);
+                i = args.length;
+            }
+        }
+        if (i != args.length - 1) {
+            System.out.println("USAGE: java -cp polarity-propagation-x.x.x-jar "
+                    + BatchRun.class.getName() + " [-t threads] [-e encoding] manifest_file");
+            System.exit(1);
+        }
+        List<Job> jobs;
+        try {
+            jobs = batch.run(batch.readManifest(new File(args[i])));
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(batch.report(jobs));
+
+        // A nonzero status code if any job failed
+        for (Job job : jobs) {
+            if (job.getError() != null) {
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes checkpoints of a propagation periodically, in a background thread, so
+ * the propagation does not wait for the disk.
+ *
+ * <p>
+ * The propagation takes a snapshot of its state when {@link #isDue()} returns
+ * {@code true}, and passes it to {@link #submit(PropagationCheckpoint)}. If the
+ * previous checkpoint is still being written, the new one is discarded. The
+ * state is copied to a snapshot kept by the checkpointer, and reused by the
+ * next checkpoints. When the propagation ends, {@link #finish()} deletes the
+ * checkpoint file, so a finished propagation is never resumed.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class Checkpointer {
+
+    /** Default time between checkpoints, in milliseconds */
+    public static final long DEFAULT_INTERVAL = 60000;
+
+    private final File file;
+    private final long interval;
+    private final ExecutorService executor;
+    private Future<?> pending = null;
+    private long lastCheckpoint;
+    private int checkpointsWritten = 0;
+    /** Fingerprint of the graph and of the seed words of the propagation */
+    private long fingerprint = 0;
+    /** Copy of the state of the last checkpoint */
+    private PropagationState snapshot = null;
+
+    /**
+     * @param file file where the checkpoints are written. Each checkpoint
+     * replaces the previous one.
+     * @param interval minimum time between checkpoints, in milliseconds.
+     */
+    public Checkpointer(File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+        this.lastCheckpoint = System.currentTimeMillis();
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "checkpoint-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of checkpoints written so far.
+     */
+    public synchronized int getCheckpointsWritten() {
+        return checkpointsWritten;
+    }
+
+    /**
+     * Returns {@code true} if it is time for a new checkpoint and the previous
+     * one was already written.
+     */
+    public boolean isDue() {
+        return System.currentTimeMillis() - lastCheckpoint >= interval
+                && (pending == null || pending.isDone());
+    }
+
+    /**
+     * Writes the checkpoint in the background. The checkpoint must not be
+     * changed after this call.
+     */
+    public void submit(final PropagationCheckpoint checkpoint) {
+        lastCheckpoint = System.currentTimeMillis();
+        if (pending != null && !pending.isDone()) {
+            return;
+        }
+        pending = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkpoint.write(file);
+                    synchronized (Checkpointer.this) {
+                        checkpointsWritten++;
+                    }
+                } catch (IOException ex) {
+                    Logger lgr = Logger.getLogger(Checkpointer.class.getName());
+                    lgr.log(Level.SEVERE, ex.getMessage(), ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when the propagation ends: waits for the checkpoint being
+     * written, and deletes the checkpoint file.
+     */
+    public void finish() throws IOException {
+        waitForPending();
+        new File(file.getPath() + ".tmp").delete();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file.getAbsolutePath());
+        }
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    void setFingerprint(long fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Copies {@code state} to the snapshot, which is only allocated by the
+     * first checkpoint. Must be called only when {@link #isDue()}, so the
+     * snapshot is not being written.
+     */
+    PropagationState snapshot(PropagationState state) {
+        if (snapshot == null || snapshot.size() != state.size()) {
+            snapshot = state.copy();
+        } else {
+            snapshot.copyFrom(state);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Waits for the checkpoint being written, and stops the background thread.
+     */
+    public void close() {
+        waitForPending();
+        executor.shutdown();
+    }
+
+    private void waitForPending() {
+        if (pending == null) {
+            return;
+        }
+        try {
+            pending.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            Logger lgr = Logger.getLogger(Checkpointer.class.getName());
+            lgr.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+        pending = null;
+    }
+}
@@ -0,0 +1,217 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * that propagates each connected component of the graph in parallel.
+ *
+ * <p>
+ * The polarity of a word never leaves its connected component, so the
+ * components are independent: each one is propagated by a worker thread,
+ * starting from its own seed words, in the same order as in
+ * {@link PolarityPropagation}. The result is the same. The components without
+ * seed words are not visited at all. Their words keep without polarity, and
+ * they are only counted, in bulk (see {@link #getUnreachableWords()}).
+ * </p>
+ *
+ * <p>
+ * Each thread only changes the state of the words of its own components, so
+ * the threads do not need to be synchronised.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class ComponentPropagation {
+
+    /** Small components are propagated in batches of at least this number of words */
+    private static final int BATCH_SIZE = 4096;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Report of the last propagation */
+    private int componentCount = 0;
+    private int seededComponents = 0;
+    private int unreachableWords = 0;
+
+    /**
+     * Sets the number of worker threads.
+     *
+     * @return this object.
+     */
+    public ComponentPropagation setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Returns the number of connected components of the graph.
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Returns the number of connected components with seed words.
+     */
+    public int getSeededComponents() {
+        return seededComponents;
+    }
+
+    /**
+     * Returns the number of connected components without seed words.
+     */
+    public int getUnreachableComponents() {
+        return componentCount - seededComponents;
+    }
+
+    /**
+     * Returns the number of words in connected components without seed words.
+     * These words are left without polarity.
+     */
+    public int getUnreachableWords() {
+        return unreachableWords;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept. All the vertices must start without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public PropagationState propagate(CsrGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = CsrPropagation.setSeedWords(graph, seedWords, state);
+        return propagate(graph, seeds, state);
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the state passed as parameter.
+     */
+    public PropagationState propagate(final CsrGraph graph, int[] seeds
+            , final PropagationState state) {
+        int numComponents = graph.componentCount();
+
+        // Groups the seeds by component, keeping their order
+        final int[] seedsStart = new int[numComponents + 1];
+        for (int v : seeds) {
+            seedsStart[graph.component(v) + 1]++;
+        }
+        for (int c = 0; c < numComponents; c++) {
+            seedsStart[c + 1] += seedsStart[c];
+        }
+        final int[] componentSeeds = new int[seeds.length];
+        int[] cursor = Arrays.copyOf(seedsStart, numComponents);
+        for (int v : seeds) {
+            componentSeeds[cursor[graph.component(v)]++] = v;
+        }
+
+        // Only the components with seeds are propagated. The biggest first.
+        List<Integer> seeded = new ArrayList<Integer>();
+        int reachableWords = 0;
+        for (int c = 0; c < numComponents; c++) {
+            if (seedsStart[c + 1] > seedsStart[c]) {
+                seeded.add(c);
+                reachableWords += graph.componentSize(c);
+            }
+        }
+        Collections.sort(seeded, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer c1, Integer c2) {
+                return graph.componentSize(c2) - graph.componentSize(c1);
+            }
+        });
+
+        this.componentCount = numComponents;
+        this.seededComponents = seeded.size();
+        this.unreachableWords = graph.vertexCount() - reachableWords;
+
+        // Shared by all threads. Each thread only uses the bytes of its words.
+        final byte[] status = new byte[graph.vertexCount()];
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int i = 0;
+        while (i < seeded.size()) {
+            // A big component alone, or several small ones together
+            int batchWords = 0;
+            int j = i;
+            while (j < seeded.size() && batchWords < BATCH_SIZE) {
+                batchWords += graph.componentSize(seeded.get(j++));
+            }
+            final List<Integer> batch = seeded.subList(i, j);
+            // The first component of the batch is the biggest one
+            final int queueSize = graph.componentSize(batch.get(0));
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int[] nodesToVisit = new int[queueSize];
+                    for (int c : batch) {
+                        int tail = 0;
+                        for (int s = seedsStart[c]; s < seedsStart[c + 1]; s++) {
+                            int v = componentSeeds[s];
+                            if (status[v] == CsrPropagation.NOT_VISITED) {
+                                status[v] = CsrPropagation.IN_QUEUE;
+                                nodesToVisit[tail++] = v;
+                            }
+                        }
+                        CsrPropagation.propagate(graph, status, nodesToVisit, tail, state, null, null);
+                    }
+                    return null;
+                }
+            });
+            i = j;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tasks.size())));
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Propagation interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return "CONNECTED COMPONENTS: " + getComponentCount() +
+                "\nWith seed words: " + getSeededComponents() +
+                "\nWithout seed words: " + getUnreachableComponents() +
+                "\nWords without seed words in their component: " + getUnreachableWords();
+    }
+}
@@ -0,0 +1,432 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Estimates the quality of the propagation by cross-validation over the seed
+ * words: the seed words are split in {@code k} folds, and each fold is
+ * propagated from the seed words of the other folds (leave-one-out if each
+ * seed word is a fold). The polarity given to the held-out seed words is then
+ * compared with their real polarity.
+ *
+ * <p>
+ * The graph is read only once and shared by all the folds, as an immutable
+ * {@link CsrGraph}. The folds are propagated in parallel
+ * ({@link CsrPropagation}), and each thread reuses its own counters
+ * ({@link PropagationState}) and queue from one fold to the next, so the
+ * graph is never changed and nothing is allocated per fold.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class CrossValidation {
+
+    /** Number of folds. 0 for leave-one-out */
+    private int folds = 10;
+    /** Number of times the seed words are shuffled and split in folds */
+    private int repetitions = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long randomSeed = 0;
+
+    /**
+     * Report of the last evaluation. confusion[gold][predicted]: the gold
+     * polarity is {@link PropagationState#POSITIVE}, {@link PropagationState#NEGATIVE}
+     * or {@link PropagationState#NEUTRAL}, and the predicted polarity any of
+     * the polarities of {@link PropagationState}.
+     */
+    private long[][] confusion = new long[5][5];
+    private double[] foldScores = new double[0];
+    private int seedCount = 0;
+    private int foldCount = 0;
+    private long evaluationTime = 0;
+
+    /**
+     * Sets the number of folds. With 0 (or the number of seed words), each
+     * seed word is a fold (leave-one-out).
+     *
+     * @return this object.
+     */
+    public CrossValidation setFolds(int folds) {
+        if (folds < 0 || folds == 1) {
+            throw new IllegalArgumentException("Invalid number of folds: " + folds);
+        }
+        this.folds = folds;
+        return this;
+    }
+
+    /**
+     * Sets the number of times the seed words are shuffled and split in folds.
+     * The results of all the repetitions are added together.
+     *
+     * @return this object.
+     */
+    public CrossValidation setRepetitions(int repetitions) {
+        if (repetitions < 1) {
+            throw new IllegalArgumentException("Invalid number of repetitions: " + repetitions);
+        }
+        this.repetitions = repetitions;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads. By default, the number of processors.
+     *
+     * @return this object.
+     */
+    public CrossValidation setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Sets the seed of the random generator used for splitting the seed words
+     * in folds. The same seed gives the same folds.
+     *
+     * @return this object.
+     */
+    public CrossValidation setRandomSeed(long randomSeed) {
+        this.randomSeed = randomSeed;
+        return this;
+    }
+
+    /**
+     * Returns the number of seed words of the last evaluation.
+     */
+    public int getSeedCount() {
+        return seedCount;
+    }
+
+    /**
+     * Returns the number of folds propagated in the last evaluation (of all
+     * the repetitions).
+     */
+    public int getFoldCount() {
+        return foldCount;
+    }
+
+    /**
+     * Returns the number of held-out seed words with the real polarity
+     * {@code gold} that were given the polarity {@code predicted}, in the last
+     * evaluation. Both are polarities of {@link PropagationState}.
+     */
+    public long getConfusion(byte gold, byte predicted) {
+        return confusion[gold][predicted];
+    }
+
+    /**
+     * Returns the number of held-out seed words (of all the repetitions).
+     */
+    public long getHeldOutCount() {
+        long count = 0;
+        for (long[] row : confusion) {
+            for (long c : row) {
+                count += c;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of held-out seed words that were given a positive,
+     * negative or neutral polarity.
+     */
+    public long getClassifiedCount() {
+        long count = 0;
+        for (long[] row : confusion) {
+            count += row[PropagationState.POSITIVE] + row[PropagationState.NEGATIVE]
+                    + row[PropagationState.NEUTRAL];
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of held-out seed words that were given their real
+     * polarity.
+     */
+    public long getCorrectCount() {
+        return confusion[PropagationState.POSITIVE][PropagationState.POSITIVE]
+                + confusion[PropagationState.NEGATIVE][PropagationState.NEGATIVE]
+                + confusion[PropagationState.NEUTRAL][PropagationState.NEUTRAL];
+    }
+
+    /**
+     * Returns the fraction of the classified held-out seed words that were
+     * given their real polarity.
+     */
+    public double getPrecision() {
+        return ratio(getCorrectCount(), getClassifiedCount());
+    }
+
+    /**
+     * Returns the fraction of the held-out seed words that were given their
+     * real polarity. The words left without polarity, or with an ambiguous
+     * polarity, count as errors.
+     */
+    public double getRecall() {
+        return ratio(getCorrectCount(), getHeldOutCount());
+    }
+
+    public double getF1() {
+        double precision = getPrecision();
+        double recall = getRecall();
+        return (precision + recall > 0 ? 2 * precision * recall / (precision + recall) : 0);
+    }
+
+    /**
+     * Returns the agreement between the real polarity and the polarity given
+     * to the classified held-out seed words, corrected for the agreement
+     * expected by chance (Cohen's kappa).
+     */
+    public double getAgreement() {
+        byte[] polarities = {PropagationState.POSITIVE, PropagationState.NEGATIVE
+                , PropagationState.NEUTRAL};
+        long classified = getClassifiedCount();
+        if (classified == 0) {
+            return 0;
+        }
+        double expected = 0;
+        for (byte p : polarities) {
+            long gold = 0;
+            long predicted = 0;
+            for (byte q : polarities) {
+                gold += confusion[p][q];
+                predicted += confusion[q][p];
+            }
+            expected += (double) gold * predicted;
+        }
+        expected /= (double) classified * classified;
+        double observed = ratio(getCorrectCount(), classified);
+        return (expected < 1 ? (observed - expected) / (1 - expected) : 1);
+    }
+
+    /**
+     * Returns the mean of the recall of each fold.
+     */
+    public double getFoldMean() {
+        double sum = 0;
+        for (double score : foldScores) {
+            sum += score;
+        }
+        return ratio(sum, foldScores.length);
+    }
+
+    /**
+     * Returns the standard deviation of the recall of each fold.
+     */
+    public double getFoldStandardDeviation() {
+        double mean = getFoldMean();
+        double sum = 0;
+        for (double score : foldScores) {
+            sum += (score - mean) * (score - mean);
+        }
+        return Math.sqrt(ratio(sum, foldScores.length));
+    }
+
+    /**
+     * Returns the time used by the last evaluation, in nanoseconds.
+     */
+    public long getEvaluationTime() {
+        return evaluationTime;
+    }
+
+    /**
+     * Evaluates the propagation over the graph, with the seed words passed as
+     * parameter. The seed words not found in the graph are ignored, as well as
+     * the repeated ones (only the first is kept).
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords seed words classified with a polarity.
+     * @return this object, with the report of the evaluation.
+     * @throws IllegalArgumentException if the graph does not contain enough
+     * seed words for the number of folds.
+     */
+    public CrossValidation evaluate(LexicalGraph graph, List<Word> seedWords) {
+        int[] seeds = new int[seedWords.size()];
+        byte[] polarities = new byte[seedWords.size()];
+        boolean[] found = new boolean[graph.vertexCount()];
+        int count = 0;
+        for (Word w : seedWords) {
+            int v = graph.vertexId(w.getWord());
+            if (v >= 0 && !found[v]) {
+                found[v] = true;
+                seeds[count] = v;
+                polarities[count++] = PropagationState.polarity(w.getPositiveCounter()
+                        , w.getNegativeCounter(), w.getNeutralCounter());
+            }
+        }
+        return evaluate(graph, Arrays.copyOf(seeds, count), Arrays.copyOf(polarities, count));
+    }
+
+    /**
+     * Evaluates the propagation over the graph, with the seed vertices passed
+     * as parameter.
+     *
+     * @param graph an undirected graph of words.
+     * @param seeds the seed vertices, without repetitions.
+     * @param polarities the polarity of each seed vertex:
+     * {@link PropagationState#POSITIVE}, {@link PropagationState#NEGATIVE} or
+     * {@link PropagationState#NEUTRAL}.
+     * @return this object, with the report of the evaluation.
+     * @throws IllegalArgumentException if there are not enough seed vertices
+     * for the number of folds.
+     */
+    public CrossValidation evaluate(LexicalGraph graph, final int[] seeds
+            , final byte[] polarities) {
+        long start = System.nanoTime();
+        final int k = (folds == 0 ? seeds.length : folds);
+        if (seeds.length < Math.max(2, k)) {
+            throw new IllegalArgumentException("Not enough seed words for " + k
+                    + " folds: " + seeds.length);
+        }
+        final CsrGraph csr = CsrGraph.copyOf(graph);
+
+        // fold[r * n + i] = fold of the seed i in the repetition r
+        final int n = seeds.length;
+        final int[] fold = new int[repetitions * n];
+        Random random = new Random(randomSeed);
+        int[] order = new int[n];
+        for (int r = 0; r < repetitions; r++) {
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            for (int i = 0; i < n; i++) {
+                fold[r * n + order[i]] = i % k;
+            }
+        }
+
+        // Each thread takes the next fold, and keeps its own results
+        final int numTasks = repetitions * k;
+        final double[] scores = new double[numTasks];
+        final AtomicInteger nextTask = new AtomicInteger();
+        int numThreads = Math.min(threads, numTasks);
+        List<Callable<long[][]>> workers = new ArrayList<Callable<long[][]>>();
+        for (int t = 0; t < numThreads; t++) {
+            workers.add(new Callable<long[][]>() {
+                @Override
+                public long[][] call() {
+                    long[][] matrix = new long[5][5];
+                    PropagationState state = PropagationState.allocateDirect(csr.vertexCount());
+                    byte[] status = new byte[csr.vertexCount()];
+                    int[] nodesToVisit = new int[csr.vertexCount()];
+                    for (int task = nextTask.getAndIncrement(); task < numTasks
+                            ; task = nextTask.getAndIncrement()) {
+                        scores[task] = propagateFold(csr, seeds, polarities, fold
+                                , task / k, task % k, state, status, nodesToVisit, matrix);
+                    }
+                    return matrix;
+                }
+            });
+        }
+
+        long[][] total = new long[5][5];
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (Future<long[][]> result : executor.invokeAll(workers)) {
+                long[][] matrix = result.get();
+                for (int g = 0; g < total.length; g++) {
+                    for (int p = 0; p < total[g].length; p++) {
+                        total[g][p] += matrix[g][p];
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Evaluation interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        this.confusion = total;
+        this.foldScores = scores;
+        this.seedCount = n;
+        this.foldCount = numTasks;
+        this.evaluationTime = System.nanoTime() - start;
+        return this;
+    }
+
+    /**
+     * Propagates the fold {@code f} of the repetition {@code r} from the seed
+     * vertices of the other folds, and adds the polarity given to the held-out
+     * seed vertices to {@code matrix}.
+     *
+     * @return the recall of the fold.
+     */
+    private static double propagateFold(CsrGraph graph, int[] seeds, byte[] polarities
+            , int[] fold, int r, int f, PropagationState state, byte[] status
+            , int[] nodesToVisit, long[][] matrix) {
+        int n = seeds.length;
+        state.clear();
+        Arrays.fill(status, CsrPropagation.NOT_VISITED);
+
+        // The training seeds are visited in increasing order of their ids
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (fold[r * n + i] != f) {
+                state.setSeed(seeds[i], polarities[i]);
+                nodesToVisit[tail++] = seeds[i];
+            }
+        }
+        Arrays.sort(nodesToVisit, 0, tail);
+        for (int i = 0; i < tail; i++) {
+            status[nodesToVisit[i]] = CsrPropagation.IN_QUEUE;
+        }
+        CsrPropagation.propagate(graph, status, nodesToVisit, tail, state, null, null);
+
+        int heldOut = 0;
+        int correct = 0;
+        for (int i = 0; i < n; i++) {
+            if (fold[r * n + i] == f) {
+                byte predicted = state.polarity(seeds[i]);
+                matrix[polarities[i]][predicted]++;
+                heldOut++;
+                if (predicted == polarities[i]) {
+                    correct++;
+                }
+            }
+        }
+        return ratio(correct, heldOut);
+    }
+
+    private static double ratio(double a, double b) {
+        return (b > 0 ? a / b : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "CROSS-VALIDATION: " + getSeedCount() + " seed words, "
+                + getFoldCount() + " folds"
+                + "\nHeld-out seed words: " + getHeldOutCount()
+                + "\nWith polarity: " + getClassifiedCount()
+                + "\nWith the right polarity: " + getCorrectCount()
+                + "\nPrecision: " + String.format("%.4f", getPrecision())
+                + "\nRecall: " + String.format("%.4f", getRecall())
+                + "\nF1: " + String.format("%.4f", getF1())
+                + "\nAgreement (kappa): " + String.format("%.4f", getAgreement())
+                + "\nRecall per fold: " + String.format("%.4f +- %.4f", getFoldMean(), getFoldStandardDeviation())
+                + "\nTime: " + (getEvaluationTime() / 1000000) + " ms";
+    }
+}
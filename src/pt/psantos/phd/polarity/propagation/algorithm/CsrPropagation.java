@@ -0,0 +1,351 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * for graphs seen through int ids ({@link LexicalGraph}), such as the graphs
+ * kept in primitive arrays ({@link pt.psantos.phd.polarity.propagation.graph.CsrGraph}).
+ * The counters and the iteration of each word are kept outside the Java heap
+ * ({@link PropagationState}).
+ *
+ * <p>
+ * The words are visited in the same order as in {@link PolarityPropagation},
+ * so the result is the same.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class CsrPropagation {
+
+    /** Status of each vertex */
+    static final byte NOT_VISITED = 0;
+    static final byte IN_QUEUE = 1;
+    static final byte VISITED = 2;
+
+    /** Counters that receive a vote (see {@link #counter(byte, boolean)}) */
+    static final int NO_COUNTER = -1;
+    static final int POSITIVE_COUNTER = 0;
+    static final int NEGATIVE_COUNTER = 1;
+    static final int NEUTRAL_COUNTER = 2;
+
+    /** The time of a checkpoint is checked every CHECKPOINT_CHECK_MASK + 1 vertices */
+    private static final int CHECKPOINT_CHECK_MASK = 4095;
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept. All the vertices must start without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public static PropagationState propagate(LexicalGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = setSeedWords(graph, seedWords, state);
+        return propagate(graph, seeds, state);
+    }
+
+    /**
+     * Copies the state of the seed words to the graph vertices with the same
+     * words.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the vertices of the seed words found in the graph, sorted by id
+     * (the order in which {@link PolarityPropagation} visits them).
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public static int[] setSeedWords(LexicalGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = new int[seedWords.size()];
+        HashMap<Integer, Word> seedWordsAux = new HashMap<Integer, Word>();
+        int seedWordsFound = 0;
+        for (Word seedWord : seedWords) {
+            int v = graph.vertexId(seedWord.getWord());
+            // If the same word is repeated, the first one is used.
+            if (v >= 0 && !seedWordsAux.containsKey(v)) {
+                state.copyState(v, seedWord);
+                seeds[seedWordsFound++] = v;
+                seedWordsAux.put(v, seedWord);
+            }
+        }
+
+        // If no seed words were found in the graph
+        if (seedWordsFound <= 0) {
+            throw new IllegalArgumentException("Seed words not found in the graph.");
+        }
+
+        seeds = Arrays.copyOf(seeds, seedWordsFound);
+        Arrays.sort(seeds);
+        for (int v : seeds) {
+            System.out.println(seedWordsAux.get(v));
+        }
+        return seeds;
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the state passed as parameter.
+     */
+    public static PropagationState propagate(LexicalGraph graph, int[] seeds
+            , PropagationState state) {
+        return propagate(graph, seeds, state, null);
+    }
+
+    /**
+     * Same as {@link #propagate(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, int[], PropagationState)},
+     * but writes checkpoints periodically. The checkpoint file is deleted when
+     * the propagation ends.
+     *
+     * @param checkpointer writes the checkpoints, or {@code null} for not
+     * writing checkpoints.
+     */
+    public static PropagationState propagate(LexicalGraph graph, int[] seeds
+            , PropagationState state, Checkpointer checkpointer) {
+        return propagate(graph, seeds, state, checkpointer, null);
+    }
+
+    /**
+     * Same as {@link #propagate(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, int[], PropagationState, Checkpointer)},
+     * but records which words gave each word its polarity.
+     *
+     * @param trace where the contributions to each vertex are recorded, or
+     * {@code null} for not recording them. The trace is not kept in the
+     * checkpoints.
+     */
+    public static PropagationState propagate(LexicalGraph graph, int[] seeds
+            , PropagationState state, Checkpointer checkpointer, PropagationTrace trace) {
+        if (checkpointer != null) {
+            checkpointer.setFingerprint(fingerprint(graph, seeds, state));
+        }
+        int n = graph.vertexCount();
+        byte[] status = new byte[n];
+        // Each vertex is added at most once to the queue
+        int[] nodesToVisit = new int[n];
+        int tail = 0;
+
+        for (int v : seeds) {
+            if (status[v] == NOT_VISITED) {
+                status[v] = IN_QUEUE;
+                nodesToVisit[tail++] = v;
+            }
+        }
+        propagate(graph, status, nodesToVisit, tail, state, checkpointer, trace);
+        return state;
+    }
+
+    /**
+     * Resumes a propagation from a checkpoint.
+     *
+     * @param graph the graph of the interrupted propagation.
+     * @param seeds the seed vertices of the interrupted propagation, in the
+     * order they were visited.
+     * @param state the state of the seed vertices, as given to the interrupted
+     * propagation. It is replaced by the state of the checkpoint, and the
+     * propagation continues in it.
+     * @param checkpoint the last checkpoint of the interrupted propagation.
+     * @param checkpointer writes new checkpoints, or {@code null} for not
+     * writing checkpoints.
+     * @return the state passed as parameter, with the propagation finished.
+     * @throws IllegalArgumentException if the checkpoint was not created for
+     * this graph and these seed vertices.
+     */
+    public static PropagationState resume(LexicalGraph graph, int[] seeds, PropagationState state
+            , PropagationCheckpoint checkpoint, Checkpointer checkpointer) {
+        int n = graph.vertexCount();
+        long fingerprint = fingerprint(graph, seeds, state);
+        if (checkpoint.getVertexCount() != n || checkpoint.getEdgeCount() != graph.edgeCount()
+                || checkpoint.getFingerprint() != fingerprint) {
+            throw new IllegalArgumentException("The checkpoint was not created for this graph"
+                    + " and these seed words.");
+        }
+        if (checkpointer != null) {
+            checkpointer.setFingerprint(fingerprint);
+        }
+        byte[] status = new byte[n];
+        for (int v = 0; v < n; v++) {
+            if (checkpoint.isVisited(v)) {
+                status[v] = VISITED;
+            }
+        }
+        int[] nodesToVisit = new int[n];
+        int[] frontier = checkpoint.getFrontier();
+        for (int i = 0; i < frontier.length; i++) {
+            status[frontier[i]] = IN_QUEUE;
+            nodesToVisit[i] = frontier[i];
+        }
+        state.copyFrom(checkpoint.getState());
+        propagate(graph, status, nodesToVisit, frontier.length, state, checkpointer, null);
+        return state;
+    }
+
+    /**
+     * Returns a fingerprint of the graph (its words ids and relations) and of
+     * the seed vertices (their order and counters), kept in the checkpoints so
+     * a propagation is only resumed with the same graph and seed words.
+     */
+    public static long fingerprint(LexicalGraph graph, int[] seeds, PropagationState state) {
+        long h = mix(mix(0, graph.vertexCount()), graph.edgeCount());
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            h = mix(h, graph.edgesEnd(v));
+            for (int e = graph.edgesStart(v), end = graph.edgesEnd(v); e < end; e++) {
+                h = mix(mix(h, graph.target(e)), graph.relationCode(e));
+            }
+        }
+        h = mix(h, seeds.length);
+        for (int v : seeds) {
+            h = mix(mix(h, v), state.getPositiveCounter(v));
+            h = mix(mix(h, state.getNegativeCounter(v)), state.getNeutralCounter(v));
+        }
+        return h;
+    }
+
+    private static long mix(long h, int x) {
+        h = (h ^ (x & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Visits the vertices in the queue {@code nodesToVisit[0..tail-1]}, and
+     * the vertices they reach. The queue must have room for all the vertices
+     * reached. If {@code trace} is not {@code null}, the contributions are
+     * recorded in it.
+     */
+    static void propagate(LexicalGraph graph, byte[] status, int[] nodesToVisit
+            , int tail, PropagationState state, Checkpointer checkpointer
+            , PropagationTrace trace) {
+        int head = 0;
+
+        while (head < tail) {
+            // Checking the time is not free. Check it from time to time.
+            if (checkpointer != null && (head & CHECKPOINT_CHECK_MASK) == 0
+                    && checkpointer.isDue()) {
+                checkpointer.submit(checkpoint(graph, status, nodesToVisit, head, tail, state
+                        , checkpointer));
+            }
+
+            int node = nodesToVisit[head++];
+            byte polarity = state.polarity(node);
+            int nextIteration = state.getIteration(node) + 1;
+            // Only the words with a polarity contribute to their neighbors
+            boolean traced = (trace != null && polarity != PropagationState.NOT_SET
+                    && polarity != PropagationState.AMBIGUOUS);
+
+            for (int e = graph.edgesStart(node), end = graph.edgesEnd(node); e < end; e++) {
+                int neighborNode = graph.target(e);
+
+                // Avoids propagation back a polarity received fron its neighbors
+                if (status[neighborNode] == VISITED) {
+                    continue;
+                }
+
+                if (!state.isIterationSet(neighborNode)) {
+                    state.setIteration(neighborNode, nextIteration);
+                }
+
+                vote(state, neighborNode, polarity, graph.relationCode(e) == LexicalGraph.SYNONYM);
+                if (traced) {
+                    trace.record(neighborNode, node, graph.relationCode(e));
+                }
+
+                // If the neighbor is neither on the queue nor visited, add it to the queue.
+                if (status[neighborNode] == NOT_VISITED) {
+                    status[neighborNode] = IN_QUEUE;
+                    nodesToVisit[tail++] = neighborNode;
+                }
+            }
+            status[node] = VISITED;
+        }
+
+        if (checkpointer != null) {
+            try {
+                checkpointer.finish();
+            } catch (IOException ex) {
+                Logger lgr = Logger.getLogger(CsrPropagation.class.getName());
+                lgr.log(Level.SEVERE, ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Adds the vote of a word with the polarity {@code polarity} to the
+     * counters of its neighbor {@code v}, through a synonym or an antonym.
+     * All the propagations over int ids count the votes here.
+     */
+    static void vote(PropagationState state, int v, byte polarity, boolean synonym) {
+        switch (counter(polarity, synonym)) {
+            case POSITIVE_COUNTER:
+                state.increasePosCounter(v);
+                break;
+            case NEGATIVE_COUNTER:
+                state.increaseNegCounter(v);
+                break;
+            case NEUTRAL_COUNTER:
+                state.increaseNeutralCounter(v);
+                break;
+        }
+    }
+
+    /**
+     * Returns the counter that receives the vote of a word with the polarity
+     * {@code polarity}, through a synonym or an antonym: a positive word votes
+     * positive through a synonym and negative through an antonym, a negative
+     * word the opposite, and a neutral word always votes neutral.
+     *
+     * @return {@link #POSITIVE_COUNTER}, {@link #NEGATIVE_COUNTER},
+     * {@link #NEUTRAL_COUNTER}, or {@link #NO_COUNTER} if a word with this
+     * polarity does not vote.
+     */
+    static int counter(byte polarity, boolean synonym) {
+        if (polarity == PropagationState.POSITIVE) {
+            return (synonym ? POSITIVE_COUNTER : NEGATIVE_COUNTER);
+        } else if (polarity == PropagationState.NEGATIVE) {
+            return (synonym ? NEGATIVE_COUNTER : POSITIVE_COUNTER);
+        } else if (polarity == PropagationState.NEUTRAL) {
+            return NEUTRAL_COUNTER;
+        }
+        return NO_COUNTER;
+    }
+
+    /**
+     * Takes a snapshot of the propagation. Only the copy is done in the
+     * propagation thread; the snapshot is written by the {@link Checkpointer}.
+     */
+    private static PropagationCheckpoint checkpoint(LexicalGraph graph, byte[] status
+            , int[] nodesToVisit, int head, int tail, PropagationState state
+            , Checkpointer checkpointer) {
+        long[] visited = new long[(status.length + 63) >>> 6];
+        for (int v = 0; v < status.length; v++) {
+            if (status[v] == VISITED) {
+                visited[v >>> 6] |= 1L << v;
+            }
+        }
+        return new PropagationCheckpoint(graph.vertexCount(), graph.edgeCount()
+                , checkpointer.getFingerprint(), Arrays.copyOfRange(nodesToVisit, head, tail)
+                , visited, checkpointer.snapshot(state));
+    }
+}
@@ -0,0 +1,155 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Implementation of the polarity propagation over a <b>directed graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.DirectedPseudograph, java.util.List)})
+ * for graphs kept in primitive arrays ({@link DirectedCsrGraph}). The counters
+ * and the iteration of each word are kept outside the Java heap
+ * ({@link PropagationState}).
+ *
+ * <p>
+ * The words are visited in the same order as in {@link PolarityPropagation},
+ * so the result is the same: unlike the undirected propagation, the polarity
+ * is also propagated to the words already visited. The queue and the visited
+ * words are kept in a status array, instead of the list and the set searched
+ * for each relation.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class DirectedCsrPropagation {
+
+    private boolean avoidBackPropagation = false;
+
+    /**
+     * If {@code true}, the polarity is not propagated back to a visited word
+     * that has a relation to the current word (the option left disabled in
+     * {@link PolarityPropagation}). Disabled by default.
+     *
+     * @return this object.
+     */
+    public DirectedCsrPropagation setAvoidBackPropagation(boolean avoidBackPropagation) {
+        this.avoidBackPropagation = avoidBackPropagation;
+        return this;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph a directed graph of words.
+     * @param seedWords initial set of words classified with a polarity. The
+     * words are visited in this order.
+     * @param state where the counters and the iteration of each vertex are
+     * kept. All the vertices must start without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public PropagationState propagate(DirectedCsrGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        return propagate(graph, setSeedWords(graph, seedWords, state), state);
+    }
+
+    /**
+     * Copies the state of the seed words to the graph vertices with the same
+     * words.
+     *
+     * @return the vertices of the seed words found in the graph, in the order
+     * of {@code seedWords}. If the same word is repeated, the first one is
+     * used.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public static int[] setSeedWords(LexicalGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = new int[seedWords.size()];
+        boolean[] found = new boolean[graph.vertexCount()];
+        int count = 0;
+        for (Word seedWord : seedWords) {
+            int v = graph.vertexId(seedWord.getWord());
+            if (v >= 0 && !found[v]) {
+                found[v] = true;
+                state.copyState(v, seedWord);
+                seeds[count++] = v;
+            }
+        }
+
+        // If no seed words were found in the graph
+        if (count <= 0) {
+            throw new IllegalArgumentException("Seed words not found in the graph.");
+        }
+        int[] result = new int[count];
+        System.arraycopy(seeds, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param graph a directed graph of words.
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the state passed as parameter.
+     */
+    public PropagationState propagate(DirectedCsrGraph graph, int[] seeds
+            , PropagationState state) {
+        int n = graph.vertexCount();
+        byte[] status = new byte[n];
+        // Each vertex is added at most once to the queue
+        int[] nodesToVisit = new int[n];
+        int tail = 0;
+        for (int v : seeds) {
+            if (status[v] == CsrPropagation.NOT_VISITED) {
+                status[v] = CsrPropagation.IN_QUEUE;
+                nodesToVisit[tail++] = v;
+            }
+        }
+
+        int head = 0;
+        while (head < tail) {
+            int node = nodesToVisit[head++];
+            byte polarity = state.polarity(node);
+
+            for (int e = graph.edgesStart(node), end = graph.edgesEnd(node); e < end; e++) {
+                int neighborNode = graph.target(e);
+
+                // Avoids propagation back a polarity received fron its neighbors
+                if (avoidBackPropagation && status[neighborNode] == CsrPropagation.VISITED
+                        && graph.containsEdge(neighborNode, node)) {
+                    continue;
+                }
+
+                // For each neighbor visited for the 1rst time, set the iteration
+                // counter to value of iteration counter of the current word + 1.
+                if (!state.isIterationSet(neighborNode)) {
+                    state.setIteration(neighborNode, state.getIteration(node) + 1);
+                }
+
+                CsrPropagation.vote(state, neighborNode, polarity
+                        , graph.relationCode(e) == LexicalGraph.SYNONYM);
+                // A relation to itself changes the polarity of the current word
+                if (neighborNode == node) {
+                    polarity = state.polarity(node);
+                }
+
+                // If the neighbor is neither on the queue nor visited, add it to the queue.
+                if (status[neighborNode] == CsrPropagation.NOT_VISITED) {
+                    status[neighborNode] = CsrPropagation.IN_QUEUE;
+                    nodesToVisit[tail++] = neighborNode;
+                }
+            }
+            status[node] = CsrPropagation.VISITED;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,325 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.Arrays;
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * with a direction-optimizing breadth-first search. The result is the same as
+ * in {@link PolarityPropagation}.
+ *
+ * <p>
+ * The words are visited level by level. Each level is expanded in one of two
+ * ways:
+ * <ul>
+ * <li><b>top-down</b>, when the level is small: the words of the level are
+ * visited in queue order and send their votes to their neighbors, as in
+ * {@link CsrPropagation};</li>
+ * <li><b>bottom-up</b>, when the relations of the level are more than the
+ * relations of the words not seen yet divided by {@link #DEFAULT_ALPHA}:
+ * <ol>
+ * <li>the words of the level are visited in queue order, but only send votes
+ * to the words of the same level still in the queue (only this pass depends
+ * on the order);</li>
+ * <li>each word not seen yet looks for its neighbors in the level (a bitset)
+ * and counts their votes. Its position in the next level is given by the
+ * first neighbor in the queue that has it as neighbor, and by its position
+ * among the neighbors of that word.</li>
+ * </ol>
+ * </li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> unlike the usual direction-optimizing BFS, a bottom-up word can
+ * not stop at its first neighbor in the level, since it needs the votes of all
+ * of them, and the first pass still reads all the relations of the level. So,
+ * the bottom-up levels read more relations than the top-down ones, and the gain
+ * (if any) comes from replacing the random writes of the votes by sequential
+ * scans. Use {@code tests.DirectionOptimizingBenchmark} to compare both modes
+ * on a graph.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class DirectionOptimizingPropagation {
+
+    /**
+     * A level is expanded bottom-up if its relations are more than the
+     * relations of the words not seen yet divided by this value.
+     */
+    public static final int DEFAULT_ALPHA = 14;
+
+    private int alpha = DEFAULT_ALPHA;
+
+    /** Report of the last propagation */
+    private int topDownLevels = 0;
+    private int bottomUpLevels = 0;
+
+    /**
+     * Sets the threshold for expanding a level bottom-up. Use
+     * {@link Integer#MAX_VALUE} for always expanding top-down, and 0 for
+     * expanding bottom-up whenever there are words not seen yet.
+     *
+     * @return this object.
+     */
+    public DirectionOptimizingPropagation setAlpha(int alpha) {
+        this.alpha = alpha;
+        return this;
+    }
+
+    /**
+     * Returns the number of levels expanded top-down in the last propagation.
+     */
+    public int getTopDownLevels() {
+        return topDownLevels;
+    }
+
+    /**
+     * Returns the number of levels expanded bottom-up in the last propagation.
+     */
+    public int getBottomUpLevels() {
+        return bottomUpLevels;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept. All the vertices must start without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public PropagationState propagate(LexicalGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = CsrPropagation.setSeedWords(graph, seedWords, state);
+        return propagate(graph, reverseEdges(graph), seeds, state);
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param reverse the position of the reverse of each relation (see
+     * {@link #reverseEdges(pt.psantos.phd.polarity.propagation.graph.LexicalGraph)}).
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the state passed as parameter.
+     */
+    public PropagationState propagate(LexicalGraph graph, int[] reverse, int[] seeds
+            , PropagationState state) {
+        int n = graph.vertexCount();
+        byte[] status = new byte[n];
+        long[] frontierBits = new long[(n + 63) >>> 6];
+        long[] unseenBits = new long[(n + 63) >>> 6];
+        for (int v = 0; v < n; v++) {
+            unseenBits[v >>> 6] |= 1L << v;
+        }
+        // Position of each vertex in its level, in queue order
+        int[] queuePosition = new int[n];
+        byte[] polarityAtVisit = new byte[n];
+
+        int[] frontier = new int[n];
+        int[] next = new int[n];
+        long[] keys = new long[0];
+        // Votes received by a word not seen yet, by counter
+        int[] votes = new int[3];
+        int frontierSize = 0;
+        long frontierEdges = 0;
+        long unseenEdges = (n > 0 ? graph.edgesEnd(n - 1) : 0);
+        for (int v : seeds) {
+            if (status[v] == CsrPropagation.NOT_VISITED) {
+                status[v] = CsrPropagation.IN_QUEUE;
+                unseenBits[v >>> 6] &= ~(1L << v);
+                frontier[frontierSize++] = v;
+                frontierEdges += graph.edgesEnd(v) - graph.edgesStart(v);
+                unseenEdges -= graph.edgesEnd(v) - graph.edgesStart(v);
+            }
+        }
+        topDownLevels = 0;
+        bottomUpLevels = 0;
+
+        while (frontierSize > 0) {
+            int nextSize = 0;
+            long nextEdges = 0;
+
+            if (frontierEdges <= unseenEdges / Math.max(1, alpha) || alpha == Integer.MAX_VALUE) {
+                // Top-down: the same as CsrPropagation, one level at a time
+                topDownLevels++;
+                for (int i = 0; i < frontierSize; i++) {
+                    int node = frontier[i];
+                    byte polarity = state.polarity(node);
+                    int nextIteration = state.getIteration(node) + 1;
+                    for (int e = graph.edgesStart(node), end = graph.edgesEnd(node); e < end; e++) {
+                        int neighborNode = graph.target(e);
+                        if (status[neighborNode] == CsrPropagation.VISITED) {
+                            continue;
+                        }
+                        if (!state.isIterationSet(neighborNode)) {
+                            state.setIteration(neighborNode, nextIteration);
+                        }
+                        CsrPropagation.vote(state, neighborNode, polarity
+                                , graph.relationCode(e) == LexicalGraph.SYNONYM);
+                        if (status[neighborNode] == CsrPropagation.NOT_VISITED) {
+                            status[neighborNode] = CsrPropagation.IN_QUEUE;
+                            unseenBits[neighborNode >>> 6] &= ~(1L << neighborNode);
+                            next[nextSize++] = neighborNode;
+                            nextEdges += graph.edgesEnd(neighborNode) - graph.edgesStart(neighborNode);
+                        }
+                    }
+                    status[node] = CsrPropagation.VISITED;
+                }
+            } else {
+                bottomUpLevels++;
+                for (int i = 0; i < frontierSize; i++) {
+                    int v = frontier[i];
+                    frontierBits[v >>> 6] |= 1L << v;
+                    queuePosition[v] = i;
+                }
+
+                // 1. Votes inside the level, in queue order
+                for (int i = 0; i < frontierSize; i++) {
+                    int node = frontier[i];
+                    byte polarity = state.polarity(node);
+                    polarityAtVisit[node] = polarity;
+                    for (int e = graph.edgesStart(node), end = graph.edgesEnd(node); e < end; e++) {
+                        int neighborNode = graph.target(e);
+                        if ((frontierBits[neighborNode >>> 6] & (1L << neighborNode)) != 0
+                                && queuePosition[neighborNode] > i) {
+                            CsrPropagation.vote(state, neighborNode, polarity
+                                    , graph.relationCode(e) == LexicalGraph.SYNONYM);
+                        }
+                    }
+                }
+
+                // 2. Each word not seen yet collects the votes of its
+                // neighbors in the level
+                if (keys.length < n) {
+                    keys = new long[n];
+                }
+                for (int word = 0; word < unseenBits.length; word++) {
+                    long bits = unseenBits[word];
+                    while (bits != 0) {
+                        int u = (word << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        Arrays.fill(votes, 0);
+                        long firstKey = Long.MAX_VALUE;
+                        int firstNode = -1;
+                        for (int e = graph.edgesStart(u), end = graph.edgesEnd(u); e < end; e++) {
+                            int node = graph.target(e);
+                            if ((frontierBits[node >>> 6] & (1L << node)) == 0) {
+                                continue;
+                            }
+                            int counter = CsrPropagation.counter(polarityAtVisit[node]
+                                    , graph.relationCode(e) == LexicalGraph.SYNONYM);
+                            if (counter != CsrPropagation.NO_COUNTER) {
+                                votes[counter]++;
+                            }
+                            // Queue position of the neighbor, and position
+                            // of u among the neighbors of that word
+                            long key = ((long) queuePosition[node] << 32) | reverse[e];
+                            if (key < firstKey) {
+                                firstKey = key;
+                                firstNode = node;
+                            }
+                        }
+                        if (firstNode >= 0) {
+                            state.addCounters(u, votes[CsrPropagation.POSITIVE_COUNTER]
+                                    , votes[CsrPropagation.NEGATIVE_COUNTER]
+                                    , votes[CsrPropagation.NEUTRAL_COUNTER]);
+                            if (!state.isIterationSet(u)) {
+                                state.setIteration(u, state.getIteration(firstNode) + 1);
+                            }
+                            keys[nextSize++] = firstKey;
+                        }
+                    }
+                }
+
+                // The next level in the order a top-down expansion would give
+                Arrays.sort(keys, 0, nextSize);
+                for (int i = 0; i < nextSize; i++) {
+                    int u = graph.target((int) keys[i]);
+                    status[u] = CsrPropagation.IN_QUEUE;
+                    unseenBits[u >>> 6] &= ~(1L << u);
+                    next[i] = u;
+                    nextEdges += graph.edgesEnd(u) - graph.edgesStart(u);
+                }
+
+                for (int i = 0; i < frontierSize; i++) {
+                    int v = frontier[i];
+                    frontierBits[v >>> 6] &= ~(1L << v);
+                    status[v] = CsrPropagation.VISITED;
+                }
+            }
+
+            int[] tmp = frontier;
+            frontier = next;
+            next = tmp;
+            frontierSize = nextSize;
+            frontierEdges = nextEdges;
+            unseenEdges -= nextEdges;
+        }
+        return state;
+    }
+
+    /**
+     * Returns the position of the reverse of each relation: if the position
+     * {@code e} has the relation from {@code u} to {@code v}, then the
+     * position {@code reverse[e]} has the relation from {@code v} to
+     * {@code u}.
+     */
+    public static int[] reverseEdges(LexicalGraph graph) {
+        int n = graph.vertexCount();
+        int entries = (n > 0 ? graph.edgesEnd(n - 1) : 0);
+
+        // Relations arriving at each vertex, sorted by source
+        int[] incoming = new int[entries];
+        int[] cursor = new int[n];
+        for (int v = 0; v < n; v++) {
+            cursor[v] = graph.edgesStart(v);
+        }
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.edgesStart(u), end = graph.edgesEnd(u); e < end; e++) {
+                incoming[cursor[graph.target(e)]++] = e;
+            }
+        }
+
+        // Relations leaving each vertex, sorted by target. Both lists have the
+        // same neighbors, in the same order.
+        int[] reverse = new int[entries];
+        long[] sorted = new long[0];
+        for (int v = 0; v < n; v++) {
+            int start = graph.edgesStart(v);
+            int degree = graph.edgesEnd(v) - start;
+            if (sorted.length < degree) {
+                sorted = new long[Math.max(degree, 2 * sorted.length)];
+            }
+            for (int k = 0; k < degree; k++) {
+                sorted[k] = ((long) graph.target(start + k) << 32) | (start + k);
+            }
+            Arrays.sort(sorted, 0, degree);
+            for (int k = 0; k < degree; k++) {
+                reverse[(int) sorted[k]] = incoming[start + k];
+            }
+        }
+        return reverse;
+    }
+
+    @Override
+    public String toString() {
+        return "DIRECTION-OPTIMIZING BFS: " + (topDownLevels + bottomUpLevels) + " levels" +
+                "\nTop-down: " + getTopDownLevels() +
+                "\nBottom-up: " + getBottomUpLevels();
+    }
+}
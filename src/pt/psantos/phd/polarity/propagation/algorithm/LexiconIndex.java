@@ -0,0 +1,386 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.Arrays;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
+
+/**
+ * Answers queries over a propagated graph without going through all its
+ * words, such as "the 1000 most negative words"
+ * ({@link #strongest(byte, int)}), "the ambiguous words up to 2 relations
+ * away from a seed word" ({@link #withinIterations(byte, int)}) or "the words
+ * starting with 'des'" ({@link #withPrefix(java.lang.String)}).
+ *
+ * <p>
+ * The indexes are built once, in primitive arrays: the words grouped by
+ * polarity and sorted by margin (the counter of their polarity minus the
+ * highest of the other two), the words grouped by polarity and iteration,
+ * and the words sorted by term. Each query is then a slice of one of them,
+ * found in constant or logarithmic time.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class LexiconIndex {
+
+    /** Number of polarity codes of {@link PropagationState} */
+    private static final int POLARITIES = 5;
+
+    private final LexicalGraph graph;
+    private final PropagationState state;
+
+    /** Vertices by polarity, the highest margin first */
+    private final int[] byMargin;
+    /** Vertices by polarity, then by iteration (the words without iteration last) */
+    private final int[] byIteration;
+    /** polarityStart[p] = first position of the polarity p in byMargin and byIteration */
+    private final int[] polarityStart;
+    /** iterationStart[p * (maxIteration + 2) + i] = first position of (p, i - 1) in byIteration */
+    private final int[] iterationStart;
+    private final int maxIteration;
+    /** Terms in increasing order, and their vertices */
+    private final String[] sortedTerms;
+    private final int[] sortedVertices;
+
+    /**
+     * Builds the indexes of a propagated graph.
+     *
+     * @param graph a graph of words.
+     * @param state the counters and iteration of each word of the graph,
+     * after the propagation. Must not change while the index is used.
+     */
+    public LexiconIndex(LexicalGraph graph, PropagationState state) {
+        this.graph = graph;
+        this.state = state;
+        int n = graph.vertexCount();
+
+        byte[] polarities = new byte[n];
+        int max = 0;
+        this.polarityStart = new int[POLARITIES + 1];
+        for (int v = 0; v < n; v++) {
+            polarities[v] = state.polarity(v);
+            polarityStart[polarities[v] + 1]++;
+            max = Math.max(max, state.getIteration(v));
+        }
+        for (int p = 0; p < POLARITIES; p++) {
+            polarityStart[p + 1] += polarityStart[p];
+        }
+        this.maxIteration = max;
+
+        // 1. By polarity and margin: each vertex is a long (higher margin first, then id)
+        long[] keys = new long[n];
+        int[] cursor = Arrays.copyOf(polarityStart, POLARITIES);
+        for (int v = 0; v < n; v++) {
+            long margin = Integer.MAX_VALUE - (long) margin(v);
+            keys[cursor[polarities[v]]++] = (margin << 32) | v;
+        }
+        this.byMargin = new int[n];
+        for (int p = 0; p < POLARITIES; p++) {
+            Arrays.sort(keys, polarityStart[p], polarityStart[p + 1]);
+        }
+        for (int i = 0; i < n; i++) {
+            byMargin[i] = (int) keys[i];
+        }
+
+        // 2. By polarity and iteration, with a counting sort (-1 is the last iteration)
+        int buckets = max + 2;
+        this.iterationStart = new int[POLARITIES * buckets + 1];
+        for (int v = 0; v < n; v++) {
+            iterationStart[bucket(polarities[v], state.getIteration(v)) + 1]++;
+        }
+        for (int b = 0; b < POLARITIES * buckets; b++) {
+            iterationStart[b + 1] += iterationStart[b];
+        }
+        this.byIteration = new int[n];
+        int[] next = Arrays.copyOf(iterationStart, POLARITIES * buckets);
+        for (int v = 0; v < n; v++) {
+            byIteration[next[bucket(polarities[v], state.getIteration(v))]++] = v;
+        }
+
+        // 3. By term. The terms of the graph are unique.
+        this.sortedTerms = new String[n];
+        for (int v = 0; v < n; v++) {
+            sortedTerms[v] = graph.term(v);
+        }
+        Arrays.sort(sortedTerms);
+        this.sortedVertices = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedVertices[i] = graph.vertexId(sortedTerms[i]);
+        }
+    }
+
+    /**
+     * Returns the graph of this index.
+     */
+    public LexicalGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the state of this index.
+     */
+    public PropagationState getState() {
+        return state;
+    }
+
+    /**
+     * Returns the number of words with the polarity {@code polarity}.
+     */
+    public int count(byte polarity) {
+        return polarityStart[polarity + 1] - polarityStart[polarity];
+    }
+
+    /**
+     * Returns the highest iteration of the graph (the distance from the
+     * farthest word with polarity to the closest seed word).
+     */
+    public int getMaxIteration() {
+        return maxIteration;
+    }
+
+    /**
+     * Returns how strongly the vertex {@code v} has its polarity: the counter
+     * of its polarity minus the highest of the other two counters. For the
+     * ambiguous words, the sum of the three counters. For the words without
+     * polarity, 0.
+     */
+    public int margin(int v) {
+        int positive = state.getPositiveCounter(v);
+        int negative = state.getNegativeCounter(v);
+        int neutral = state.getNeutralCounter(v);
+        switch (PropagationState.polarity(positive, negative, neutral)) {
+            case PropagationState.POSITIVE:
+                return positive - Math.max(negative, neutral);
+            case PropagationState.NEGATIVE:
+                return negative - Math.max(positive, neutral);
+            case PropagationState.NEUTRAL:
+                return neutral - Math.max(positive, negative);
+            case PropagationState.AMBIGUOUS:
+                return positive + negative + neutral;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the {@code k} words with the polarity {@code polarity} and the
+     * highest margin ({@link #margin(int)}), the highest first. The words with
+     * the same margin are returned by increasing vertex id.
+     *
+     * @return the vertices, up to {@code k}.
+     */
+    public int[] strongest(byte polarity, int k) {
+        int start = polarityStart[polarity];
+        return Arrays.copyOfRange(byMargin, start, start + Math.max(0, Math.min(k, count(polarity))));
+    }
+
+    /**
+     * Returns the words with the polarity {@code polarity} up to
+     * {@code maxIteration} relations away from the closest seed word, by
+     * increasing iteration. With 0, only the seed words.
+     *
+     * @return the vertices.
+     */
+    public int[] withinIterations(byte polarity, int maxIteration) {
+        int last = Math.min(maxIteration, this.maxIteration);
+        if (last < 0) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(byIteration, iterationStart[bucket(polarity, 0)]
+                , iterationStart[bucket(polarity, last) + 1]);
+    }
+
+    /**
+     * Returns the words starting with {@code prefix}, by increasing order of
+     * their terms.
+     *
+     * @return the vertices.
+     */
+    public int[] withPrefix(String prefix) {
+        int start = lowerBound(prefix);
+        int end = start;
+        // The terms starting with the prefix are together, after it
+        int high = sortedTerms.length;
+        while (end < high) {
+            int middle = (end + high) >>> 1;
+            if (sortedTerms[middle].startsWith(prefix)) {
+                end = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return Arrays.copyOfRange(sortedVertices, start, end);
+    }
+
+    /**
+     * Same as {@link #withPrefix(java.lang.String)}, but only the words with
+     * the polarity {@code polarity}.
+     */
+    public int[] withPrefix(String prefix, byte polarity) {
+        int[] vertices = withPrefix(prefix);
+        int count = 0;
+        for (int v : vertices) {
+            if (state.polarity(v) == polarity) {
+                vertices[count++] = v;
+            }
+        }
+        return Arrays.copyOf(vertices, count);
+    }
+
+    /**
+     * Answers a query given as text, as in the option -q of {@link Run}:
+     * <ul>
+     * <li>{@code top:polarity:k} - {@link #strongest(byte, int)}</li>
+     * <li>{@code hops:polarity:n} - {@link #withinIterations(byte, int)}</li>
+     * <li>{@code prefix:text} - {@link #withPrefix(java.lang.String)}</li>
+     * <li>{@code prefix:text:polarity} - {@link #withPrefix(java.lang.String, byte)}</li>
+     * </ul>
+     * The polarity is given by the same characters of the output file
+     * ({@link CsvOutput#getPolarity(byte)}: +, -, 0, A or U) or by its name
+     * (positive, negative, neutral, ambiguous or unset).
+     *
+     * @return the vertices.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public int[] query(String query) {
+        return query(Query.parse(query));
+    }
+
+    /**
+     * Answers a query parsed by {@link Query#parse(java.lang.String)}.
+     *
+     * @return the vertices.
+     */
+    public int[] query(Query query) {
+        switch (query.kind) {
+            case TOP:
+                return strongest(query.polarity, query.count);
+            case HOPS:
+                return withinIterations(query.polarity, query.count);
+            default:
+                return (query.hasPolarity ? withPrefix(query.prefix, query.polarity)
+                        : withPrefix(query.prefix));
+        }
+    }
+
+    /**
+     * Returns the polarity code of {@link PropagationState} given by a
+     * character of the output file or by its name.
+     *
+     * @throws IllegalArgumentException if the text is not a polarity.
+     */
+    public static byte parsePolarity(String text) {
+        String polarity = text.toLowerCase();
+        if (polarity.equals("+") || polarity.equals("positive")) {
+            return PropagationState.POSITIVE;
+        } else if (polarity.equals("-") || polarity.equals("negative")) {
+            return PropagationState.NEGATIVE;
+        } else if (polarity.equals("0") || polarity.equals("neutral")) {
+            return PropagationState.NEUTRAL;
+        } else if (polarity.equals("a") || polarity.equals("ambiguous")) {
+            return PropagationState.AMBIGUOUS;
+        } else if (polarity.equals("u") || polarity.equals("unset")) {
+            return PropagationState.NOT_SET;
+        }
+        throw new IllegalArgumentException("Invalid polarity: " + text);
+    }
+
+    /**
+     * Returns the vertex {@code v} as a line of the output file, followed by
+     * its margin. Example: {@code mau,-,3,0,1,2,2}.
+     */
+    public String describe(int v) {
+        return graph.term(v) + "," + CsvOutput.getPolarity(state.polarity(v))
+                + "," + state.getNegativeCounter(v) + "," + state.getNeutralCounter(v)
+                + "," + state.getPositiveCounter(v) + "," + state.getIteration(v)
+                + "," + margin(v);
+    }
+
+    /**
+     * Returns the position of the first term not lower than {@code term}.
+     */
+    private int lowerBound(String term) {
+        int low = 0;
+        int high = sortedTerms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedTerms[middle].compareTo(term) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int bucket(byte polarity, int iteration) {
+        // The iteration -1 (without polarity) is the last bucket
+        return polarity * (maxIteration + 2) + (iteration < 0 ? maxIteration + 1 : iteration);
+    }
+
+    /**
+     * A query given as text (see {@link LexiconIndex#query(java.lang.String)}),
+     * parsed before the index is built, so an invalid query is found before
+     * the propagation.
+     */
+    public static class Query {
+
+        private enum Kind {
+            TOP, HOPS, PREFIX
+        }
+
+        private final String text;
+        private final Kind kind;
+        private final byte polarity;
+        private final boolean hasPolarity;
+        private final int count;
+        private final String prefix;
+
+        private Query(String text, Kind kind, byte polarity, boolean hasPolarity, int count
+                , String prefix) {
+            this.text = text;
+            this.kind = kind;
+            this.polarity = polarity;
+            this.hasPolarity = hasPolarity;
+            this.count = count;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Parses a query given as text.
+         *
+         * @throws IllegalArgumentException if the query is not valid.
+         */
+        public static Query parse(String query) {
+            String[] fields = query.split(":", -1);
+            try {
+                if ((fields[0].equals("top") || fields[0].equals("hops")) && fields.length == 3) {
+                    int count = Integer.parseInt(fields[2]);
+                    if (count >= 0) {
+                        return new Query(query, (fields[0].equals("top") ? Kind.TOP : Kind.HOPS)
+                                , parsePolarity(fields[1]), true, count, null);
+                    }
+                } else if (fields[0].equals("prefix") && fields.length == 2) {
+                    return new Query(query, Kind.PREFIX, PropagationState.NOT_SET, false, 0
+                            , fields[1]);
+                } else if (fields[0].equals("prefix") && fields.length == 3) {
+                    return new Query(query, Kind.PREFIX, parsePolarity(fields[2]), true, 0
+                            , fields[1]);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid query: " + query, ex);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Invalid query: " + query + " ("
+                        + ex.getMessage() + ")", ex);
+            }
+            throw new IllegalArgumentException("Invalid query: " + query);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.graph.MappedBuffer;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+import pt.psantos.phd.polarity.propagation.graph.MappedCsrGraph;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * for graphs that do not fit in the Java heap.
+ *
+ * <p>
+ * The graph is kept on disk ({@link MappedCsrGraph}), the counters and the
+ * iteration of each word are kept in a memory mapped file
+ * ({@link PropagationState}) and the queue of words to visit is moved to disk
+ * when it gets bigger than the memory budget ({@link SpillingIntQueue}).
+ * The words are visited in the same order as in
+ * {@link PolarityPropagation}, so the result is the same.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class OutOfCorePropagation {
+
+    /**
+     * Default maximum number of bytes of the Java heap used by the queue of
+     * words to visit (64MB).
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    /** Status of each vertex, kept in the flags file */
+    private static final byte NOT_VISITED = 0;
+    private static final byte IN_QUEUE = 1;
+    private static final byte VISITED = 2;
+
+    private final File workingDirectory;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    /**
+     * @param workingDirectory directory where the state of the propagation is
+     * kept.
+     */
+    public OutOfCorePropagation(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * Sets the maximum number of bytes of the Java heap used by the queue of
+     * words to visit.
+     *
+     * @param memoryBudget a number of bytes.
+     * @return this object.
+     */
+    public OutOfCorePropagation setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @return the counters and the iteration of each vertex of the graph.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public PropagationState propagate(LexicalGraph graph, List<Word> seedWords) throws IOException {
+        int n = graph.vertexCount();
+        PropagationState state = PropagationState.create(
+                new File(workingDirectory, "propagation.state"), n);
+        File flagsFile = new File(workingDirectory, "propagation.flags");
+        MappedBuffer flags = MappedBuffer.create(flagsFile, Math.max(1, n));
+        SpillingIntQueue nodesToVisit = new SpillingIntQueue(
+                new File(workingDirectory, "propagation.queue"), memoryBudget);
+
+        try {
+            //
+            // Specify which graph words are seed words. As in PolarityPropagation,
+            // the seed words are visited in the same order as the graph words.
+            //
+            int[] seeds = CsrPropagation.setSeedWords(graph, seedWords, state);
+            for (int v : seeds) {
+                flags.put(v, IN_QUEUE);
+                nodesToVisit.add(v);
+            }
+
+            //
+            // Begining of the propagation algorithm
+            //
+            while (!nodesToVisit.isEmpty()) {
+                int node = nodesToVisit.remove();
+                byte polarity = state.polarity(node);
+                int nextIteration = state.getIteration(node) + 1;
+
+                for (int e = graph.edgesStart(node), end = graph.edgesEnd(node); e < end; e++) {
+                    int neighborNode = graph.target(e);
+
+                    // Avoids propagation back a polarity received fron its neighbors
+                    if (flags.get(neighborNode) == VISITED) {
+                        continue;
+                    }
+
+                    if (!state.isIterationSet(neighborNode)) {
+                        state.setIteration(neighborNode, nextIteration);
+                    }
+
+                    CsrPropagation.vote(state, neighborNode, polarity
+                            , graph.relationCode(e) == LexicalGraph.SYNONYM);
+
+                    // If the neighbor is neither on the queue nor visited, add it to the queue.
+                    if (flags.get(neighborNode) == NOT_VISITED) {
+                        flags.put(neighborNode, IN_QUEUE);
+                        nodesToVisit.add(neighborNode);
+                    }
+                }
+                flags.put(node, VISITED);
+            }
+        } finally {
+            nodesToVisit.close();
+            flags.close();
+            flagsFile.delete();
+        }
+        state.flush();
+        return state;
+    }
+}
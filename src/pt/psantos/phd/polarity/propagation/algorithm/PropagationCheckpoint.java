@@ -0,0 +1,217 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A snapshot of a propagation in progress: the words still in the queue (the
+ * frontier), the words already visited and the counters and iteration of
+ * every word. A propagation resumed from a checkpoint
+ * ({@link CsrPropagation#resume(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, int[], PropagationState, PropagationCheckpoint, Checkpointer)})
+ * gives the same result as a propagation that was never interrupted. The
+ * checkpoint keeps a fingerprint of the graph and of the seed words
+ * ({@link CsrPropagation#fingerprint(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, int[], PropagationState)}),
+ * so it is not resumed by a propagation of other words.
+ *
+ * <p>
+ * File format (little endian):
+ * <ul>
+ * <li>header: magic, number of vertices, number of edges, size of the
+ * frontier (ints), fingerprint (long);</li>
+ * <li>the frontier, in queue order (ints);</li>
+ * <li>the visited bitset (longs);</li>
+ * <li>the {@link PropagationState}.</li>
+ * </ul>
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class PropagationCheckpoint {
+
+    private static final int MAGIC = 0x50434B32; // "PCK2"
+    private static final int HEADER_SIZE = 24;
+    /** Size of the buffer through which the frontier and the bitset are written and read */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final long fingerprint;
+    private final int[] frontier;
+    private final long[] visited;
+    private final PropagationState state;
+
+    /**
+     * @param vertexCount number of vertices of the graph.
+     * @param edgeCount number of edges of the graph.
+     * @param fingerprint fingerprint of the graph and of the seed words.
+     * @param frontier the vertices in the queue, in the order they will be
+     * visited.
+     * @param visited bitset with the vertices already visited.
+     * @param state the counters and iteration of each vertex.
+     */
+    public PropagationCheckpoint(int vertexCount, int edgeCount, long fingerprint
+            , int[] frontier, long[] visited, PropagationState state) {
+        this.vertexCount = vertexCount;
+        this.edgeCount = edgeCount;
+        this.fingerprint = fingerprint;
+        this.frontier = frontier;
+        this.visited = visited;
+        this.state = state;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public int[] getFrontier() {
+        return frontier;
+    }
+
+    public PropagationState getState() {
+        return state;
+    }
+
+    public boolean isVisited(int v) {
+        return (visited[v >>> 6] & (1L << v)) != 0;
+    }
+
+    /**
+     * Returns {@code true} if there are no more words to visit.
+     */
+    public boolean isFinished() {
+        return frontier.length == 0;
+    }
+
+    /**
+     * Writes this checkpoint to {@code file}. The checkpoint is first written
+     * to a temporary file, which then replaces {@code file}, so a crash while
+     * writing never destroys the previous checkpoint. The frontier and the
+     * visited bitset are written in chunks of {@link #CHUNK_SIZE} bytes.
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(vertexCount).putInt(edgeCount).putInt(frontier.length)
+                    .putLong(fingerprint);
+            buffer.flip();
+            long position = write(channel, buffer, 0);
+            for (int i = 0; i < frontier.length; i += CHUNK_SIZE / 4) {
+                int length = Math.min(CHUNK_SIZE / 4, frontier.length - i);
+                buffer.clear();
+                buffer.asIntBuffer().put(frontier, i, length);
+                buffer.limit(4 * length);
+                position = write(channel, buffer, position);
+            }
+            for (int i = 0; i < visited.length; i += CHUNK_SIZE / 8) {
+                int length = Math.min(CHUNK_SIZE / 8, visited.length - i);
+                buffer.clear();
+                buffer.asLongBuffer().put(visited, i, length);
+                buffer.limit(8 * length);
+                position = write(channel, buffer, position);
+            }
+            state.writeTo(channel, position);
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+        // File.renameTo does not replace existing files in every platform
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Unable to rename " + tmp.getAbsolutePath()
+                    + " to " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #write(java.io.File)}. The state is
+     * read to direct buffers.
+     */
+    public static PropagationCheckpoint read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            read(channel, header, 0);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a propagation checkpoint: " + file.getAbsolutePath());
+            }
+            int vertexCount = header.getInt();
+            int edgeCount = header.getInt();
+            int[] frontier = new int[header.getInt()];
+            long fingerprint = header.getLong();
+            long[] visited = new long[(vertexCount + 63) >>> 6];
+
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_SIZE;
+            for (int i = 0; i < frontier.length; i += CHUNK_SIZE / 4) {
+                int length = Math.min(CHUNK_SIZE / 4, frontier.length - i);
+                buffer.clear();
+                buffer.limit(4 * length);
+                position = read(channel, buffer, position);
+                buffer.asIntBuffer().get(frontier, i, length);
+            }
+            for (int i = 0; i < visited.length; i += CHUNK_SIZE / 8) {
+                int length = Math.min(CHUNK_SIZE / 8, visited.length - i);
+                buffer.clear();
+                buffer.limit(8 * length);
+                position = read(channel, buffer, position);
+                buffer.asLongBuffer().get(visited, i, length);
+            }
+
+            PropagationState state = PropagationState.readFrom(channel, position);
+            if (state.size() != vertexCount) {
+                throw new IOException("Corrupted propagation checkpoint: " + file.getAbsolutePath());
+            }
+            return new PropagationCheckpoint(vertexCount, edgeCount, fingerprint, frontier
+                    , visited, state);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of {@code buffer} at {@code position}, and
+     * returns the position after them.
+     */
+    private static long write(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * Fills {@code buffer} up to its limit with the bytes at {@code position},
+     * flips it, and returns the position after them.
+     */
+    private static long read(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+        buffer.flip();
+        return position;
+    }
+}
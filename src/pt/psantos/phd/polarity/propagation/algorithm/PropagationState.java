@@ -0,0 +1,421 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import pt.psantos.phd.polarity.propagation.graph.MappedBuffer;
+
+/**
+ * Keeps the polarity counters and the iteration of each vertex of a graph,
+ * indexed by the vertex id. This is the same information kept by each
+ * {@link Word}, but kept outside the Java heap, so the garbage collector does
+ * not need to trace millions of objects during a long propagation.
+ *
+ * <p>
+ * The state can be kept:
+ * <ul>
+ * <li>in direct buffers ({@link #allocateDirect(int)}), which are lost when the
+ * application ends;</li>
+ * <li>in a memory mapped file ({@link #create(java.io.File, int)}), which is
+ * kept on disk and can be opened again after a crash
+ * ({@link #open(java.io.File)}).</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Each vertex uses a record of 16 bytes: the positive, negative and neutral
+ * counters and the iteration, as ints. The first record is a header with the
+ * number of vertices.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class PropagationState {
+
+    /** Polarity codes returned by {@link #polarity(int)} */
+    public static final byte NOT_SET = 0;
+    public static final byte POSITIVE = 1;
+    public static final byte NEGATIVE = 2;
+    public static final byte NEUTRAL = 3;
+    public static final byte AMBIGUOUS = 4;
+
+    private static final int MAGIC = 0x50535431; // "PST1"
+
+    private static final int RECORD_BITS = 4;
+    private static final int RECORD_SIZE = 1 << RECORD_BITS;
+    private static final int POSITIVE_OFFSET = 0;
+    private static final int NEGATIVE_OFFSET = 4;
+    private static final int NEUTRAL_OFFSET = 8;
+    private static final int ITERATION_OFFSET = 12;
+
+    /** Each segment keeps 2^SEGMENT_RECORD_BITS records (1GB) */
+    private static final int SEGMENT_RECORD_BITS = MappedBuffer.SEGMENT_BITS - RECORD_BITS;
+    private static final int SEGMENT_RECORD_MASK = (1 << SEGMENT_RECORD_BITS) - 1;
+
+    private final ByteBuffer[] segments;
+    /** The mapped file, or {@code null} if the state is kept in direct buffers */
+    private final MappedBuffer mapped;
+    private final int size;
+
+    private PropagationState(ByteBuffer[] segments, MappedBuffer mapped, int size) {
+        this.segments = segments;
+        this.mapped = mapped;
+        this.size = size;
+    }
+
+    /**
+     * Creates the state of {@code size} vertices in direct buffers (outside the
+     * Java heap). All the vertices start without polarity (as a new
+     * {@link Word}).
+     */
+    public static PropagationState allocateDirect(int size) {
+        PropagationState state = new PropagationState(allocateSegments(size), null, size);
+        state.initialise();
+        return state;
+    }
+
+    /**
+     * Creates the state of {@code size} vertices in the file {@code file}.
+     * All the vertices start without polarity (as a new {@link Word}).
+     */
+    public static PropagationState create(File file, int size) throws IOException {
+        MappedBuffer buffer = MappedBuffer.create(file, byteSize(size));
+        PropagationState state = new PropagationState(segments(buffer), buffer, size);
+        state.initialise();
+        return state;
+    }
+
+    /**
+     * Opens a state previously created by {@link #create(java.io.File, int)}
+     * or written by {@link #writeTo(java.io.File)}. Used for recovering the
+     * state after a crash.
+     */
+    public static PropagationState open(File file) throws IOException {
+        MappedBuffer buffer = MappedBuffer.open(file, false);
+        if (buffer.capacity() < RECORD_SIZE || buffer.getInt(0) != MAGIC) {
+            buffer.close();
+            throw new IOException("Not a propagation state file: " + file.getAbsolutePath());
+        }
+        int size = buffer.getInt(4);
+        return new PropagationState(segments(buffer), buffer, size);
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getPositiveCounter(int v) {
+        return segment(v).getInt(offset(v) + POSITIVE_OFFSET);
+    }
+
+    public int getNegativeCounter(int v) {
+        return segment(v).getInt(offset(v) + NEGATIVE_OFFSET);
+    }
+
+    public int getNeutralCounter(int v) {
+        return segment(v).getInt(offset(v) + NEUTRAL_OFFSET);
+    }
+
+    public int getIteration(int v) {
+        return segment(v).getInt(offset(v) + ITERATION_OFFSET);
+    }
+
+    public void setIteration(int v, int iteration) {
+        segment(v).putInt(offset(v) + ITERATION_OFFSET, iteration);
+    }
+
+    public boolean isIterationSet(int v) {
+        return getIteration(v) >= 0;
+    }
+
+    public void increasePosCounter(int v) {
+        increase(segment(v), offset(v) + POSITIVE_OFFSET);
+    }
+
+    public void increaseNegCounter(int v) {
+        increase(segment(v), offset(v) + NEGATIVE_OFFSET);
+    }
+
+    public void increaseNeutralCounter(int v) {
+        increase(segment(v), offset(v) + NEUTRAL_OFFSET);
+    }
+
+    /**
+     * Adds {@code positive}, {@code negative} and {@code neutral} votes to the
+     * counters of the vertex {@code v}.
+     */
+    public void addCounters(int v, int positive, int negative, int neutral) {
+        ByteBuffer segment = segment(v);
+        int offset = offset(v);
+        segment.putInt(offset + POSITIVE_OFFSET, segment.getInt(offset + POSITIVE_OFFSET) + positive);
+        segment.putInt(offset + NEGATIVE_OFFSET, segment.getInt(offset + NEGATIVE_OFFSET) + negative);
+        segment.putInt(offset + NEUTRAL_OFFSET, segment.getInt(offset + NEUTRAL_OFFSET) + neutral);
+    }
+
+    /**
+     * Copy the counters and the iteration of the word {@code from} to the
+     * vertex {@code v}. Used for setting the seed words.
+     */
+    public void copyState(int v, Word from) {
+        ByteBuffer segment = segment(v);
+        int offset = offset(v);
+        segment.putInt(offset + POSITIVE_OFFSET, from.getPositiveCounter());
+        segment.putInt(offset + NEGATIVE_OFFSET, from.getNegativeCounter());
+        segment.putInt(offset + NEUTRAL_OFFSET, from.getNeutralCounter());
+        segment.putInt(offset + ITERATION_OFFSET, from.getIteration());
+    }
+
+    /**
+     * Sets the vertex {@code v} as a seed word with the polarity
+     * {@code polarity} ({@link #POSITIVE}, {@link #NEGATIVE} or
+     * {@link #NEUTRAL}): the counter of that polarity is set to 1 and the
+     * iteration to 0. Same as {@link #copyState(int, Word)} with a word set by
+     * {@link Word#setAsPositiveSeed()} (and so on). With any other polarity,
+     * the vertex is left without polarity.
+     */
+    public void setSeed(int v, byte polarity) {
+        ByteBuffer segment = segment(v);
+        int offset = offset(v);
+        boolean seed = (polarity == POSITIVE || polarity == NEGATIVE || polarity == NEUTRAL);
+        segment.putInt(offset + POSITIVE_OFFSET, polarity == POSITIVE ? 1 : 0);
+        segment.putInt(offset + NEGATIVE_OFFSET, polarity == NEGATIVE ? 1 : 0);
+        segment.putInt(offset + NEUTRAL_OFFSET, polarity == NEUTRAL ? 1 : 0);
+        segment.putInt(offset + ITERATION_OFFSET, seed ? 0 : -1);
+    }
+
+    /**
+     * Copy the counters and the iteration of the vertex {@code fromV} of the
+     * state {@code from} to the vertex {@code v}.
+     */
+    public void copyState(int v, PropagationState from, int fromV) {
+        ByteBuffer src = from.segment(fromV);
+        int srcOffset = offset(fromV);
+        ByteBuffer dst = segment(v);
+        int dstOffset = offset(v);
+        dst.putLong(dstOffset, src.getLong(srcOffset));
+        dst.putLong(dstOffset + 8, src.getLong(srcOffset + 8));
+    }
+
+    /**
+     * Copy the counters and the iteration of the vertex {@code v} to the word
+     * {@code to}.
+     */
+    public void copyTo(int v, Word to) {
+        to.setState(getPositiveCounter(v), getNegativeCounter(v)
+                , getNeutralCounter(v), getIteration(v));
+    }
+
+    /**
+     * Returns the polarity of the vertex {@code v}: {@link #POSITIVE},
+     * {@link #NEGATIVE}, {@link #NEUTRAL}, {@link #AMBIGUOUS} or
+     * {@link #NOT_SET}. Same rules as {@link Word}.
+     */
+    public byte polarity(int v) {
+        ByteBuffer segment = segment(v);
+        int offset = offset(v);
+        return polarity(segment.getInt(offset + POSITIVE_OFFSET),
+                segment.getInt(offset + NEGATIVE_OFFSET),
+                segment.getInt(offset + NEUTRAL_OFFSET));
+    }
+
+    /**
+     * Returns the polarity of a word with the counters passed as parameters.
+     */
+    public static byte polarity(int positiveCounter, int negativeCounter, int neutralCounter) {
+        if (positiveCounter <= 0 && negativeCounter <= 0
+                && neutralCounter <= 0) {
+            return NOT_SET;
+        } else if (positiveCounter > negativeCounter && positiveCounter > neutralCounter) {
+            return POSITIVE;
+        } else if (negativeCounter > positiveCounter && negativeCounter > neutralCounter) {
+            return NEGATIVE;
+        } else if (neutralCounter > positiveCounter && neutralCounter > negativeCounter) {
+            return NEUTRAL;
+        } else {
+            return AMBIGUOUS;
+        }
+    }
+
+    /**
+     * Writes a copy of this state to the file {@code file}. The copy can be
+     * opened with {@link #open(java.io.File)}.
+     */
+    public void writeTo(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            writeTo(channel, 0);
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes this state (with the header) to {@code channel}, starting at
+     * {@code position}.
+     *
+     * @return the number of bytes written.
+     */
+    long writeTo(FileChannel channel, long position) throws IOException {
+        long start = position;
+        for (ByteBuffer segment : segments) {
+            ByteBuffer src = segment.duplicate();
+            src.clear();
+            while (src.hasRemaining()) {
+                position += channel.write(src, position);
+            }
+        }
+        return position - start;
+    }
+
+    /**
+     * Reads a state written by {@link #writeTo(java.nio.channels.FileChannel, long)}
+     * to direct buffers.
+     */
+    static PropagationState readFrom(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, position);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Propagation state not found at position " + position);
+        }
+        PropagationState state = new PropagationState(
+                allocateSegments(header.getInt(4)), null, header.getInt(4));
+        for (ByteBuffer segment : state.segments) {
+            ByteBuffer dst = segment.duplicate();
+            dst.clear();
+            position += readFully(channel, dst, position);
+        }
+        return state;
+    }
+
+    /**
+     * Returns a copy of this state, kept in direct buffers.
+     */
+    public PropagationState copy() {
+        PropagationState copy = new PropagationState(allocateSegments(size), null, size);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replaces the counters and the iteration of every vertex by the ones of
+     * {@code from}, a state of the same size.
+     */
+    void copyFrom(PropagationState from) {
+        if (from.size != size) {
+            throw new IllegalArgumentException("States of different sizes: " + from.size
+                    + " and " + size);
+        }
+        for (int i = 0; i < segments.length; i++) {
+            ByteBuffer src = from.segments[i].duplicate();
+            src.clear();
+            ByteBuffer dst = segments[i].duplicate();
+            dst.clear();
+            dst.put(src);
+        }
+    }
+
+    /**
+     * Sets all the vertices without polarity again (as a new {@link Word}), so
+     * the state can be reused by another propagation over the same graph.
+     */
+    public void clear() {
+        for (int v = 0; v < size; v++) {
+            ByteBuffer segment = segment(v);
+            int offset = offset(v);
+            segment.putLong(offset, 0L);
+            segment.putLong(offset + 8, 0L);
+            segment.putInt(offset + ITERATION_OFFSET, -1);
+        }
+    }
+
+    /**
+     * Writes all the changes to the disk. Does nothing if the state is kept in
+     * direct buffers.
+     */
+    public void flush() {
+        if (mapped != null) {
+            mapped.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (mapped != null) {
+            mapped.close();
+        }
+    }
+
+    /**
+     * Writes the header and sets all the vertices without polarity.
+     */
+    private void initialise() {
+        segments[0].putInt(0, MAGIC);
+        segments[0].putInt(4, size);
+        for (int v = 0; v < size; v++) {
+            setIteration(v, -1);
+        }
+    }
+
+    private ByteBuffer segment(int v) {
+        return segments[(v + 1) >>> SEGMENT_RECORD_BITS];
+    }
+
+    private static int offset(int v) {
+        return ((v + 1) & SEGMENT_RECORD_MASK) << RECORD_BITS;
+    }
+
+    private static void increase(ByteBuffer segment, int offset) {
+        segment.putInt(offset, segment.getInt(offset) + 1);
+    }
+
+    /**
+     * Returns the number of bytes used by the state of {@code size} vertices
+     * (plus the header).
+     */
+    static long byteSize(int size) {
+        return (long) RECORD_SIZE * (size + 1L);
+    }
+
+    private static ByteBuffer[] allocateSegments(int size) {
+        long bytes = byteSize(size);
+        int numSegments = (int) ((bytes + MappedBuffer.SEGMENT_SIZE - 1) >>> MappedBuffer.SEGMENT_BITS);
+        ByteBuffer[] segments = new ByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            long start = (long) i << MappedBuffer.SEGMENT_BITS;
+            segments[i] = ByteBuffer.allocateDirect(
+                    (int) Math.min(MappedBuffer.SEGMENT_SIZE, bytes - start));
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        int read = 0;
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, position + read);
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private static ByteBuffer[] segments(MappedBuffer buffer) {
+        ByteBuffer[] segments = new ByteBuffer[buffer.segmentCount()];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = buffer.segment(i);
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,233 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.Arrays;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
+
+/**
+ * Records, during a propagation ({@link CsrPropagation}), which words gave
+ * each word its polarity: the first {@code k} words that increased its
+ * counters, and the type of the relation. The first of them is the parent of
+ * the word. The contributions after the first {@code k} are not kept; since
+ * the words are visited in breadth-first order, the ones kept come from the
+ * words closest to the seed words (every contribution is worth one vote, so
+ * none is stronger than the others). Following the parents, from a word to a seed word, gives the path
+ * through which the polarity of the seed word reached the word
+ * ({@link #path(int, PropagationState)}).
+ *
+ * <p>
+ * The trace is kept in primitive arrays: 5 bytes per word and per
+ * contribution kept (an int and a byte). With only the parent ({@code k = 1}),
+ * that is less than a third of the memory of the {@link PropagationState}.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class PropagationTrace {
+
+    private final int firstContributions;
+    /** The words that contributed to each word, {@code k} per word, or -1 */
+    private final int[] contributors;
+    /** The relation code of each contribution */
+    private final byte[] relations;
+
+    /**
+     * Creates a trace that keeps only the parent of each word.
+     *
+     * @param vertexCount number of vertices of the graph.
+     */
+    public PropagationTrace(int vertexCount) {
+        this(vertexCount, 1);
+    }
+
+    /**
+     * Creates a trace that keeps the first {@code firstContributions}
+     * contributions to each word.
+     *
+     * @param vertexCount number of vertices of the graph.
+     * @param firstContributions number of contributions kept per word, in the
+     * order they are made (at least 1, the parent).
+     * @throws IllegalArgumentException if {@code firstContributions} is less
+     * than 1, or if the trace has more than {@link Integer#MAX_VALUE}
+     * contributions.
+     */
+    public PropagationTrace(int vertexCount, int firstContributions) {
+        if (firstContributions < 1) {
+            throw new IllegalArgumentException("Invalid number of contributions: "
+                    + firstContributions);
+        }
+        long size = (long) vertexCount * firstContributions;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Trace too large: " + vertexCount
+                    + " words with " + firstContributions + " contributions each");
+        }
+        this.firstContributions = firstContributions;
+        this.contributors = new int[(int) size];
+        this.relations = new byte[(int) size];
+        Arrays.fill(contributors, -1);
+    }
+
+    /**
+     * Records that the vertex {@code from} increased a counter of the vertex
+     * {@code v}, through a relation of the type {@code relationCode}.
+     */
+    void record(int v, int from, byte relationCode) {
+        int start = v * firstContributions;
+        for (int i = start, end = start + firstContributions; i < end; i++) {
+            if (contributors[i] < 0) {
+                contributors[i] = from;
+                relations[i] = relationCode;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of vertices of the graph.
+     */
+    public int size() {
+        return contributors.length / firstContributions;
+    }
+
+    /**
+     * Returns the number of contributions kept per word: the first ones made
+     * to the word.
+     */
+    public int getFirstContributions() {
+        return firstContributions;
+    }
+
+    /**
+     * Returns the first vertex that increased a counter of the vertex
+     * {@code v}, or -1 if none did.
+     */
+    public int getParent(int v) {
+        return contributors[v * firstContributions];
+    }
+
+    /**
+     * Returns the relation code ({@link LexicalGraph#SYNONYM} or
+     * {@link LexicalGraph#ANTONYM}) between the vertex {@code v} and its
+     * parent.
+     */
+    public byte getParentRelation(int v) {
+        return relations[v * firstContributions];
+    }
+
+    /**
+     * Returns the number of contributions kept for the vertex {@code v}.
+     */
+    public int getContributionCount(int v) {
+        int start = v * firstContributions;
+        int count = 0;
+        while (count < firstContributions && contributors[start + count] >= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the vertex of the {@code i}-th contribution to the vertex
+     * {@code v}.
+     */
+    public int getContributor(int v, int i) {
+        return contributors[v * firstContributions + i];
+    }
+
+    /**
+     * Returns the relation code of the {@code i}-th contribution to the
+     * vertex {@code v}.
+     */
+    public byte getContributorRelation(int v, int i) {
+        return relations[v * firstContributions + i];
+    }
+
+    /**
+     * Returns the path through which the polarity reached the vertex
+     * {@code v}: the vertices from a seed word to {@code v}, following the
+     * parents. Each vertex of the path is visited by the propagation before
+     * the next one, so there are no cycles.
+     *
+     * @param v a vertex.
+     * @param state the state of the traced propagation, to find the seed
+     * words (the path stops at the first one).
+     * @return the vertices of the path, starting by a seed word and ending by
+     * {@code v}; only {@code v} if it is a seed word; or an empty array if
+     * {@code v} did not receive a polarity.
+     */
+    public int[] path(int v, PropagationState state) {
+        int length = 1;
+        int u = v;
+        while (state.getIteration(u) != 0) {
+            u = getParent(u);
+            if (u < 0) {
+                return new int[0];
+            }
+            length++;
+        }
+        int[] path = new int[length];
+        u = v;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = u;
+            u = getParent(u);
+        }
+        return path;
+    }
+
+    /**
+     * Returns a text explaining the polarity of the vertex {@code v}: the path
+     * from the seed word, and the contributions kept. Example:
+     * <pre>
+     * mau [-]: bom [+] -ANTONYM-&gt; mau [-]
+     *   contributions: bom (ANTONYM, +), ruim (SYNONYM, -)
+     * </pre>
+     */
+    public String explain(LexicalGraph graph, PropagationState state, int v) {
+        StringBuilder sb = new StringBuilder();
+        appendWord(sb, graph, state, v);
+        sb.append(": ");
+        int[] path = path(v, state);
+        if (path.length == 0) {
+            sb.append("no polarity received");
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                sb.append(" -").append(relationName(getParentRelation(path[i]))).append("-> ");
+            }
+            appendWord(sb, graph, state, path[i]);
+        }
+        int count = getContributionCount(v);
+        if (count > 0) {
+            sb.append("\n  contributions: ");
+            for (int i = 0; i < count; i++) {
+                int u = getContributor(v, i);
+                sb.append(i > 0 ? ", " : "").append(graph.term(u)).append(" (")
+                        .append(relationName(getContributorRelation(v, i))).append(", ")
+                        .append(CsvOutput.getPolarity(state.polarity(u))).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the memory used by this trace, in bytes.
+     */
+    public long byteSize() {
+        return 5L * contributors.length;
+    }
+
+    private static void appendWord(StringBuilder sb, LexicalGraph graph
+            , PropagationState state, int v) {
+        sb.append(graph.term(v)).append(" [").append(CsvOutput.getPolarity(state.polarity(v)));
+        if (state.getIteration(v) == 0) {
+            sb.append(", seed");
+        }
+        sb.append(']');
+    }
+
+    private static String relationName(byte relationCode) {
+        return (relationCode == LexicalGraph.SYNONYM ? "SYNONYM" : "ANTONYM");
+    }
+}
@@ -0,0 +1,144 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.List;
+import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.VertexOrdering;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * that first renumbers the words of the graph, so related words are close in
+ * memory ({@link VertexOrdering}).
+ *
+ * <p>
+ * The propagation ({@link CsrPropagation}) runs over the renumbered graph and
+ * counters, with the seed words in the same order, so the words are visited in
+ * the same order and the result is the same. At the end, the counters are
+ * copied back to the original vertex ids (or {@link Word} objects).
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class ReorderedPropagation {
+
+    public enum Ordering {
+
+        /** Breadth-first order from the seed words: the order of the propagation */
+        BFS,
+        /** Reverse Cuthill-McKee order */
+        RCM
+    }
+
+    private Ordering ordering = Ordering.BFS;
+
+    /** Report of the last propagation, in nanoseconds */
+    private long reorderingTime = 0;
+    private long propagationTime = 0;
+
+    /**
+     * Sets the vertex ordering.
+     *
+     * @return this object.
+     */
+    public ReorderedPropagation setOrdering(Ordering ordering) {
+        this.ordering = ordering;
+        return this;
+    }
+
+    /**
+     * Returns the time used for renumbering the graph and the counters in the
+     * last propagation, in nanoseconds.
+     */
+    public long getReorderingTime() {
+        return reorderingTime;
+    }
+
+    /**
+     * Returns the time used by the propagation itself (over the renumbered
+     * graph) in the last propagation, in nanoseconds.
+     */
+    public long getPropagationTime() {
+        return propagationTime;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept, by the vertex ids of {@code graph}. All the vertices must start
+     * without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public PropagationState propagate(CsrGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = CsrPropagation.setSeedWords(graph, seedWords, state);
+        return propagate(graph, seeds, state);
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept, by the vertex ids of {@code graph}.
+     * @return the state passed as parameter.
+     */
+    public PropagationState propagate(CsrGraph graph, int[] seeds, PropagationState state) {
+        long start = System.nanoTime();
+        int[] order = (ordering == Ordering.RCM
+                ? VertexOrdering.reverseCuthillMcKee(graph)
+                : VertexOrdering.breadthFirst(graph, seeds));
+        int[] newId = VertexOrdering.inverse(order);
+        CsrGraph reordered = graph.permute(order);
+        PropagationState reorderedState = PropagationState.allocateDirect(graph.vertexCount());
+        int[] reorderedSeeds = new int[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            reorderedSeeds[i] = newId[seeds[i]];
+            reorderedState.copyState(reorderedSeeds[i], state, seeds[i]);
+        }
+        long propagationStart = System.nanoTime();
+
+        CsrPropagation.propagate(reordered, reorderedSeeds, reorderedState);
+        long propagationEnd = System.nanoTime();
+
+        for (int v = 0; v < order.length; v++) {
+            state.copyState(order[v], reorderedState, v);
+        }
+        this.propagationTime = propagationEnd - propagationStart;
+        this.reorderingTime = (System.nanoTime() - start) - propagationTime;
+        return state;
+    }
+
+    /**
+     * Same as {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)}:
+     * the counters and the iteration of the words of the graph are changed.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @return the graph passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public SimpleGraph<Word, LexicalRelation> propagate(SimpleGraph<Word, LexicalRelation> graph
+            , List<Word> seedWords) {
+        CsrGraph csr = CsrGraph.fromGraph(graph);
+        PropagationState state = PropagationState.allocateDirect(csr.vertexCount());
+        propagate(csr, seedWords, state);
+        int v = 0;
+        for (Word w : graph.vertexSet()) {
+            state.copyTo(v++, w);
+        }
+        return graph;
+    }
+}
@@ -2,11 +2,30 @@
 package pt.psantos.phd.polarity.propagation.algorithm;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.EdgeDeduplicator;
+import pt.psantos.phd.polarity.propagation.graph.JGraphTLexicalGraph;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+import pt.psantos.phd.polarity.propagation.graph.MappedCsrGraph;
+import org.jgrapht.graph.AbstractBaseGraph;
+import org.jgrapht.graph.DirectedPseudograph;
 import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.loaders.DirectedTriplesLoader;
 import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+import pt.psantos.phd.polarity.propagation.loaders.ResolvedSeeds;
 import pt.psantos.phd.polarity.propagation.loaders.SeedWordsLoader;
+import pt.psantos.phd.polarity.propagation.outputers.BinaryOutput;
 import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
+import pt.psantos.phd.polarity.propagation.outputers.DeltaOutput;
 
 /**
  * Class for running the application from the command line.
@@ -20,12 +39,42 @@ import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
  */
 public class Run {
 
+    /** Implementations of the graph used by the compact mode (option -b) */
+    private enum Backend {
+
+        /** Primitive arrays ({@link CsrGraph}) */
+        CSR,
+        /** JGraphT graph ({@link JGraphTLexicalGraph}) */
+        JGRAPHT
+    }
+
     /** Mandatory command line arguments */
     private static File seedWordsFile = null;
     private static File graphFile = null;
+    private static boolean directed = false; // Load the graph as a directed graph
     /** Optional command line arguments */
     private static File outpFile = null;
+    private static File binaryFile = null; // Also write the words to this columnar binary file
+    private static File previousFile = null; // Also write the differences to this previous output file
     private static String encoding = null; // Encoding for all the files
+    private static boolean pipelined = false; // Overlap reading, propagation and writing
+    private static int shards = 1; // Format and write the output file in this number of ranges, in parallel
+    private static File outOfCoreDirectory = null; // Keep the graph on disk, in this directory
+    private static Long memoryBudget = null; // Memory of the out-of-core queue (null = OutOfCorePropagation.DEFAULT_MEMORY_BUDGET)
+    private static boolean compact = false; // Graph in primitive arrays, state off heap
+    private static File stateFile = null; // Keep the propagation state in this file
+    private static File checkpointFile = null; // Write checkpoints to (and resume from) this file
+    private static Long checkpointInterval = null; // Time between checkpoints (null = Checkpointer.DEFAULT_INTERVAL)
+    private static int threads = 1; // Propagate the connected components in parallel
+    private static boolean weighted = false; // Weighted propagation, with decay
+    private static ReorderedPropagation.Ordering ordering = null; // Renumber the words first
+    private static boolean directionOptimizing = false; // Expand the levels top-down or bottom-up
+    private static boolean sparseMatrix = false; // Votes between levels as sparse matrix-vector products
+    private static Backend backend = null; // Graph implementation used by the compact mode
+    private static List<String> explainedWords = new ArrayList<String>(); // Explain the polarity of these words
+    private static List<LexiconIndex.Query> queries = new ArrayList<LexiconIndex.Query>(); // Answer these queries instead of writing the output file
+    private static int folds = -1; // Cross-validate the seed words with this number of folds (0 = leave-one-out)
+    private static Integer repetitions = null; // Number of times the cross-validation is repeated (null = once)
     
     public static void main(String[] args) throws Exception {
         parseCommandLine(args);
@@ -41,28 +90,425 @@ public class Run {
         System.out.println(outpFile);
         System.out.println(encoding);
         
-        // Reads the graph from file
-        PapelLoader loader = new PapelLoader();
-        SimpleGraph<Word, LexicalRelation> graph = loader.load(graphFile, encoding);
-        List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
-        
-        //PolarityUtils.printGraph(graph);
-        
-        SimpleGraph<Word, LexicalRelation> finalGraph 
-                = PolarityPropagation.propagate(graph, seedWords);
-        
         if(outpFile == null) {
             outpFile = new File(graphFile.getParentFile(), "dic-output.csv");
         }
         
-        CsvOutput csv = new CsvOutput(outpFile, encoding);
-        csv.write(finalGraph);
+        if(directed) {
+            runDirected();
+        } else if(outOfCoreDirectory != null) {
+            runOutOfCore();
+        } else if(weighted) {
+            runWeighted();
+        } else if(folds >= 0) {
+            runCrossValidation();
+            return; // No output file
+        } else if(compact || backend != null || stateFile != null || checkpointFile != null || threads > 1
+                || ordering != null || directionOptimizing || sparseMatrix || !explainedWords.isEmpty() || !queries.isEmpty()) {
+            runCompact();
+            if(!queries.isEmpty()) {
+                return; // No output file
+            }
+        } else if(pipelined) {
+            runPipelined();
+        } else {
+            // Reads the graph from file
+            PapelLoader loader = new PapelLoader();
+            SimpleGraph<Word, LexicalRelation> graph = loader.load(graphFile, encoding);
+            List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
+
+            //PolarityUtils.printGraph(graph);
+
+            SimpleGraph<Word, LexicalRelation> finalGraph 
+                    = PolarityPropagation.propagate(graph, seedWords);
+
+            CsvOutput csv = newCsvOutput();
+            writeDelta(finalGraph);
+            csv.write(finalGraph);
+            writeBinary(finalGraph);
+        }
         
         System.out.println("Output file: " + outpFile.getAbsolutePath());
     }
     
     
     
+    /**
+     * Runs the same steps as {@link #main(java.lang.String[])}, but overlapping
+     * them: the seed words are read while the graph is loaded, the graph file
+     * is parsed by a separate thread while the graph is built, and the output
+     * file is written by a separate thread while the stats are computed.
+     */
+    private static void runPipelined() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Word>> seedWordsTask = executor.submit(new Callable<List<Word>>() {
+                @Override
+                public List<Word> call() throws Exception {
+                    return SeedWordsLoader.load(seedWordsFile, encoding);
+                }
+            });
+
+            // Reads the graph from file
+            PapelLoader loader = new PapelLoader();
+            loader.setPipelined(true);
+            SimpleGraph<Word, LexicalRelation> graph = loader.load(graphFile, encoding);
+
+            final SimpleGraph<Word, LexicalRelation> finalGraph 
+                    = PolarityPropagation.propagate(graph, seedWordsTask.get());
+
+            Future<PolarityStats> statsTask = executor.submit(new Callable<PolarityStats>() {
+                @Override
+                public PolarityStats call() {
+                    return new PolarityStats(finalGraph);
+                }
+            });
+
+            CsvOutput csv = newCsvOutput();
+            csv.setPipelined(true);
+            writeDelta(finalGraph);
+            csv.write(finalGraph);
+            writeBinary(finalGraph);
+
+            System.out.println(statsTask.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    /**
+     * Runs the propagation over a directed graph (option -d). The graph is
+     * kept in primitive arrays ({@link DirectedCsrGraph}), unless the option
+     * -b jgrapht was given. If the option -k was given, the counters are kept
+     * in that file.
+     */
+    private static void runDirected() throws Exception {
+        DirectedTriplesLoader loader = new DirectedTriplesLoader();
+        CsvOutput csv = newCsvOutput();
+
+        if (backend == Backend.JGRAPHT) {
+            List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
+            DirectedPseudograph<Word, LexicalRelation> graph
+                    = loader.loadDirected(graphFile, encoding);
+            // The propagation reads the counters of the seed words from the
+            // graph words, so the seed words are replaced by the graph words.
+            HashMap<Word, Word> graphWords = new HashMap<Word, Word>();
+            for (Word w : graph.vertexSet()) {
+                graphWords.put(w, w);
+            }
+            List<Word> graphSeedWords = new ArrayList<Word>();
+            for (Word seedWord : seedWords) {
+                Word w = graphWords.get(seedWord);
+                if (w != null && !w.isSeed()) {
+                    graphSeedWords.add(w.copyState(seedWord));
+                }
+            }
+            PolarityPropagation.propagate(graph, graphSeedWords);
+            writeDelta(graph);
+            csv.write(graph);
+            writeBinary(graph);
+        } else {
+            DirectedCsrGraph graph = loader.loadDirectedCompact(graphFile, encoding);
+            PropagationState state = (stateFile != null
+                    ? PropagationState.create(stateFile, graph.vertexCount())
+                    : PropagationState.allocateDirect(graph.vertexCount()));
+            ResolvedSeeds seedWords = SeedWordsLoader.load(seedWordsFile, encoding, graph, state);
+            System.out.println(seedWords);
+            new DirectedCsrPropagation().propagate(graph, seedWords.getVertices(), state);
+            state.flush();
+            writeDelta(graph, state);
+            csv.write(graph, state);
+            writeBinary(graph, state);
+            state.close();
+        }
+    }
+    
+    /**
+     * Runs the propagation for graphs that do not fit in the Java heap. The
+     * graph and the state of the propagation are kept on disk, in the
+     * directory given by the option -x.
+     */
+    private static void runOutOfCore() throws Exception {
+        PapelLoader loader = new PapelLoader();
+        MappedCsrGraph graph = loader.loadMapped(graphFile, encoding, outOfCoreDirectory);
+        List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
+
+        OutOfCorePropagation propagation = new OutOfCorePropagation(outOfCoreDirectory);
+        if(memoryBudget != null) {
+            propagation.setMemoryBudget(memoryBudget);
+        }
+        PropagationState state = propagation.propagate(graph, seedWords);
+
+        CsvOutput csv = newCsvOutput();
+        writeDelta(graph, state);
+        csv.write(graph, state);
+        writeBinary(graph, state);
+
+        state.close();
+        graph.close();
+    }
+    
+    /**
+     * Runs the propagation over a graph kept in primitive arrays (or in the
+     * implementation given by the option -b), with the counters of each word
+     * kept outside the Java heap. If the option -k was
+     * given, the counters are kept in that file. If the option -r was given,
+     * checkpoints are written to that file, and the propagation is resumed
+     * from it if it already exists (and was created for the same graph and
+     * seed words). The file is deleted when the propagation ends. If the
+     * option -v was given, the propagation records which words gave each word
+     * its polarity. Otherwise, if the option -t was given (and -r was not),
+     * the connected components are propagated in parallel, and if the option
+     * -l was given (and -r and -t were not), the words are renumbered before
+     * the propagation, or the levels are expanded top-down or bottom-up
+     * ({@link DirectionOptimizingPropagation}), or the votes between levels are
+     * sparse matrix-vector products ({@link SpmvPropagation}).
+     */
+    private static void runCompact() throws Exception {
+        LexicalGraph graph = loadGraph();
+
+        PropagationState state;
+        Checkpointer checkpointer = null;
+        if (checkpointFile != null) {
+            checkpointer = new Checkpointer(checkpointFile, checkpointInterval != null
+                    ? checkpointInterval : Checkpointer.DEFAULT_INTERVAL);
+        }
+        try {
+            state = (stateFile != null
+                    ? PropagationState.create(stateFile, graph.vertexCount())
+                    : PropagationState.allocateDirect(graph.vertexCount()));
+            ResolvedSeeds seedWords = SeedWordsLoader.load(seedWordsFile, encoding, graph, state);
+            System.out.println(seedWords);
+            int[] seeds = seedWords.getSortedVertices();
+            if (checkpointFile != null && checkpointFile.exists()) {
+                System.out.println("Resuming from " + checkpointFile.getAbsolutePath());
+                if (!explainedWords.isEmpty()) {
+                    System.err.println("The polarity of the words given by -v is not explained"
+                            + " when a propagation is resumed.");
+                }
+                PropagationCheckpoint checkpoint = PropagationCheckpoint.read(checkpointFile);
+                try {
+                    CsrPropagation.resume(graph, seeds, state, checkpoint, checkpointer);
+                } catch (IllegalArgumentException ex) {
+                    System.err.println(ex.getMessage() + " Remove " + checkpointFile.getAbsolutePath()
+                            + " to start a new propagation.");
+                    System.exit(1);
+                }
+                state.flush();
+            } else {
+                if (!explainedWords.isEmpty()) {
+                    PropagationTrace trace = new PropagationTrace(graph.vertexCount());
+                    CsrPropagation.propagate(graph, seeds, state, checkpointer, trace);
+                    explain(graph, state, trace);
+                } else if (threads > 1 && checkpointer == null) {
+                    ComponentPropagation propagation = new ComponentPropagation();
+                    propagation.setThreads(threads);
+                    propagation.propagate(CsrGraph.copyOf(graph), seeds, state);
+                    System.out.println(propagation);
+                } else if (ordering != null && checkpointer == null) {
+                    ReorderedPropagation propagation = new ReorderedPropagation();
+                    propagation.setOrdering(ordering);
+                    propagation.propagate(CsrGraph.copyOf(graph), seeds, state);
+                } else if (directionOptimizing && checkpointer == null) {
+                    DirectionOptimizingPropagation propagation = new DirectionOptimizingPropagation();
+                    propagation.propagate(graph, DirectionOptimizingPropagation.reverseEdges(graph)
+                            , seeds, state);
+                    System.out.println(propagation);
+                } else if (sparseMatrix && checkpointer == null) {
+                    SpmvPropagation.propagate(SignedCsrMatrix.fromGraph(graph), seeds, state);
+                } else {
+                    CsrPropagation.propagate(graph, seeds, state, checkpointer);
+                }
+                state.flush();
+            }
+        } finally {
+            if (checkpointer != null) {
+                checkpointer.close();
+            }
+        }
+
+        if (!queries.isEmpty()) {
+            query(graph, state);
+            state.close();
+            return;
+        }
+        CsvOutput csv = newCsvOutput();
+        writeDelta(graph, state);
+        csv.write(graph, state);
+        writeBinary(graph, state);
+        state.close();
+    }
+    
+    /**
+     * Prints the words that answer each query given by the option -q
+     * ({@link LexiconIndex#query(java.lang.String)}), one per line, as in the
+     * output file followed by their margin.
+     */
+    private static void query(LexicalGraph graph, PropagationState state) {
+        LexiconIndex index = new LexiconIndex(graph, state);
+        for (LexiconIndex.Query query : queries) {
+            int[] vertices = index.query(query);
+            System.out.println("QUERY " + query + ": " + vertices.length + " words");
+            for (int v : vertices) {
+                System.out.println(index.describe(v));
+            }
+        }
+    }
+    
+    /**
+     * Prints the path through which each word given by the option -v received
+     * its polarity.
+     */
+    private static void explain(LexicalGraph graph, PropagationState state
+            , PropagationTrace trace) {
+        for (String word : explainedWords) {
+            int v = graph.vertexId(word);
+            if (v < 0) {
+                System.out.println(word + ": not found in the graph");
+            } else {
+                System.out.println(trace.explain(graph, state, v));
+            }
+        }
+    }
+    
+    /**
+     * Runs the weighted propagation ({@link WeightedPropagation}), with the
+     * default weights, decay and convergence threshold.
+     */
+    private static void runWeighted() throws Exception {
+        LexicalGraph graph = loadGraph();
+        List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
+
+        WeightedPropagation propagation = new WeightedPropagation();
+        propagation.setThreads(threads);
+        WeightedScores scores = propagation.propagate(graph, seedWords);
+        System.out.println("Iterations: " + scores.getIterations()
+                + " (max delta: " + scores.getMaxDelta() + ")");
+
+        CsvOutput csv = newCsvOutput();
+        csv.write(graph, scores);
+    }
+    
+    /**
+     * Evaluates the propagation by cross-validation over the seed words
+     * ({@link CrossValidation}), with the number of folds given by the option
+     * -j. No output file is written.
+     */
+    private static void runCrossValidation() throws Exception {
+        LexicalGraph graph = loadGraph();
+        List<Word> seedWords = SeedWordsLoader.load(seedWordsFile, encoding);
+
+        CrossValidation validation = new CrossValidation();
+        validation.setFolds(folds);
+        if(repetitions != null) {
+            validation.setRepetitions(repetitions);
+        }
+        validation.setThreads(threads);
+        validation.evaluate(graph, seedWords);
+        System.out.println(validation);
+    }
+    
+    /**
+     * Creates the writer of the output file, in sharded mode if the option -n
+     * was given.
+     */
+    private static CsvOutput newCsvOutput() {
+        return new CsvOutput(outpFile, encoding).setShards(shards);
+    }
+    
+    /**
+     * Writes the words of the graph to the columnar binary file given by the
+     * option -f, if any.
+     */
+    private static void writeBinary(AbstractBaseGraph<Word, LexicalRelation> graph) throws Exception {
+        if (binaryFile != null) {
+            new BinaryOutput(binaryFile).write(graph);
+            System.out.println("Binary output file: " + binaryFile.getAbsolutePath());
+        }
+    }
+    
+    /**
+     * Same as {@link #writeBinary(org.jgrapht.graph.AbstractBaseGraph)}, for
+     * the graphs seen through int ids.
+     */
+    private static void writeBinary(LexicalGraph graph, PropagationState state) throws Exception {
+        if (binaryFile != null) {
+            new BinaryOutput(binaryFile).write(graph, state);
+            System.out.println("Binary output file: " + binaryFile.getAbsolutePath());
+        }
+    }
+    
+    /**
+     * Writes the differences between the previous output file given by the
+     * option -a (if any) and the words of the graph, to the output file name
+     * followed by "-delta". Must be called before the output files are
+     * written, as they may replace the previous one.
+     */
+    private static void writeDelta(AbstractBaseGraph<Word, LexicalRelation> graph) throws Exception {
+        if (previousFile != null) {
+            DeltaOutput delta = new DeltaOutput(deltaFile(), encoding);
+            delta.write(previousFile, graph);
+            System.out.println(delta);
+            System.out.println("Delta output file: " + deltaFile().getAbsolutePath());
+        }
+    }
+    
+    /**
+     * Same as {@link #writeDelta(org.jgrapht.graph.AbstractBaseGraph)}, for
+     * the graphs seen through int ids.
+     */
+    private static void writeDelta(LexicalGraph graph, PropagationState state) throws Exception {
+        if (previousFile != null) {
+            DeltaOutput delta = new DeltaOutput(deltaFile(), encoding);
+            delta.write(previousFile, graph, state);
+            System.out.println(delta);
+            System.out.println("Delta output file: " + deltaFile().getAbsolutePath());
+        }
+    }
+    
+    /**
+     * Returns the name of the output file followed by "-delta" (before the
+     * extension).
+     */
+    private static File deltaFile() {
+        String name = outpFile.getName();
+        int dot = name.lastIndexOf('.');
+        name = (dot > 0 ? name.substring(0, dot) + "-delta" + name.substring(dot)
+                : name + "-delta");
+        return new File(outpFile.getAbsoluteFile().getParentFile(), name);
+    }
+    
+    /**
+     * Reads the graph from file, with the implementation given by the option
+     * -b (primitive arrays by default).
+     */
+    private static LexicalGraph loadGraph() throws Exception {
+        PapelLoader loader = new PapelLoader();
+        if (backend == Backend.JGRAPHT) {
+            return new JGraphTLexicalGraph(loader.load(graphFile, encoding));
+        }
+        CsrGraph graph = loader.loadCompact(graphFile, encoding);
+        printDeduplication(graph, loader.getDeduplication());
+        return graph;
+    }
+    
+    /**
+     * Prints the number of repeated relations removed while loading the graph,
+     * and the first pairs of words with conflicting relations.
+     */
+    private static void printDeduplication(CsrGraph graph, EdgeDeduplicator deduplication) {
+        System.out.println(deduplication);
+        long[] conflicts = deduplication.getConflicts();
+        for (int i = 0; i < conflicts.length && i < 10; i++) {
+            int u = (int) (conflicts[i] >>> 32);
+            int v = (int) conflicts[i];
+            System.out.println("  " + graph.term(u) + " - " + graph.term(v));
+        }
+        if (deduplication.getConflictCount() > 10) {
+            System.out.println("  ...");
+        }
+    }
+    
   /**
    * Parse command line options.
    */
@@ -72,11 +518,37 @@ public class Run {
     for(int i = 0; i < args.length && args[i].charAt(0) == '-'; i++) {
       switch(args[i].charAt(1)) {
 
+        // -a file_name = previous output file (csv or binary). Also write the differences to it
+        case 'a':
+          Run.previousFile = new File(args[++i]);
+          break;
+
+        // -b csr|jgrapht = graph implementation used by the compact mode
+        case 'b':
+          Run.backend = Backend.valueOf(args[++i].toUpperCase());
+          break;
+
+        // -c = compact mode (graph in primitive arrays, counters off heap)
+        case 'c':
+          Run.compact = true;
+          break;
+
+        // -d file_name = name of the file containing the graph, loaded as a directed graph
+        case 'd':
+          Run.graphFile = new File(args[++i]);
+          Run.directed = true;
+          break;
+
         // -e encoding = character encoding for all files
         case 'e':
           Run. encoding = args[++i];
           break;
 
+        // -f file_name = also write the final list of words to this columnar binary file
+        case 'f':
+          Run.binaryFile = new File(args[++i]);
+          break;
+
         // -g file_name = name of the file containing the graph
         case 'g':
           Run.graphFile = new File(args[++i]);
@@ -87,9 +559,68 @@ public class Run {
           comandLineUsage();
           break;
 
+        // -i seconds = time between checkpoints
+        case 'i':
+          Run.checkpointInterval = Long.parseLong(args[++i]) * 1000;
+          break;
+
+        // -j folds = evaluate the propagation by cross-validation over the seed words (0 = leave-one-out)
+        case 'j':
+          Run.folds = Integer.parseInt(args[++i]);
+          break;
+
+        // -k file_name = keep the counters of each word in this file (compact mode)
+        case 'k':
+          Run.stateFile = new File(args[++i]);
+          break;
+
+        // -l bfs|rcm|direction|spmv = renumber the words before the propagation,
+        // expand each level top-down or bottom-up, or as sparse matrix-vector
+        // products (compact mode)
+        case 'l':
+          if(args[++i].equalsIgnoreCase("direction")) {
+              Run.directionOptimizing = true;
+          } else if(args[i].equalsIgnoreCase("spmv")) {
+              Run.sparseMatrix = true;
+          } else {
+              Run.ordering = ReorderedPropagation.Ordering.valueOf(args[i].toUpperCase());
+          }
+          break;
+
+        // -m megabytes = memory used by the queue of words, in out-of-core mode
+        case 'm':
+          Run.memoryBudget = Long.parseLong(args[++i]) << 20;
+          break;
+
+        // -n shards = format and write the output file in this number of ranges, in parallel
+        case 'n':
+          Run.shards = Integer.parseInt(args[++i]);
+          break;
+
         // -o file_name = name of the file to output the final list of words
         case 'o':
-          Run.seedWordsFile = new File(args[++i]);
+          Run.outpFile = new File(args[++i]);
+          break;
+
+        // -p = pipelined mode
+        case 'p':
+          Run.pipelined = true;
+          break;
+
+        // -q query = answer this query instead of writing the output file (compact mode). Can be repeated
+        case 'q':
+          try {
+              Run.queries.add(LexiconIndex.Query.parse(args[++i]));
+          } catch (IllegalArgumentException ex) {
+              System.err.println(ex.getMessage());
+              comandLineUsage();
+              System.exit(1);
+          }
+          break;
+
+        // -r file_name = write checkpoints to this file, and resume from it if it exists
+        case 'r':
+          Run.checkpointFile = new File(args[++i]);
           break;
 
         // -s file_name = name of the file containing the list of seed words.
@@ -97,7 +628,37 @@ public class Run {
           Run.seedWordsFile = new File(args[++i]);
           break;
 
-            
+        // -t threads = propagate the connected components in parallel (compact mode)
+        case 't':
+          Run.threads = Integer.parseInt(args[++i]);
+          break;
+
+        // -u file_name = same as -g
+        case 'u':
+          Run.graphFile = new File(args[++i]);
+          Run.directed = false;
+          break;
+
+        // -v word = explain the polarity of this word (compact mode). Can be repeated
+        case 'v':
+          Run.explainedWords.add(args[++i]);
+          break;
+
+        // -w = weighted propagation
+        case 'w':
+          Run.weighted = true;
+          break;
+
+        // -x directory = out-of-core mode. Keep the graph in this directory
+        case 'x':
+          Run.outOfCoreDirectory = new File(args[++i]);
+          break;
+
+        // -y repetitions = number of times the cross-validation is repeated
+        case 'y':
+          Run.repetitions = Integer.parseInt(args[++i]);
+          break;
+
         default:
           System.err.println("Unrecognised option " + args[i]);
           comandLineUsage();
@@ -126,6 +687,77 @@ public class Run {
           ok = false;
       }
       
+      // Only one mode can be given
+      List<String> modes = new ArrayList<String>();
+      if(Run.directed) {
+          modes.add("-d");
+      }
+      if(Run.outOfCoreDirectory != null) {
+          modes.add("-x");
+      }
+      if(Run.weighted) {
+          modes.add("-w");
+      }
+      if(Run.folds >= 0) {
+          modes.add("-j");
+      }
+      if(Run.pipelined) {
+          modes.add("-p");
+      }
+      if(modes.size() > 1) {
+          System.err.println("The options " + modes + " cannot be used together!");
+          ok = false;
+      }
+      
+      // Each mode only uses some of the other options
+      List<String> options = givenOptions();
+      String mode = (modes.size() == 1 ? modes.get(0) : null);
+      // The options that only tune a mode need it
+      if(Run.checkpointInterval != null && Run.checkpointFile == null) {
+          System.err.println("The option -i can only be used with -r!");
+          ok = false;
+      }
+      if(Run.memoryBudget != null && !"-x".equals(mode)) {
+          System.err.println("The option -m can only be used with -x!");
+          ok = false;
+      }
+      if(Run.repetitions != null && !"-j".equals(mode)) {
+          System.err.println("The option -y can only be used with -j!");
+          ok = false;
+      }
+      if("-d".equals(mode)) {
+          ok &= checkOptions(mode, options, "-c", "-b", "-k", "-o", "-n", "-f", "-a");
+          if(Run.backend == Backend.JGRAPHT && Run.stateFile != null) {
+              System.err.println("The option -k cannot be used with -d and -b jgrapht!");
+              ok = false;
+          }
+      } else if("-x".equals(mode) || "-p".equals(mode)) {
+          ok &= checkOptions(mode, options, "-o", "-n", "-f", "-a");
+      } else if("-w".equals(mode)) {
+          ok &= checkOptions(mode, options, "-c", "-b", "-t", "-o", "-n");
+      } else if("-j".equals(mode)) {
+          ok &= checkOptions(mode, options, "-c", "-b", "-t");
+      } else if(mode == null) {
+          // The checkpoints are only written by the propagation in a single
+          // thread, without renumbering the words
+          if(Run.checkpointFile != null && (Run.threads > 1 || Run.ordering != null
+                  || Run.directionOptimizing || Run.sparseMatrix)) {
+              System.err.println("The option -r cannot be used with -t or -l!");
+              ok = false;
+          }
+          // The polarity is only explained by the propagation in a single
+          // thread, without renumbering the words
+          if(!Run.explainedWords.isEmpty() && (Run.threads > 1 || Run.ordering != null
+                  || Run.directionOptimizing || Run.sparseMatrix)) {
+              System.err.println("The option -v cannot be used with -t or -l!");
+              ok = false;
+          }
+          // No output file is written when answering queries
+          if(!Run.queries.isEmpty()) {
+              ok &= checkOptions("-q", options, "-c", "-b", "-k", "-r", "-t", "-l", "-v");
+          }
+      }
+      
       if(!ok) {
           comandLineUsage();
       }
@@ -133,9 +765,77 @@ public class Run {
       return ok;
   }
   
+  /**
+   * Returns the optional options that were given, other than the modes (-d,
+   * -x, -w, -j and -p) and the options that only tune one of them or -r (-m,
+   * -y and -i), which are checked apart.
+   */
+  private static List<String> givenOptions() {
+      List<String> options = new ArrayList<String>();
+      if(Run.compact) {
+          options.add("-c");
+      }
+      if(Run.backend != null) {
+          options.add("-b");
+      }
+      if(Run.stateFile != null) {
+          options.add("-k");
+      }
+      if(Run.checkpointFile != null) {
+          options.add("-r");
+      }
+      if(Run.threads > 1) {
+          options.add("-t");
+      }
+      if(Run.ordering != null || Run.directionOptimizing || Run.sparseMatrix) {
+          options.add("-l");
+      }
+      if(!Run.explainedWords.isEmpty()) {
+          options.add("-v");
+      }
+      if(!Run.queries.isEmpty()) {
+          options.add("-q");
+      }
+      if(Run.outpFile != null) {
+          options.add("-o");
+      }
+      if(Run.shards > 1) {
+          options.add("-n");
+      }
+      if(Run.binaryFile != null) {
+          options.add("-f");
+      }
+      if(Run.previousFile != null) {
+          options.add("-a");
+      }
+      return options;
+  }
+  
+  /**
+   * Prints an error for each option in {@code options} that is not used by
+   * {@code mode}.
+   *
+   * @param mode the option that chooses the mode.
+   * @param options the options that were given.
+   * @param used the options used by the mode.
+   * @return {@code true} if all the options are used by the mode.
+   */
+  private static boolean checkOptions(String mode, List<String> options, String... used) {
+      boolean ok = true;
+      List<String> usedOptions = Arrays.asList(used);
+      for(String option : options) {
+          if(!option.equals(mode) && !usedOptions.contains(option)) {
+              System.err.println("The option " + option + " cannot be used with " + mode + "!");
+              ok = false;
+          }
+      }
+      return ok;
+  }
+  
   private static void comandLineUsage() {
       System.out.println("USAGE: java -jar polarity-propagation-x.x.x-jar -seeds file_name "
-              + "-graph file_name [-output file_name ] [-encoding encoding_name]");
+              + "(-graph|-undirected|-directed) file_name [-output file_name ] [-n shards] [-f file_name] [-a file_name] [-encoding encoding_name] [-pipelined] "
+              + "[-compact [-b csr|jgrapht] [-k file_name] [-r file_name [-i seconds]] [-t threads] [-l bfs|rcm|direction|spmv] [-v word] [-q query]] [-weighted] [-j folds [-y repetitions]] [-x directory [-m megabytes]]");
   }
     
 }
@@ -0,0 +1,106 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * The signed adjacency matrix of a graph of words, in the Compressed Sparse
+ * Row (CSR) format: the entry (u, v) is +1 if u and v are synonyms, -1 if
+ * they are antonyms, and 0 if they are not related.
+ *
+ * <p>
+ * With this matrix, the votes a word receives from its neighbors are a sparse
+ * matrix-vector product (SpMV). If {@code x} is the vector with +1 for the
+ * positive words and -1 for the negative ones, and {@code z} the 0/1 vector of
+ * the neutral words, the word {@code u} receives
+ * {@code (|A||x| + Ax) / 2} positive votes, {@code (|A||x| - Ax) / 2} negative
+ * votes and {@code |A|z} neutral votes (row {@code u} of each product), where
+ * {@code |A|} is the matrix without signs (see {@link SpmvPropagation}).
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class SignedCsrMatrix {
+
+    private final int rows;
+    /** Start of each row (plus one) */
+    final int[] rowPtr;
+    /** Column of each entry */
+    final int[] colIdx;
+    /** Value of each entry: +1 or -1 */
+    final byte[] values;
+
+    private SignedCsrMatrix(int rows, int[] rowPtr, int[] colIdx, byte[] values) {
+        this.rows = rows;
+        this.rowPtr = rowPtr;
+        this.colIdx = colIdx;
+        this.values = values;
+    }
+
+    /**
+     * Creates the signed adjacency matrix of the graph {@code graph}. The
+     * rows and the columns are the vertex ids, and the entries of each row
+     * are in the order of the relations of the vertex.
+     */
+    public static SignedCsrMatrix fromGraph(LexicalGraph graph) {
+        int n = graph.vertexCount();
+        int[] rowPtr = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            rowPtr[v + 1] = rowPtr[v] + graph.edgesEnd(v) - graph.edgesStart(v);
+        }
+        int[] colIdx = new int[rowPtr[n]];
+        byte[] values = new byte[rowPtr[n]];
+        for (int v = 0; v < n; v++) {
+            int k = rowPtr[v];
+            for (int e = graph.edgesStart(v), end = graph.edgesEnd(v); e < end; e++, k++) {
+                colIdx[k] = graph.target(e);
+                values[k] = (byte) (graph.relationCode(e) == LexicalGraph.SYNONYM ? 1 : -1);
+            }
+        }
+        return new SignedCsrMatrix(n, rowPtr, colIdx, values);
+    }
+
+    /**
+     * Returns the number of rows (and columns).
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of entries different from 0.
+     */
+    public int nonZeros() {
+        return rowPtr[rows];
+    }
+
+    /**
+     * Computes the rows {@code rows[0..count-1]} of the products
+     * {@code Ax}, {@code |A||x|} and {@code |A|z}, in one pass over those rows.
+     * The i-th row given is written at the position {@code i} of
+     * {@code signed}, {@code unsigned} and {@code neutral}.
+     *
+     * @param x a vector with -1, 0 or +1 for each column.
+     * @param z a vector with 0 or 1 for each column.
+     */
+    public void multiplyRows(int[] rows, int count, byte[] x, byte[] z
+            , int[] signed, int[] unsigned, int[] neutral) {
+        for (int i = 0; i < count; i++) {
+            int u = rows[i];
+            int s = 0;
+            int a = 0;
+            int c = 0;
+            for (int e = rowPtr[u], end = rowPtr[u + 1]; e < end; e++) {
+                int col = colIdx[e];
+                int xc = x[col];
+                s += values[e] * xc;
+                a += xc * xc;
+                c += z[col];
+            }
+            signed[i] = s;
+            unsigned[i] = a;
+            neutral[i] = c;
+        }
+    }
+}
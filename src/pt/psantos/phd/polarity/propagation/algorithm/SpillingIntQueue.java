@@ -0,0 +1,164 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO queue of ints that uses a bounded amount of memory. When the queue
+ * gets bigger than its memory buffers, the ints in the middle of the queue
+ * are moved (spilled) to a file, and read back when needed.
+ *
+ * <p>
+ * The queue keeps two buffers in memory: one with the ints at the head of the
+ * queue (the next ones to be removed) and another with the ints at the tail of
+ * the queue (the last ones added). The ints between them are in the file.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class SpillingIntQueue {
+
+    private final File file;
+    private RandomAccessFile randomAccessFile = null;
+    private FileChannel channel = null;
+    private final ByteBuffer io;
+
+    private int[] head;
+    private int headPosition = 0;
+    private int headSize = 0;
+
+    private int[] tail;
+    private int tailSize = 0;
+
+    /** Next int to read and next int to write in the file */
+    private long spillRead = 0;
+    private long spillWrite = 0;
+
+    private long size = 0;
+
+    /**
+     * Creates a queue that uses at most {@code memoryBudget} bytes of the Java
+     * heap, and spills to the file {@code file}.
+     *
+     * @param file file used when the queue does not fit in memory. It is only
+     * created if needed.
+     * @param memoryBudget maximum number of bytes used by the buffers.
+     */
+    public SpillingIntQueue(File file, long memoryBudget) {
+        // Three buffers: head, tail and the buffer used for reading/writing.
+        int capacity = (int) Math.max(1024, Math.min(Integer.MAX_VALUE / 4, memoryBudget / 12));
+        this.file = file;
+        this.head = new int[capacity];
+        this.tail = new int[capacity];
+        this.io = ByteBuffer.allocate(4 * capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Adds {@code value} to the end of the queue.
+     */
+    public void add(int value) throws IOException {
+        if (tailSize == tail.length) {
+            spillTail();
+        }
+        tail[tailSize++] = value;
+        size++;
+    }
+
+    /**
+     * Removes the int at the head of the queue.
+     *
+     * @throws NoSuchElementException if the queue is empty.
+     */
+    public int remove() throws IOException {
+        if (headPosition == headSize) {
+            refillHead();
+        }
+        size--;
+        return head[headPosition++];
+    }
+
+    /**
+     * Closes and deletes the spill file.
+     */
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            randomAccessFile.close();
+            file.delete();
+            channel = null;
+        }
+    }
+
+    /**
+     * Moves all the ints of the tail buffer to the end of the file.
+     */
+    private void spillTail() throws IOException {
+        if (channel == null) {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+        }
+        io.clear();
+        io.asIntBuffer().put(tail, 0, tailSize);
+        io.limit(4 * tailSize);
+        long position = 4 * spillWrite;
+        while (io.hasRemaining()) {
+            position += channel.write(io, position);
+        }
+        spillWrite += tailSize;
+        tailSize = 0;
+    }
+
+    /**
+     * Fills the head buffer with the next ints of the file or, if the file has
+     * no more ints, with the tail buffer.
+     */
+    private void refillHead() throws IOException {
+        headPosition = 0;
+        if (spillRead < spillWrite) {
+            int n = (int) Math.min(head.length, spillWrite - spillRead);
+            io.clear();
+            io.limit(4 * n);
+            long position = 4 * spillRead;
+            while (io.hasRemaining()) {
+                int read = channel.read(io, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file " + file);
+                }
+                position += read;
+            }
+            io.flip();
+            io.asIntBuffer().get(head, 0, n);
+            headSize = n;
+            spillRead += n;
+            // All the file was read. Start writing from its beginning again.
+            if (spillRead == spillWrite) {
+                spillRead = 0;
+                spillWrite = 0;
+            }
+        } else if (tailSize > 0) {
+            int[] aux = head;
+            head = tail;
+            headSize = tailSize;
+            tail = aux;
+            tailSize = 0;
+        } else {
+            headSize = 0;
+            throw new NoSuchElementException();
+        }
+    }
+}
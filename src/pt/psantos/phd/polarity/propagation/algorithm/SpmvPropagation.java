@@ -0,0 +1,151 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Implementation of the polarity propagation over an <b>undirected graph</b>
+ * (see {@link PolarityPropagation#propagate(org.jgrapht.graph.SimpleGraph, java.util.List)})
+ * as sparse matrix-vector products over the signed adjacency matrix of the
+ * graph ({@link SignedCsrMatrix}). The result is the same as in
+ * {@link PolarityPropagation}.
+ *
+ * <p>
+ * The words are visited level by level (the words first reached by the same
+ * level of the breadth-first search). Each level takes two passes:
+ * <ol>
+ * <li>the words of the level are visited in queue order, and send their votes
+ * to the words of the same level still in the queue (only this pass depends on
+ * the order). The polarity of each word when it is visited is kept in two
+ * vectors, {@code x} (+1 positive, -1 negative) and {@code z} (1 neutral), and
+ * the words not seen yet are added to the next level, in the order
+ * {@link CsrPropagation} would add them;</li>
+ * <li>the votes of the level to the next one are the rows of the next level in
+ * the products {@code Ax}, {@code |A||x|} and {@code |A|z}
+ * ({@link SignedCsrMatrix#multiplyRows(int[], int, byte[], byte[], int[], int[], int[])}),
+ * and are added to the counters of each word in one call.</li>
+ * </ol>
+ * </p>
+ *
+ * <p>
+ * <b>Note:</b> the first pass reads the relations of the level, and the
+ * products read the relations of the next level, so each relation is read
+ * twice. Use {@code tests.SpmvBenchmark} to compare it with
+ * {@link CsrPropagation} on a graph.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class SpmvPropagation {
+
+    /** Status of a vertex added to the next level */
+    private static final byte NEXT_LEVEL = 3;
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity.
+     * @param state where the counters and the iteration of each vertex are
+     * kept. All the vertices must start without polarity.
+     * @return the state passed as parameter.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public static PropagationState propagate(LexicalGraph graph, List<Word> seedWords
+            , PropagationState state) {
+        int[] seeds = CsrPropagation.setSeedWords(graph, seedWords, state);
+        return propagate(SignedCsrMatrix.fromGraph(graph), seeds, state);
+    }
+
+    /**
+     * Propagates the polarity of the seed vertices to the remaining vertices
+     * of the graph.
+     *
+     * @param matrix the signed adjacency matrix of an undirected graph of
+     * words.
+     * @param seeds the seed vertices, in the order they should be visited. The
+     * state of these vertices must be already set.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the state passed as parameter.
+     */
+    public static PropagationState propagate(SignedCsrMatrix matrix, int[] seeds
+            , PropagationState state) {
+        int n = matrix.rows();
+        int[] rowPtr = matrix.rowPtr;
+        int[] colIdx = matrix.colIdx;
+        byte[] values = matrix.values;
+        byte[] status = new byte[n];
+        // Polarity of the words of the level when they were visited
+        byte[] x = new byte[n];
+        byte[] z = new byte[n];
+
+        int[] frontier = new int[n];
+        int[] next = new int[n];
+        // Rows of the next level in each product
+        int[] signed = new int[n];
+        int[] unsigned = new int[n];
+        int[] neutral = new int[n];
+        int frontierSize = 0;
+        for (int v : seeds) {
+            if (status[v] == CsrPropagation.NOT_VISITED) {
+                status[v] = CsrPropagation.IN_QUEUE;
+                frontier[frontierSize++] = v;
+            }
+        }
+
+        while (frontierSize > 0) {
+            int nextSize = 0;
+
+            // 1. Votes inside the level, in queue order
+            for (int i = 0; i < frontierSize; i++) {
+                int node = frontier[i];
+                byte polarity = state.polarity(node);
+                int nextIteration = state.getIteration(node) + 1;
+                x[node] = (byte) (polarity == PropagationState.POSITIVE ? 1
+                        : polarity == PropagationState.NEGATIVE ? -1 : 0);
+                z[node] = (byte) (polarity == PropagationState.NEUTRAL ? 1 : 0);
+                for (int e = rowPtr[node], end = rowPtr[node + 1]; e < end; e++) {
+                    int neighborNode = colIdx[e];
+                    if (status[neighborNode] == CsrPropagation.VISITED) {
+                        continue;
+                    }
+                    if (!state.isIterationSet(neighborNode)) {
+                        state.setIteration(neighborNode, nextIteration);
+                    }
+                    if (status[neighborNode] == CsrPropagation.IN_QUEUE) {
+                        CsrPropagation.vote(state, neighborNode, polarity, values[e] > 0);
+                    } else if (status[neighborNode] == CsrPropagation.NOT_VISITED) {
+                        status[neighborNode] = NEXT_LEVEL;
+                        next[nextSize++] = neighborNode;
+                    }
+                }
+                status[node] = CsrPropagation.VISITED;
+            }
+
+            // 2. Votes to the next level, as the rows of the next level in
+            // the products
+            matrix.multiplyRows(next, nextSize, x, z, signed, unsigned, neutral);
+            for (int i = 0; i < nextSize; i++) {
+                int u = next[i];
+                state.addCounters(u, (unsigned[i] + signed[i]) / 2
+                        , (unsigned[i] - signed[i]) / 2, neutral[i]);
+                status[u] = CsrPropagation.IN_QUEUE;
+            }
+            for (int i = 0; i < frontierSize; i++) {
+                x[frontier[i]] = 0;
+                z[frontier[i]] = 0;
+            }
+
+            int[] tmp = frontier;
+            frontier = next;
+            next = tmp;
+            frontierSize = nextSize;
+        }
+        return state;
+    }
+}
@@ -0,0 +1,324 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Iterative polarity propagation with weighted relations and distance decay
+ * (label propagation). Unlike {@link PolarityPropagation}, which counts one
+ * vote per relation, each word gets a positive, a negative and a neutral
+ * score in [0, 1]:
+ * <ul>
+ * <li>the seed words keep the scores given by their counters;</li>
+ * <li>the scores of every other word are the weighted average of the scores
+ * of its neighbors, multiplied by the decay. A synonym passes its positive,
+ * negative and neutral scores as they are; an antonym swaps the positive and
+ * negative scores.</li>
+ * </ul>
+ * So, a word {@code k} relations away from a seed word gets about
+ * {@code decay^k} of its polarity, and words closer to the seeds weigh more.
+ *
+ * <p>
+ * All the words are updated at each iteration from the scores of the previous
+ * one (Jacobi iteration), until no score changes more than epsilon or the
+ * maximum number of iterations is reached. The words are split in ranges with
+ * about the same number of relations, which are updated in parallel.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class WeightedPropagation {
+
+    public static final double DEFAULT_DECAY = 0.85;
+    public static final double DEFAULT_EPSILON = 1e-6;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /** Each thread updates about this number of ranges of words */
+    private static final int RANGES_PER_THREAD = 4;
+
+    private double synonymWeight = 1.0;
+    private double antonymWeight = 1.0;
+    private double decay = DEFAULT_DECAY;
+    private double epsilon = DEFAULT_EPSILON;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the weight of the synonymy relations.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setSynonymWeight(double synonymWeight) {
+        this.synonymWeight = synonymWeight;
+        return this;
+    }
+
+    /**
+     * Sets the weight of the antonymy relations.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setAntonymWeight(double antonymWeight) {
+        this.antonymWeight = antonymWeight;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the scores kept by each relation, between 0 and 1.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setDecay(double decay) {
+        if (decay <= 0 || decay > 1) {
+            throw new IllegalArgumentException("The decay must be in ]0, 1]: " + decay);
+        }
+        this.decay = decay;
+        return this;
+    }
+
+    /**
+     * Sets the convergence threshold: the propagation stops when no score
+     * changes more than {@code epsilon} in one iteration.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of iterations.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads.
+     *
+     * @return this object.
+     */
+    public WeightedPropagation setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * Propagates the polarity of the seed words to the remaining words of the
+     * graph.
+     *
+     * @param graph an undirected graph of words.
+     * @param seedWords initial set of words classified with a polarity. Only
+     * their counters are used. If the same word is repeated, the first one is
+     * used.
+     * @return the scores of each vertex of the graph.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public WeightedScores propagate(final LexicalGraph graph, List<Word> seedWords) {
+        final int n = graph.vertexCount();
+        double[] pos = new double[n];
+        double[] neg = new double[n];
+        double[] neu = new double[n];
+        final int[] iteration = new int[n];
+        Arrays.fill(iteration, -1);
+        final boolean[] seed = new boolean[n];
+
+        int seedWordsFound = 0;
+        for (Word seedWord : seedWords) {
+            int v = graph.vertexId(seedWord.getWord());
+            if (v < 0 || seed[v]) {
+                continue;
+            }
+            double total = seedWord.getPositiveCounter() + seedWord.getNegativeCounter()
+                    + seedWord.getNeutralCounter();
+            if (total > 0) {
+                pos[v] = seedWord.getPositiveCounter() / total;
+                neg[v] = seedWord.getNegativeCounter() / total;
+                neu[v] = seedWord.getNeutralCounter() / total;
+            }
+            iteration[v] = 0;
+            seed[v] = true;
+            seedWordsFound++;
+        }
+        if (seedWordsFound <= 0) {
+            throw new IllegalArgumentException("Seed words not found in the graph.");
+        }
+
+        // Weights of each relation, split by type so the inner loop has no
+        // branches: one of them is always 0.
+        int entries = graph.edgesEnd(n - 1);
+        final double[] synWeights = new double[entries];
+        final double[] antWeights = new double[entries];
+        // decay / (sum of the weights of the relations of each word)
+        final double[] scale = new double[n];
+        for (int v = 0; v < n; v++) {
+            double total = 0;
+            for (int e = graph.edgesStart(v), end = graph.edgesEnd(v); e < end; e++) {
+                if (graph.relationCode(e) == LexicalGraph.SYNONYM) {
+                    synWeights[e] = synonymWeight;
+                } else {
+                    antWeights[e] = antonymWeight;
+                }
+                total += synWeights[e] + antWeights[e];
+            }
+            scale[v] = (total > 0 ? decay / total : 0);
+        }
+
+        int[] ranges = ranges(graph, threads * RANGES_PER_THREAD);
+        ExecutorService executor = (threads > 1 ? Executors.newFixedThreadPool(threads) : null);
+        double[] nextPos = new double[n];
+        double[] nextNeg = new double[n];
+        double[] nextNeu = new double[n];
+        int it = 0;
+        double maxDelta = Double.POSITIVE_INFINITY;
+        try {
+            while (it < maxIterations && maxDelta >= epsilon) {
+                it++;
+                final int currentIteration = it;
+                final double[] srcPos = pos, srcNeg = neg, srcNeu = neu;
+                final double[] dstPos = nextPos, dstNeg = nextNeg, dstNeu = nextNeu;
+                List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+                for (int r = 0; r + 1 < ranges.length; r++) {
+                    final int start = ranges[r];
+                    final int end = ranges[r + 1];
+                    tasks.add(new Callable<Double>() {
+                        @Override
+                        public Double call() {
+                            return update(graph, start, end, seed, synWeights, antWeights, scale
+                                    , srcPos, srcNeg, srcNeu, dstPos, dstNeg, dstNeu
+                                    , iteration, currentIteration);
+                        }
+                    });
+                }
+                maxDelta = run(executor, tasks);
+
+                nextPos = pos;
+                nextNeg = neg;
+                nextNeu = neu;
+                pos = dstPos;
+                neg = dstNeg;
+                neu = dstNeu;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        return new WeightedScores(pos, neg, neu, iteration, it, maxDelta);
+    }
+
+    /**
+     * Computes the new scores of the vertices {@code start} to {@code end - 1}.
+     *
+     * @return the biggest change of a score.
+     */
+    private static double update(LexicalGraph graph, int start, int end, boolean[] seed
+            , double[] synWeights, double[] antWeights, double[] scale
+            , double[] pos, double[] neg, double[] neu
+            , double[] nextPos, double[] nextNeg, double[] nextNeu
+            , int[] iteration, int currentIteration) {
+        double maxDelta = 0;
+        for (int v = start; v < end; v++) {
+            if (seed[v]) {
+                nextPos[v] = pos[v];
+                nextNeg[v] = neg[v];
+                nextNeu[v] = neu[v];
+                continue;
+            }
+            double p = 0;
+            double q = 0;
+            double u = 0;
+            for (int e = graph.edgesStart(v), edgesEnd = graph.edgesEnd(v); e < edgesEnd; e++) {
+                int w = graph.target(e);
+                double syn = synWeights[e];
+                double ant = antWeights[e];
+                p += syn * pos[w] + ant * neg[w];
+                q += syn * neg[w] + ant * pos[w];
+                u += (syn + ant) * neu[w];
+            }
+            p *= scale[v];
+            q *= scale[v];
+            u *= scale[v];
+            maxDelta = Math.max(maxDelta, Math.max(Math.abs(p - pos[v])
+                    , Math.max(Math.abs(q - neg[v]), Math.abs(u - neu[v]))));
+            nextPos[v] = p;
+            nextNeg[v] = q;
+            nextNeu[v] = u;
+            if (iteration[v] < 0 && (p > 0 || q > 0 || u > 0)) {
+                iteration[v] = currentIteration;
+            }
+        }
+        return maxDelta;
+    }
+
+    /**
+     * Runs the tasks and returns the biggest value returned by them.
+     */
+    private static double run(ExecutorService executor, List<Callable<Double>> tasks) {
+        double max = 0;
+        try {
+            if (executor == null) {
+                for (Callable<Double> task : tasks) {
+                    max = Math.max(max, task.call());
+                }
+            } else {
+                for (Future<Double> result : executor.invokeAll(tasks)) {
+                    max = Math.max(max, result.get());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Propagation interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (Exception ex) {
+            if (ex instanceof RuntimeException) {
+                throw (RuntimeException) ex;
+            }
+            throw new IllegalStateException(ex);
+        }
+        return max;
+    }
+
+    /**
+     * Splits the vertices in at most {@code count} ranges, with about the same
+     * number of relations.
+     *
+     * @return the first vertex of each range, followed by the number of
+     * vertices.
+     */
+    private static int[] ranges(LexicalGraph graph, int count) {
+        int n = graph.vertexCount();
+        long entries = graph.edgesEnd(n - 1);
+        // Each vertex counts as one entry, so vertices without relations are split too
+        long perRange = (entries + n + count - 1) / count;
+        int[] ranges = new int[count + 1];
+        int r = 1;
+        long work = 0;
+        for (int v = 0; v < n && r < count; v++) {
+            work += graph.edgesEnd(v) - graph.edgesStart(v) + 1;
+            if (work >= perRange * r) {
+                ranges[r++] = v + 1;
+            }
+        }
+        ranges[r] = n;
+        return Arrays.copyOf(ranges, r + 1);
+    }
+}
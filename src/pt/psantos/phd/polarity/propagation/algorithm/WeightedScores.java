@@ -0,0 +1,93 @@
+package pt.psantos.phd.polarity.propagation.algorithm;
+
+/**
+ * The positive, negative and neutral scores of each vertex of a graph,
+ * computed by {@link WeightedPropagation}. Indexed by the vertex id.
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class WeightedScores {
+
+    private final double[] positive;
+    private final double[] negative;
+    private final double[] neutral;
+    private final int[] iteration;
+    private final int iterations;
+    private final double maxDelta;
+
+    WeightedScores(double[] positive, double[] negative, double[] neutral
+            , int[] iteration, int iterations, double maxDelta) {
+        this.positive = positive;
+        this.negative = negative;
+        this.neutral = neutral;
+        this.iteration = iteration;
+        this.iterations = iterations;
+        this.maxDelta = maxDelta;
+    }
+
+    /**
+     * Returns the number of vertices.
+     */
+    public int size() {
+        return positive.length;
+    }
+
+    public double getPositiveScore(int v) {
+        return positive[v];
+    }
+
+    public double getNegativeScore(int v) {
+        return negative[v];
+    }
+
+    public double getNeutralScore(int v) {
+        return neutral[v];
+    }
+
+    /**
+     * Returns the iteration in which the vertex {@code v} got a score for the
+     * first time (0 for the seed words), or -1 if it never got a score.
+     * This is the distance to the nearest seed word.
+     */
+    public int getIteration(int v) {
+        return iteration[v];
+    }
+
+    /**
+     * Returns the number of iterations run.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Returns the biggest change of a score in the last iteration.
+     */
+    public double getMaxDelta() {
+        return maxDelta;
+    }
+
+    /**
+     * Returns the polarity of the vertex {@code v}: the one with the highest
+     * score, or {@link PropagationState#AMBIGUOUS} if there is a tie, or
+     * {@link PropagationState#NOT_SET} if the vertex has no scores.
+     */
+    public byte polarity(int v) {
+        double pos = positive[v];
+        double neg = negative[v];
+        double neu = neutral[v];
+        if (pos <= 0 && neg <= 0 && neu <= 0) {
+            return PropagationState.NOT_SET;
+        } else if (pos > neg && pos > neu) {
+            return PropagationState.POSITIVE;
+        } else if (neg > pos && neg > neu) {
+            return PropagationState.NEGATIVE;
+        } else if (neu > pos && neu > neg) {
+            return PropagationState.NEUTRAL;
+        } else {
+            return PropagationState.AMBIGUOUS;
+        }
+    }
+}
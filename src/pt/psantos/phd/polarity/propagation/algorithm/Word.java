@@ -238,6 +238,21 @@ public class Word {
         return this;
     }
             
+    /**
+     * Sets the counters and the iteration of this word. Used for copying the
+     * result of the propagations that do not use {@link Word} objects.
+     * 
+     * @return this word.
+     */
+    Word setState(int positiveCounter, int negativeCounter, int neutralCounter
+            , int iteration) {
+        this.positiveCounter = positiveCounter;
+        this.negativeCounter = negativeCounter;
+        this.neutralCounter = neutralCounter;
+        this.iteration = iteration;
+        return this;
+    }
+            
     /**
      * Check if two words are equal. Two words are equal if 
      * {@code w1.getWord().equals(w2.getWord())} .
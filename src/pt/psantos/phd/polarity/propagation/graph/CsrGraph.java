@@ -0,0 +1,379 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import org.jgrapht.graph.AbstractBaseGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+
+/**
+ * An undirected graph of words kept in primitive arrays, in the Compressed
+ * Sparse Row (CSR) format. This graph uses a small fraction of the memory used
+ * by a {@link org.jgrapht.graph.SimpleGraph}, and does not create an object per
+ * word nor per relation.
+ *
+ * <p>
+ * Each word is a vertex with an int id, from 0 to {@code vertexCount() - 1}.
+ * The neighbors of the vertex {@code v} are at the positions
+ * {@code edgesStart(v)} to {@code edgesEnd(v) - 1} of the adjacency arrays.
+ * Each undirected edge is kept twice, one time for each of its vertices.
+ * The vertices and the neighbors of each vertex are in the same order as in a
+ * {@link org.jgrapht.graph.SimpleGraph} with the same edges.
+ * </p>
+ *
+ * <p>
+ * The connected components are found while the graph is built, with a
+ * {@link UnionFind}. They are numbered from 0, in the order of their first
+ * vertex.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class CsrGraph implements LexicalGraph {
+
+    private final TermDictionary terms;
+    private final int[] offsets;
+    private final int[] targets;
+    private final byte[] relations;
+    /** Connected component of each vertex */
+    private final int[] components;
+    /** Number of vertices of each connected component */
+    private final int[] componentSizes;
+
+    CsrGraph(TermDictionary terms, int[] offsets, int[] targets, byte[] relations
+            , UnionFind sets) {
+        this(terms, offsets, targets, relations, labels(sets, terms.size()));
+    }
+
+    private CsrGraph(TermDictionary terms, int[] offsets, int[] targets, byte[] relations
+            , int[] components) {
+        this.terms = terms;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.relations = relations;
+        this.components = components;
+        int count = 0;
+        for (int c : components) {
+            count = Math.max(count, c + 1);
+        }
+        this.componentSizes = new int[count];
+        for (int c : components) {
+            componentSizes[c]++;
+        }
+    }
+
+    private static int[] labels(UnionFind sets, int size) {
+        int[] labels = new int[size];
+        sets.labels(labels);
+        return labels;
+    }
+
+    /**
+     * Creates a CSR graph with the same vertices and edges of the undirected
+     * graph {@code graph}, in the same order.
+     */
+    public static CsrGraph fromGraph(AbstractBaseGraph<Word, LexicalRelation> graph) {
+        Set<Word> words = graph.vertexSet();
+        HashMap<Word, Integer> ids = new HashMap<Word, Integer>(2 * words.size());
+        TermDictionary terms = new TermDictionary(words.size(), 16 * words.size());
+        int n = 0;
+        for (Word w : words) {
+            ids.put(w, n++);
+            terms.intern(w.getWord());
+        }
+
+        UnionFind sets = new UnionFind(n);
+        for (int v = 0; v < n; v++) {
+            sets.add();
+        }
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[2 * graph.edgeSet().size()];
+        byte[] relations = new byte[targets.length];
+        int e = 0;
+        int v = 0;
+        for (Word w : words) {
+            for (LexicalRelation r : graph.edgesOf(w)) {
+                targets[e] = ids.get(r.getNodeOther(w));
+                sets.union(v, targets[e]);
+                relations[e] = r.getRelationType().equals(LexicalRelation.Type.ANTONYM)
+                        ? ANTONYM : SYNONYM;
+                e++;
+            }
+            offsets[++v] = e;
+        }
+        return new CsrGraph(terms, offsets, targets, relations, sets);
+    }
+
+    /**
+     * Creates a CSR graph with the same vertices and edges of the undirected
+     * graph {@code graph}, in the same order. Returns {@code graph} itself if
+     * it is already a CSR graph.
+     */
+    public static CsrGraph copyOf(LexicalGraph graph) {
+        if (graph instanceof CsrGraph) {
+            return (CsrGraph) graph;
+        }
+        int n = graph.vertexCount();
+        TermDictionary terms = new TermDictionary(n, 16 * n);
+        UnionFind sets = new UnionFind(n);
+        int adjacencyCount = 0;
+        for (int v = 0; v < n; v++) {
+            terms.intern(graph.term(v));
+            sets.add();
+            adjacencyCount += graph.edgesEnd(v) - graph.edgesStart(v);
+        }
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[adjacencyCount];
+        byte[] relations = new byte[targets.length];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            for (int r = graph.edgesStart(v); r < graph.edgesEnd(v); r++) {
+                targets[e] = graph.target(r);
+                relations[e] = graph.relationCode(r);
+                sets.union(v, targets[e]);
+                e++;
+            }
+            offsets[v + 1] = e;
+        }
+        return new CsrGraph(terms, offsets, targets, relations, sets);
+    }
+
+    /**
+     * Returns the number of vertices (words).
+     */
+    public int vertexCount() {
+        return terms.size();
+    }
+
+    /**
+     * Returns the number of undirected edges.
+     */
+    public int edgeCount() {
+        return offsets[terms.size()] / 2;
+    }
+
+    /**
+     * Returns the position of the first neighbor of the vertex {@code v}.
+     */
+    public int edgesStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * Returns the position after the last neighbor of the vertex {@code v}.
+     */
+    public int edgesEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * Returns the neighbor at the position {@code e}.
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * Returns the code ({@link #SYNONYM} or {@link #ANTONYM}) of the relation
+     * at the position {@code e}.
+     */
+    public byte relationCode(int e) {
+        return relations[e];
+    }
+
+    public LexicalRelation.Type relation(int e) {
+        return relations[e] == ANTONYM
+                ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM;
+    }
+
+    /**
+     * Returns the word of the vertex {@code v}.
+     */
+    public String term(int v) {
+        return terms.term(v);
+    }
+
+    /**
+     * Returns a copy of this graph with the vertices renumbered: the vertex
+     * {@code order[i]} of this graph is the vertex {@code i} of the copy. The
+     * neighbors of each vertex are kept in the same order, so the propagation
+     * algorithms visit the same words in the same order, if the seed words are
+     * given in the same order.
+     *
+     * @param order a permutation of the vertex ids (see {@link VertexOrdering}).
+     */
+    public CsrGraph permute(int[] order) {
+        int n = terms.size();
+        int[] newId = VertexOrdering.inverse(order);
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[targets.length];
+        byte[] newRelations = new byte[relations.length];
+        int[] newComponents = new int[n];
+        int e = 0;
+        for (int v = 0; v < n; v++) {
+            int old = order[v];
+            newComponents[v] = components[old];
+            for (int r = offsets[old]; r < offsets[old + 1]; r++) {
+                newTargets[e] = newId[targets[r]];
+                newRelations[e] = relations[r];
+                e++;
+            }
+            newOffsets[v + 1] = e;
+        }
+        return new CsrGraph(terms.permute(order), newOffsets, newTargets, newRelations
+                , newComponents);
+    }
+
+    /**
+     * Returns the number of connected components.
+     */
+    public int componentCount() {
+        return componentSizes.length;
+    }
+
+    /**
+     * Returns the connected component of the vertex {@code v}.
+     */
+    public int component(int v) {
+        return components[v];
+    }
+
+    /**
+     * Returns the number of vertices of the connected component {@code c}.
+     */
+    public int componentSize(int c) {
+        return componentSizes[c];
+    }
+
+    /**
+     * Returns the vertex of the word {@code term}, or -1 if the graph does not
+     * contain that word.
+     */
+    public int vertexId(String term) {
+        return terms.lookup(term);
+    }
+
+    /**
+     * Returns the dictionary with the words of the vertices.
+     */
+    public TermDictionary getTerms() {
+        return terms;
+    }
+
+    /**
+     * Builds a {@link CsrGraph} from a sequence of edges. As in a
+     * {@link org.jgrapht.graph.SimpleGraph}, only the first edge between two
+     * words is kept (see {@link EdgeDeduplicator}), and loops are not allowed.
+     */
+    public static class Builder {
+
+        private final TermDictionary terms = new TermDictionary();
+        private final UnionFind sets = new UnionFind();
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private byte[] types = new byte[1024];
+        private int edgeCount = 0;
+        private EdgeDeduplicator deduplication = null;
+
+        /**
+         * Adds an edge between the words {@code from} and {@code to}.
+         *
+         * @throws IllegalArgumentException if {@code from} and {@code to} are
+         * the same word.
+         */
+        public Builder addEdge(String from, String to, LexicalRelation.Type type) {
+            int u = terms.intern(from);
+            int v = terms.intern(to);
+            return addEdge(u, v, type);
+        }
+
+        /**
+         * Returns the dictionary of the words of the graph. The id of a word
+         * in this dictionary is its vertex id, so only the words of the
+         * edges should be added to it.
+         */
+        public TermDictionary getTerms() {
+            return terms;
+        }
+
+        /**
+         * Adds an edge between the words with the ids {@code u} and
+         * {@code v} in the dictionary of the graph ({@link #getTerms()}).
+         *
+         * @throws IllegalArgumentException if {@code u} and {@code v} are
+         * the same word.
+         */
+        public Builder addEdge(int u, int v, LexicalRelation.Type type) {
+            while (sets.size() < terms.size()) {
+                sets.add();
+            }
+            if (u == v) {
+                throw new IllegalArgumentException("loops not allowed");
+            }
+            if (edgeCount == this.from.length) {
+                int capacity = 2 * edgeCount;
+                this.from = Arrays.copyOf(this.from, capacity);
+                this.to = Arrays.copyOf(this.to, capacity);
+                this.types = Arrays.copyOf(this.types, capacity);
+            }
+            this.from[edgeCount] = u;
+            this.to[edgeCount] = v;
+            this.types[edgeCount] = type.equals(LexicalRelation.Type.ANTONYM) ? ANTONYM : SYNONYM;
+            edgeCount++;
+            sets.union(u, v);
+            return this;
+        }
+
+        /**
+         * Returns the relations removed by the last call to {@link #build()},
+         * or {@code null} if it was not called yet.
+         */
+        public EdgeDeduplicator getDeduplication() {
+            return deduplication;
+        }
+
+        public CsrGraph build() {
+            int n = terms.size();
+            while (sets.size() < n) {
+                sets.add();
+            }
+            terms.trimToSize();
+
+            // 1. Remove repeated relations, keeping the first one
+            deduplication = new EdgeDeduplicator(from, to, types, edgeCount, n);
+
+            // 2. Count the neighbors of each vertex
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                if (deduplication.isKept(i)) {
+                    offsets[from[i] + 1]++;
+                    offsets[to[i] + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            // 3. Scatter the edges, keeping the order they were added
+            int[] cursor = Arrays.copyOf(offsets, n);
+            int[] targets = new int[offsets[n]];
+            byte[] relations = new byte[offsets[n]];
+            for (int i = 0; i < edgeCount; i++) {
+                if (!deduplication.isKept(i)) {
+                    continue;
+                }
+                int pos = cursor[from[i]]++;
+                targets[pos] = to[i];
+                relations[pos] = types[i];
+                pos = cursor[to[i]]++;
+                targets[pos] = from[i];
+                relations[pos] = types[i];
+            }
+
+            return new CsrGraph(terms, offsets, targets, relations, sets);
+        }
+    }
+}
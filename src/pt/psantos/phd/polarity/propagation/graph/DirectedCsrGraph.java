@@ -0,0 +1,283 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+import org.jgrapht.DirectedGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+
+/**
+ * A directed graph of words kept in primitive arrays, in the Compressed
+ * Sparse Row (CSR) format. This is the directed counterpart of
+ * {@link CsrGraph}: it replaces a
+ * {@link org.jgrapht.graph.DirectedPseudograph}, without an edge container per
+ * word nor an object per relation.
+ *
+ * <p>
+ * As a {@link LexicalGraph}, the neighbors of a vertex are its outgoing
+ * relations, in the order they were added (the order of
+ * {@code graph.outgoingEdgesOf(word)}). As in a pseudograph, the same relation
+ * can be added more than once, and a word can be related to itself.
+ * </p>
+ *
+ * <p>
+ * The incoming relations are kept in a second CSR ({@link #inEdgesStart(int)},
+ * {@link #inEdgesEnd(int)}, {@link #source(int)}), where the sources of each
+ * vertex are sorted by id. So {@link #containsEdge(int, int)} is a binary
+ * search over the incoming relations of a vertex.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class DirectedCsrGraph implements LexicalGraph {
+
+    private final TermDictionary terms;
+    private final int[] offsets;
+    private final int[] targets;
+    private final byte[] relations;
+    private final int[] inOffsets;
+    /** Source of each incoming relation, sorted by id for each vertex */
+    private final int[] sources;
+
+    DirectedCsrGraph(TermDictionary terms, int[] offsets, int[] targets, byte[] relations) {
+        this.terms = terms;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.relations = relations;
+
+        // Incoming relations. The vertices are scattered in order, so the
+        // sources of each vertex end up sorted.
+        int n = terms.size();
+        this.inOffsets = new int[n + 1];
+        for (int e = 0; e < targets.length; e++) {
+            inOffsets[targets[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        this.sources = new int[targets.length];
+        int[] next = Arrays.copyOf(inOffsets, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                sources[next[targets[e]]++] = v;
+            }
+        }
+    }
+
+    /**
+     * Creates a CSR graph with the same vertices and relations of the directed
+     * graph {@code graph}, in the same order.
+     */
+    public static DirectedCsrGraph fromGraph(DirectedGraph<Word, LexicalRelation> graph) {
+        Set<Word> words = graph.vertexSet();
+        HashMap<Word, Integer> ids = new HashMap<Word, Integer>(2 * words.size());
+        TermDictionary terms = new TermDictionary(words.size(), 16 * words.size());
+        int n = 0;
+        for (Word w : words) {
+            ids.put(w, n++);
+            terms.intern(w.getWord());
+        }
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[graph.edgeSet().size()];
+        byte[] relations = new byte[targets.length];
+        int e = 0;
+        int v = 0;
+        for (Word w : words) {
+            for (LexicalRelation r : graph.outgoingEdgesOf(w)) {
+                targets[e] = ids.get(r.getNodeTo());
+                relations[e] = r.getRelationType().equals(LexicalRelation.Type.ANTONYM)
+                        ? ANTONYM : SYNONYM;
+                e++;
+            }
+            offsets[++v] = e;
+        }
+        return new DirectedCsrGraph(terms, offsets, targets, relations);
+    }
+
+    /**
+     * Returns the number of vertices (words).
+     */
+    public int vertexCount() {
+        return terms.size();
+    }
+
+    /**
+     * Returns the number of directed relations.
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Returns the position of the first outgoing relation of the vertex
+     * {@code v}.
+     */
+    public int edgesStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * Returns the position after the last outgoing relation of the vertex
+     * {@code v}.
+     */
+    public int edgesEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * Returns the target of the outgoing relation at the position {@code e}.
+     */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /**
+     * Returns the code ({@link #SYNONYM} or {@link #ANTONYM}) of the outgoing
+     * relation at the position {@code e}.
+     */
+    public byte relationCode(int e) {
+        return relations[e];
+    }
+
+    public LexicalRelation.Type relation(int e) {
+        return relations[e] == ANTONYM
+                ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM;
+    }
+
+    /**
+     * Returns the position of the first incoming relation of the vertex
+     * {@code v}.
+     */
+    public int inEdgesStart(int v) {
+        return inOffsets[v];
+    }
+
+    /**
+     * Returns the position after the last incoming relation of the vertex
+     * {@code v}.
+     */
+    public int inEdgesEnd(int v) {
+        return inOffsets[v + 1];
+    }
+
+    /**
+     * Returns the source of the incoming relation at the position {@code e}.
+     */
+    public int source(int e) {
+        return sources[e];
+    }
+
+    /**
+     * Returns {@code true} if there is a relation from the vertex {@code from}
+     * to the vertex {@code to}. Same as
+     * {@link org.jgrapht.Graph#containsEdge(java.lang.Object, java.lang.Object)},
+     * in logarithmic time.
+     */
+    public boolean containsEdge(int from, int to) {
+        return Arrays.binarySearch(sources, inOffsets[to], inOffsets[to + 1], from) >= 0;
+    }
+
+    /**
+     * Returns the word of the vertex {@code v}.
+     */
+    public String term(int v) {
+        return terms.term(v);
+    }
+
+    /**
+     * Returns the vertex of the word {@code term}, or -1 if the graph does not
+     * contain that word.
+     */
+    public int vertexId(String term) {
+        return terms.lookup(term);
+    }
+
+    /**
+     * Returns the dictionary with the words of the vertices.
+     */
+    public TermDictionary getTerms() {
+        return terms;
+    }
+
+    /**
+     * Builds a {@link DirectedCsrGraph} from a sequence of relations. The
+     * words get their ids in the order they first appear, and all the
+     * relations are kept, as in a {@link org.jgrapht.graph.DirectedPseudograph}.
+     */
+    public static class Builder {
+
+        private final TermDictionary terms = new TermDictionary();
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private byte[] types = new byte[1024];
+        private int edgeCount = 0;
+
+        /**
+         * Adds a relation from the word {@code from} to the word {@code to}.
+         *
+         * @return this builder.
+         */
+        public Builder addEdge(String from, String to, LexicalRelation.Type type) {
+            int u = terms.intern(from);
+            int v = terms.intern(to);
+            return addEdge(u, v, type);
+        }
+
+        /**
+         * Returns the dictionary of the words of the graph. The id of a word
+         * in this dictionary is its vertex id, so only the words of the
+         * relations should be added to it.
+         */
+        public TermDictionary getTerms() {
+            return terms;
+        }
+
+        /**
+         * Adds a relation between the words with the ids {@code u} and
+         * {@code v} in the dictionary of the graph ({@link #getTerms()}).
+         *
+         * @return this builder.
+         */
+        public Builder addEdge(int u, int v, LexicalRelation.Type type) {
+            if (edgeCount == this.from.length) {
+                this.from = Arrays.copyOf(this.from, 2 * edgeCount);
+                this.to = Arrays.copyOf(this.to, 2 * edgeCount);
+                this.types = Arrays.copyOf(this.types, 2 * edgeCount);
+            }
+            this.from[edgeCount] = u;
+            this.to[edgeCount] = v;
+            this.types[edgeCount] = (type == LexicalRelation.Type.ANTONYM ? ANTONYM : SYNONYM);
+            edgeCount++;
+            return this;
+        }
+
+        public DirectedCsrGraph build() {
+            int n = terms.size();
+            terms.trimToSize();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            // Stable scatter: the relations of each word keep their order
+            int[] targets = new int[edgeCount];
+            byte[] relations = new byte[edgeCount];
+            int[] next = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < edgeCount; i++) {
+                int e = next[from[i]]++;
+                targets[e] = to[i];
+                relations[e] = types[i];
+            }
+            from = null;
+            to = null;
+            types = null;
+            return new DirectedCsrGraph(terms, offsets, targets, relations);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+
+/**
+ * Removes the repeated relations of a list of undirected relations between
+ * int ids: the same relation listed twice ({@code a-b} and {@code a-b}), and
+ * the reverse of a relation ({@code a-b} and {@code b-a}). As in a
+ * {@link org.jgrapht.graph.SimpleGraph}, only the first relation between two
+ * words is kept, even if the others have a different type.
+ *
+ * <p>
+ * The relations are sorted by {@code (min(id), max(id))} with two stable
+ * counting sorts (by max id, then by min id), so the repeated relations end
+ * up together, in the order they were listed, and are removed in one linear
+ * pass. The relations between the same words with different types (for
+ * instance, synonyms and antonyms at the same time) are reported as
+ * conflicts.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class EdgeDeduplicator {
+
+    /** Maximum number of conflicts kept by {@link #getConflicts()} */
+    private static final int MAX_CONFLICTS_KEPT = 1000;
+
+    private final boolean[] keep;
+    private int keptEdges = 0;
+    private int repeatedEdges = 0;
+    private int reverseEdges = 0;
+    private int conflictCount = 0;
+    private long[] conflicts = new long[16];
+
+    /**
+     * Finds the repeated relations.
+     *
+     * @param from first word of each relation.
+     * @param to second word of each relation.
+     * @param types type of each relation.
+     * @param edgeCount number of relations.
+     * @param vertexCount number of words (all ids are lower).
+     */
+    public EdgeDeduplicator(int[] from, int[] to, byte[] types, int edgeCount, int vertexCount) {
+        this.keep = new boolean[edgeCount];
+
+        // 1. Sort by the max id, then by the min id. Both sorts are stable.
+        int[] byMax = new int[edgeCount];
+        int[] count = new int[vertexCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            count[Math.max(from[i], to[i]) + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            count[v + 1] += count[v];
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            byMax[count[Math.max(from[i], to[i])]++] = i;
+        }
+
+        int[] sorted = new int[edgeCount];
+        Arrays.fill(count, 0);
+        for (int i = 0; i < edgeCount; i++) {
+            count[Math.min(from[i], to[i]) + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            count[v + 1] += count[v];
+        }
+        for (int i : byMax) {
+            sorted[count[Math.min(from[i], to[i])]++] = i;
+        }
+
+        // 2. The first relation of each pair of words is kept
+        int first = -1;
+        boolean conflict = false;
+        for (int i : sorted) {
+            if (first >= 0 && Math.min(from[i], to[i]) == Math.min(from[first], to[first])
+                    && Math.max(from[i], to[i]) == Math.max(from[first], to[first])) {
+                if (from[i] == from[first]) {
+                    repeatedEdges++;
+                } else {
+                    reverseEdges++;
+                }
+                if (types[i] != types[first] && !conflict) {
+                    conflict = true;
+                    addConflict(from[first], to[first]);
+                }
+                continue;
+            }
+            first = i;
+            conflict = false;
+            keep[i] = true;
+            keptEdges++;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the relation {@code i} is kept.
+     */
+    public boolean isKept(int i) {
+        return keep[i];
+    }
+
+    /**
+     * Returns the number of relations kept.
+     */
+    public int getKeptEdges() {
+        return keptEdges;
+    }
+
+    /**
+     * Returns the number of relations removed.
+     */
+    public int getDroppedEdges() {
+        return repeatedEdges + reverseEdges;
+    }
+
+    /**
+     * Returns the number of relations removed because they were listed before
+     * in the same direction.
+     */
+    public int getRepeatedEdges() {
+        return repeatedEdges;
+    }
+
+    /**
+     * Returns the number of relations removed because they were listed before
+     * in the opposite direction.
+     */
+    public int getReverseEdges() {
+        return reverseEdges;
+    }
+
+    /**
+     * Returns the number of pairs of words related with more than one type of
+     * relation. Only the type of the first relation is kept.
+     */
+    public int getConflictCount() {
+        return conflictCount;
+    }
+
+    /**
+     * Returns the first pairs of words related with more than one type of
+     * relation (up to 1000), as the ids of the kept relation: the first word
+     * in the 32 high bits and the second in the 32 low bits.
+     */
+    public long[] getConflicts() {
+        return Arrays.copyOf(conflicts, Math.min(conflictCount, MAX_CONFLICTS_KEPT));
+    }
+
+    private void addConflict(int u, int v) {
+        if (conflictCount < MAX_CONFLICTS_KEPT) {
+            if (conflictCount == conflicts.length) {
+                conflicts = Arrays.copyOf(conflicts, 2 * conflicts.length);
+            }
+            conflicts[conflictCount] = ((long) u << 32) | (v & 0xFFFFFFFFL);
+        }
+        conflictCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "RELATIONS KEPT: " + getKeptEdges() +
+                "\nRepeated relations removed: " + getRepeatedEdges() +
+                "\nReverse relations removed: " + getReverseEdges() +
+                "\nPairs of words with conflicting relations: " + getConflictCount();
+    }
+}
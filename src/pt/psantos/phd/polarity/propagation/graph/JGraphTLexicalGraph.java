@@ -0,0 +1,137 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.HashMap;
+import java.util.Set;
+import org.jgrapht.DirectedGraph;
+import org.jgrapht.graph.AbstractBaseGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+
+/**
+ * A {@link LexicalGraph} over a JGraphT graph, so the graphs built by the
+ * loaders (or by other code) can be used by the algorithms written for
+ * {@link LexicalGraph}.
+ *
+ * <p>
+ * The vertex ids follow the order of {@code graph.vertexSet()}, and the
+ * neighbors of each word the order of {@code graph.edgesOf(word)} (or of
+ * {@code graph.outgoingEdgesOf(word)}, if the graph is directed), so the
+ * propagation algorithms visit the words in the same order as over the JGraphT
+ * graph. The ids are assigned when this object is created: the vertices and
+ * edges added to the JGraphT graph after that are not seen.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class JGraphTLexicalGraph implements LexicalGraph {
+
+    private final AbstractBaseGraph<Word, LexicalRelation> graph;
+    private final Word[] words;
+    private final HashMap<Word, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final LexicalRelation[] edges;
+
+    /**
+     * Creates a view of the graph {@code graph}.
+     *
+     * @param graph an undirected or directed graph of words.
+     */
+    @SuppressWarnings("unchecked")
+    public JGraphTLexicalGraph(AbstractBaseGraph<Word, LexicalRelation> graph) {
+        this.graph = graph;
+        Set<Word> vertices = graph.vertexSet();
+        this.words = vertices.toArray(new Word[vertices.size()]);
+        this.ids = new HashMap<Word, Integer>(2 * words.length);
+        for (int v = 0; v < words.length; v++) {
+            ids.put(words[v], v);
+        }
+
+        DirectedGraph<Word, LexicalRelation> directed = (graph instanceof DirectedGraph
+                ? (DirectedGraph<Word, LexicalRelation>) graph : null);
+        int adjacencyCount = (directed != null ? 1 : 2) * graph.edgeSet().size();
+        this.offsets = new int[words.length + 1];
+        this.targets = new int[adjacencyCount];
+        this.edges = new LexicalRelation[adjacencyCount];
+        int e = 0;
+        for (int v = 0; v < words.length; v++) {
+            Word w = words[v];
+            for (LexicalRelation r : (directed != null
+                    ? directed.outgoingEdgesOf(w) : graph.edgesOf(w))) {
+                targets[e] = ids.get(directed != null ? r.getNodeTo() : r.getNodeOther(w));
+                edges[e++] = r;
+            }
+            offsets[v + 1] = e;
+        }
+    }
+
+    /**
+     * Returns the JGraphT graph.
+     */
+    public AbstractBaseGraph<Word, LexicalRelation> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the {@link Word} of the vertex {@code v}.
+     */
+    public Word word(int v) {
+        return words[v];
+    }
+
+    /**
+     * Returns the relation at the position {@code e}.
+     */
+    public LexicalRelation edge(int e) {
+        return edges[e];
+    }
+
+    @Override
+    public int vertexCount() {
+        return words.length;
+    }
+
+    @Override
+    public int edgeCount() {
+        return graph.edgeSet().size();
+    }
+
+    @Override
+    public int edgesStart(int v) {
+        return offsets[v];
+    }
+
+    @Override
+    public int edgesEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    @Override
+    public int target(int e) {
+        return targets[e];
+    }
+
+    @Override
+    public byte relationCode(int e) {
+        return edges[e].getRelationType().equals(LexicalRelation.Type.ANTONYM)
+                ? ANTONYM : SYNONYM;
+    }
+
+    @Override
+    public LexicalRelation.Type relation(int e) {
+        return edges[e].getRelationType();
+    }
+
+    @Override
+    public String term(int v) {
+        return words[v].getWord();
+    }
+
+    @Override
+    public int vertexId(String term) {
+        Integer v = ids.get(new Word(term));
+        return (v != null ? v : -1);
+    }
+}
@@ -0,0 +1,81 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+
+/**
+ * A graph of words connected by lexical relations, seen through int ids. This
+ * is the view of the graph used by the propagation algorithms that do not use
+ * {@link pt.psantos.phd.polarity.propagation.algorithm.Word} objects, so they
+ * can run over any of the graph implementations:
+ * <ul>
+ * <li>{@link CsrGraph}, a graph kept in primitive arrays;</li>
+ * <li>{@link MappedCsrGraph}, a graph kept on disk;</li>
+ * <li>{@link JGraphTLexicalGraph}, a JGraphT graph.</li>
+ * </ul>
+ *
+ * <p>
+ * Each word is a vertex with an int id, from 0 to {@code vertexCount() - 1}.
+ * The neighbors of the vertex {@code v} are at the positions
+ * {@code edgesStart(v)} to {@code edgesEnd(v) - 1}: the neighbor at the
+ * position {@code e} is {@code target(e)}, and the type of the relation is
+ * {@code relationCode(e)}. In an undirected graph, each relation is seen from
+ * both of its words.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public interface LexicalGraph {
+
+    /** Relation codes returned by {@link #relationCode(int)} */
+    byte SYNONYM = 0;
+    byte ANTONYM = 1;
+
+    /**
+     * Returns the number of vertices (words).
+     */
+    int vertexCount();
+
+    /**
+     * Returns the number of relations.
+     */
+    int edgeCount();
+
+    /**
+     * Returns the position of the first neighbor of the vertex {@code v}.
+     */
+    int edgesStart(int v);
+
+    /**
+     * Returns the position after the last neighbor of the vertex {@code v}.
+     */
+    int edgesEnd(int v);
+
+    /**
+     * Returns the neighbor at the position {@code e}.
+     */
+    int target(int e);
+
+    /**
+     * Returns the code ({@link #SYNONYM} or {@link #ANTONYM}) of the relation
+     * at the position {@code e}.
+     */
+    byte relationCode(int e);
+
+    /**
+     * Returns the type of the relation at the position {@code e}.
+     */
+    LexicalRelation.Type relation(int e);
+
+    /**
+     * Returns the word of the vertex {@code v}.
+     */
+    String term(int v);
+
+    /**
+     * Returns the vertex of the word {@code term}, or -1 if the graph does not
+     * contain that word.
+     */
+    int vertexId(String term);
+}
@@ -0,0 +1,226 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped in memory. Unlike a {@link java.nio.MappedByteBuffer}, this
+ * buffer can be bigger than 2GB: the file is mapped in segments of 1GB.
+ *
+ * <p>
+ * The data lives in the operating system page cache and not in the Java heap.
+ * So, the operating system decides which parts of the file are kept in memory
+ * and which parts are read from the disk when needed.
+ * </p>
+ *
+ * <p>
+ * Ints are read and written in little endian order and must be aligned at
+ * positions multiple of 4, so they never cross segments.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class MappedBuffer {
+
+    /**
+     * Each segment maps 2^SEGMENT_BITS bytes of the file.
+     */
+    public static final int SEGMENT_BITS = 30;
+    public static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final boolean readOnly;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Number of bytes currently mapped.
+     */
+    private long capacity = 0;
+
+    /**
+     * Maps the file {@code file} in memory. If the file is smaller than
+     * {@code capacity} bytes it is extended with zeros.
+     *
+     * @param file file to map.
+     * @param capacity number of bytes to map.
+     * @param readOnly {@code true} for mapping the file in read only mode.
+     * @throws IOException if the file can not be mapped.
+     */
+    public MappedBuffer(File file, long capacity, boolean readOnly) throws IOException {
+        this.file = file;
+        this.readOnly = readOnly;
+        this.randomAccessFile = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        this.channel = randomAccessFile.getChannel();
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Creates (or truncates) the file {@code file} and maps {@code capacity}
+     * bytes of it, all set to zero.
+     */
+    public static MappedBuffer create(File file, long capacity) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete " + file.getAbsolutePath());
+        }
+        return new MappedBuffer(file, capacity, false);
+    }
+
+    /**
+     * Maps the whole existing file {@code file}.
+     */
+    public static MappedBuffer open(File file, boolean readOnly) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("File not found: " + file.getAbsolutePath());
+        }
+        return new MappedBuffer(file, file.length(), readOnly);
+    }
+
+    /**
+     * Makes sure that at least {@code minCapacity} bytes are mapped, extending
+     * the file if needed.
+     *
+     * @param minCapacity minimum number of bytes to map.
+     */
+    public void ensureCapacity(long minCapacity) throws IOException {
+        if (minCapacity <= capacity) {
+            return;
+        }
+
+        int numSegments = (int) ((minCapacity + SEGMENT_MASK) >>> SEGMENT_BITS);
+        MappedByteBuffer[] newSegments = new MappedByteBuffer[numSegments];
+        // The last segment may have been partially mapped. Map it again.
+        int firstToMap = Math.max(0, segments.length - 1);
+        System.arraycopy(segments, 0, newSegments, 0, firstToMap);
+
+        FileChannel.MapMode mode = readOnly
+                ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        for (int i = firstToMap; i < numSegments; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            long size = Math.min(SEGMENT_SIZE, minCapacity - start);
+            newSegments[i] = channel.map(mode, start, size);
+            newSegments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.segments = newSegments;
+        this.capacity = minCapacity;
+    }
+
+    /**
+     * Returns the number of bytes mapped.
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of segments mapped.
+     */
+    public int segmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the segment {@code index}. The segment maps the bytes of the
+     * file starting at {@code index * SEGMENT_SIZE}.
+     */
+    public ByteBuffer segment(int index) {
+        return segments[index];
+    }
+
+    public byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    public void put(long position, byte value) {
+        segments[(int) (position >>> SEGMENT_BITS)].put((int) (position & SEGMENT_MASK), value);
+    }
+
+    public int getInt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+    }
+
+    public void putInt(long position, int value) {
+        segments[(int) (position >>> SEGMENT_BITS)].putInt((int) (position & SEGMENT_MASK), value);
+    }
+
+    public long getLong(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    public void putLong(long position, long value) {
+        segments[(int) (position >>> SEGMENT_BITS)].putLong((int) (position & SEGMENT_MASK), value);
+    }
+
+    /**
+     * Copies {@code length} bytes starting at {@code position} to the array
+     * {@code dst}.
+     */
+    public void get(long position, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int segmentOffset = (int) (position & SEGMENT_MASK);
+            int n = Math.min(length, segment.capacity() - segmentOffset);
+            for (int i = 0; i < n; i++) {
+                dst[offset + i] = segment.get(segmentOffset + i);
+            }
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies {@code length} bytes from the array {@code src} to this buffer,
+     * starting at {@code position}.
+     */
+    public void put(long position, byte[] src, int offset, int length) {
+        while (length > 0) {
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_BITS)];
+            int segmentOffset = (int) (position & SEGMENT_MASK);
+            int n = Math.min(length, segment.capacity() - segmentOffset);
+            for (int i = 0; i < n; i++) {
+                segment.put(segmentOffset + i, src[offset + i]);
+            }
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes all the changes to the disk.
+     */
+    public void flush() {
+        if (readOnly) {
+            return;
+        }
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes all the changes to the disk and closes the file.
+     * NOTE: The memory is only unmapped when this object is garbage collected.
+     */
+    public void close() throws IOException {
+        flush();
+        segments = new MappedByteBuffer[0];
+        capacity = 0;
+        channel.close();
+        randomAccessFile.close();
+    }
+}
@@ -0,0 +1,300 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+
+/**
+ * An undirected graph of words kept on disk, in the Compressed Sparse Row
+ * (CSR) format. The files are memory mapped, so this graph can be much bigger
+ * than the Java heap.
+ *
+ * <p>
+ * Each word is a vertex with an int id (see {@link MappedTermDictionary}).
+ * The neighbors of the vertex {@code v} are at the positions
+ * {@code edgesStart(v)} to {@code edgesEnd(v) - 1} of the adjacency arrays.
+ * Each undirected edge is kept twice, one time for each of its vertices.
+ * </p>
+ *
+ * <p>
+ * The vertices and the neighbors of each vertex are in the same order as in a
+ * {@link org.jgrapht.graph.SimpleGraph} loaded from the same file, so the
+ * propagation algorithms give the same results over both graphs.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class MappedCsrGraph implements LexicalGraph {
+
+    private final MappedTermDictionary terms;
+    /** int per vertex (plus one): start of the neighbors of each vertex */
+    private final MappedBuffer offsets;
+    /** int per adjacency entry: the neighbor */
+    private final MappedBuffer targets;
+    /** byte per adjacency entry: the relation code */
+    private final MappedBuffer relations;
+
+    private final int vertexCount;
+    private final int adjacencyCount;
+
+    private MappedCsrGraph(File directory, MappedTermDictionary terms) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new FileInputStream(new File(directory, "graph.meta")));
+        try {
+            this.vertexCount = in.readInt();
+            this.adjacencyCount = in.readInt();
+        } finally {
+            in.close();
+        }
+        this.terms = terms;
+        this.offsets = MappedBuffer.open(new File(directory, "graph.offsets"), true);
+        this.targets = MappedBuffer.open(new File(directory, "graph.targets"), true);
+        this.relations = MappedBuffer.open(new File(directory, "graph.relations"), true);
+    }
+
+    /**
+     * Opens a graph previously built in the directory {@code directory}.
+     *
+     * @see Builder
+     */
+    public static MappedCsrGraph open(File directory) throws IOException {
+        return new MappedCsrGraph(directory, MappedTermDictionary.open(directory));
+    }
+
+    /**
+     * Returns the number of vertices (words).
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the number of undirected edges.
+     */
+    public int edgeCount() {
+        return adjacencyCount / 2;
+    }
+
+    /**
+     * Returns the position of the first neighbor of the vertex {@code v}.
+     */
+    public int edgesStart(int v) {
+        return offsets.getInt(4L * v);
+    }
+
+    /**
+     * Returns the position after the last neighbor of the vertex {@code v}.
+     */
+    public int edgesEnd(int v) {
+        return offsets.getInt(4L * (v + 1));
+    }
+
+    /**
+     * Returns the neighbor at the position {@code e}.
+     */
+    public int target(int e) {
+        return targets.getInt(4L * e);
+    }
+
+    /**
+     * Returns the code ({@link #SYNONYM} or {@link #ANTONYM}) of the relation
+     * at the position {@code e}.
+     */
+    public byte relationCode(int e) {
+        return relations.get(e);
+    }
+
+    public LexicalRelation.Type relation(int e) {
+        return relationCode(e) == ANTONYM
+                ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM;
+    }
+
+    /**
+     * Returns the word of the vertex {@code v}.
+     */
+    public String term(int v) {
+        return terms.term(v);
+    }
+
+    /**
+     * Returns the vertex of the word {@code term}, or -1 if the graph does not
+     * contain that word.
+     */
+    public int vertexId(String term) {
+        return terms.lookup(term);
+    }
+
+    public void close() throws IOException {
+        terms.close();
+        offsets.close();
+        targets.close();
+        relations.close();
+    }
+
+    /**
+     * Builds a {@link MappedCsrGraph} from a sequence of edges, without keeping
+     * the edges in the Java heap.
+     *
+     * <p>
+     * As in a {@link org.jgrapht.graph.SimpleGraph}, only the first edge
+     * between two words is kept, and loops are not allowed.
+     * </p>
+     */
+    public static class Builder {
+
+        private final File directory;
+        private final MappedTermDictionary terms;
+        private final File edgesFile;
+        private final DataOutputStream edges;
+        private long edgeCount = 0;
+
+        /**
+         * Creates a builder that keeps the graph files in the directory
+         * {@code directory}.
+         */
+        public Builder(File directory) throws IOException {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory.getAbsolutePath());
+            }
+            this.directory = directory;
+            this.terms = MappedTermDictionary.create(directory);
+            this.edgesFile = new File(directory, "graph.edges.tmp");
+            this.edges = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(edgesFile), 1 << 16));
+        }
+
+        /**
+         * Adds an edge between the words {@code from} and {@code to}.
+         *
+         * @throws IllegalArgumentException if {@code from} and {@code to} are
+         * the same word.
+         */
+        public Builder addEdge(String from, String to, LexicalRelation.Type type) throws IOException {
+            int u = terms.intern(from);
+            int v = terms.intern(to);
+            if (u == v) {
+                throw new IllegalArgumentException("loops not allowed");
+            }
+            edges.writeInt(u);
+            edges.writeInt(v);
+            edges.writeByte(type.equals(LexicalRelation.Type.ANTONYM) ? ANTONYM : SYNONYM);
+            edgeCount++;
+            return this;
+        }
+
+        /**
+         * Writes the graph files and opens the graph.
+         */
+        public MappedCsrGraph build() throws IOException {
+            edges.close();
+            terms.flush();
+
+            int n = terms.size();
+            if (2 * edgeCount > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many edges: " + edgeCount);
+            }
+            int entries = (int) (2 * edgeCount);
+
+            // 1. Count the neighbors of each vertex
+            MappedBuffer offsets = MappedBuffer.create(
+                    new File(directory, "graph.offsets"), 4L * (n + 1));
+            DataInputStream in = openEdges();
+            try {
+                for (long i = 0; i < edgeCount; i++) {
+                    int u = in.readInt();
+                    int v = in.readInt();
+                    in.readByte();
+                    offsets.putInt(4L * (u + 1), offsets.getInt(4L * (u + 1)) + 1);
+                    offsets.putInt(4L * (v + 1), offsets.getInt(4L * (v + 1)) + 1);
+                }
+            } finally {
+                in.close();
+            }
+            for (int v = 0; v < n; v++) {
+                offsets.putInt(4L * (v + 1), offsets.getInt(4L * (v + 1)) + offsets.getInt(4L * v));
+            }
+
+            // 2. Scatter the edges, keeping the order they were added
+            File cursorFile = new File(directory, "graph.cursor.tmp");
+            MappedBuffer cursor = MappedBuffer.create(cursorFile, 4L * Math.max(1, n));
+            for (int v = 0; v < n; v++) {
+                cursor.putInt(4L * v, offsets.getInt(4L * v));
+            }
+            MappedBuffer targets = MappedBuffer.create(
+                    new File(directory, "graph.targets"), 4L * Math.max(1, entries));
+            MappedBuffer relations = MappedBuffer.create(
+                    new File(directory, "graph.relations"), Math.max(1, entries));
+            in = openEdges();
+            try {
+                for (long i = 0; i < edgeCount; i++) {
+                    int u = in.readInt();
+                    int v = in.readInt();
+                    byte type = in.readByte();
+                    int pos = cursor.getInt(4L * u);
+                    targets.putInt(4L * pos, v);
+                    relations.put(pos, type);
+                    cursor.putInt(4L * u, pos + 1);
+                    pos = cursor.getInt(4L * v);
+                    targets.putInt(4L * pos, u);
+                    relations.put(pos, type);
+                    cursor.putInt(4L * v, pos + 1);
+                }
+            } finally {
+                in.close();
+            }
+            cursor.close();
+            cursorFile.delete();
+            edgesFile.delete();
+
+            // 3. Remove repeated neighbors, keeping the first one. The first
+            // occurrence of v among the neighbors of u, and of u among the
+            // neighbors of v, come from the same (first) edge.
+            NeighborSet seen = new NeighborSet();
+            int write = 0;
+            int readStart = 0;
+            for (int u = 0; u < n; u++) {
+                int readEnd = offsets.getInt(4L * (u + 1));
+                offsets.putInt(4L * u, write);
+                seen.clear(readEnd - readStart);
+                for (int r = readStart; r < readEnd; r++) {
+                    int v = targets.getInt(4L * r);
+                    if (seen.add(v)) {
+                        targets.putInt(4L * write, v);
+                        relations.put(write, relations.get(r));
+                        write++;
+                    }
+                }
+                readStart = readEnd;
+            }
+            offsets.putInt(4L * n, write);
+
+            offsets.close();
+            targets.close();
+            relations.close();
+            terms.close();
+
+            DataOutputStream meta = new DataOutputStream(
+                    new FileOutputStream(new File(directory, "graph.meta")));
+            try {
+                meta.writeInt(n);
+                meta.writeInt(write);
+            } finally {
+                meta.close();
+            }
+            return open(directory);
+        }
+
+        private DataInputStream openEdges() throws IOException {
+            return new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(edgesFile), 1 << 16));
+        }
+    }
+}
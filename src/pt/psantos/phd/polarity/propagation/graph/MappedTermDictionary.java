@@ -0,0 +1,261 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * A dictionary of terms (words) kept on disk. Each distinct term gets an int
+ * id, starting at 0, in the order the terms were added.
+ *
+ * <p>
+ * The terms are stored as UTF-8 bytes in memory mapped files, together with an
+ * open addressing hash table for finding the id of a term. So, the Java heap
+ * used by this dictionary does not depend on the number of terms.
+ * </p>
+ *
+ * Files kept on the dictionary directory:
+ * <ul>
+ * <li>{@code terms.bytes} - the bytes of all terms, one after the other;</li>
+ * <li>{@code terms.offsets} - the start of each term (a long per term);</li>
+ * <li>{@code terms.hashes} - the hash code of each term (an int per term);</li>
+ * <li>{@code terms.table-<capacity>} - the hash table;</li>
+ * <li>{@code terms.meta} - the number of terms and the table capacity.</li>
+ * </ul>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class MappedTermDictionary {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_TABLE_CAPACITY = 1 << 16;
+    private static final long INITIAL_BYTES_CAPACITY = 1 << 20;
+
+    private final File directory;
+    private MappedBuffer bytes;
+    private MappedBuffer offsets;
+    private MappedBuffer hashes;
+    private MappedBuffer table;
+
+    /** number of terms */
+    private int size;
+    /** number of slots of the hash table (a power of 2) */
+    private int tableCapacity;
+
+    private MappedTermDictionary(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates an empty dictionary in the directory {@code directory}.
+     * Existing dictionary files are overwritten.
+     */
+    public static MappedTermDictionary create(File directory) throws IOException {
+        MappedTermDictionary dic = new MappedTermDictionary(directory);
+        dic.size = 0;
+        dic.tableCapacity = INITIAL_TABLE_CAPACITY;
+        dic.bytes = MappedBuffer.create(new File(directory, "terms.bytes"), INITIAL_BYTES_CAPACITY);
+        dic.offsets = MappedBuffer.create(new File(directory, "terms.offsets"), 8L * 1024);
+        dic.hashes = MappedBuffer.create(new File(directory, "terms.hashes"), 4L * 1024);
+        dic.table = MappedBuffer.create(dic.tableFile(dic.tableCapacity), 4L * dic.tableCapacity);
+        dic.offsets.putLong(0, 0);
+        return dic;
+    }
+
+    /**
+     * Opens a dictionary previously created in the directory {@code directory}.
+     */
+    public static MappedTermDictionary open(File directory) throws IOException {
+        MappedTermDictionary dic = new MappedTermDictionary(directory);
+        DataInputStream in = new DataInputStream(
+                new FileInputStream(new File(directory, "terms.meta")));
+        try {
+            dic.size = in.readInt();
+            dic.tableCapacity = in.readInt();
+        } finally {
+            in.close();
+        }
+        dic.bytes = MappedBuffer.open(new File(directory, "terms.bytes"), false);
+        dic.offsets = MappedBuffer.open(new File(directory, "terms.offsets"), false);
+        dic.hashes = MappedBuffer.open(new File(directory, "terms.hashes"), false);
+        dic.table = MappedBuffer.open(dic.tableFile(dic.tableCapacity), false);
+        return dic;
+    }
+
+    /**
+     * Returns the number of terms in the dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of the term {@code term}, adding it to the dictionary if
+     * it does not exists yet.
+     *
+     * @param term a term.
+     * @return the id of the term.
+     */
+    public int intern(String term) throws IOException {
+        byte[] termBytes = term.getBytes(UTF8);
+        int hash = hash(termBytes);
+        int slot = findSlot(termBytes, hash);
+        int id = table.getInt(4L * slot) - 1;
+        if (id >= 0) {
+            return id;
+        }
+
+        // Add the new term
+        id = size;
+        long start = offsets.getLong(8L * id);
+        long end = start + termBytes.length;
+        ensureCapacity(bytes, end);
+        bytes.put(start, termBytes, 0, termBytes.length);
+        ensureCapacity(offsets, 8L * (id + 2));
+        offsets.putLong(8L * (id + 1), end);
+        ensureCapacity(hashes, 4L * (id + 1));
+        hashes.putInt(4L * id, hash);
+        table.putInt(4L * slot, id + 1);
+        size++;
+
+        // Keep the load factor of the hash table under 0.5
+        if (2L * size > tableCapacity) {
+            rehash(tableCapacity * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the term {@code term}, or -1 if the dictionary does
+     * not contain it.
+     */
+    public int lookup(String term) {
+        byte[] termBytes = term.getBytes(UTF8);
+        return table.getInt(4L * findSlot(termBytes, hash(termBytes))) - 1;
+    }
+
+    /**
+     * Returns the term with the id {@code id}.
+     */
+    public String term(int id) {
+        long start = offsets.getLong(8L * id);
+        int length = (int) (offsets.getLong(8L * (id + 1)) - start);
+        byte[] termBytes = new byte[length];
+        bytes.get(start, termBytes, 0, length);
+        return new String(termBytes, UTF8);
+    }
+
+    /**
+     * Writes all the changes to the disk.
+     */
+    public void flush() throws IOException {
+        bytes.flush();
+        offsets.flush();
+        hashes.flush();
+        table.flush();
+        DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(directory, "terms.meta")));
+        try {
+            out.writeInt(size);
+            out.writeInt(tableCapacity);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+        bytes.close();
+        offsets.close();
+        hashes.close();
+        table.close();
+    }
+
+    /**
+     * Returns the slot of the hash table where the term is, or the empty slot
+     * where it should be added.
+     */
+    private int findSlot(byte[] termBytes, int hash) {
+        int mask = tableCapacity - 1;
+        int slot = hash & mask;
+        while (true) {
+            int id = table.getInt(4L * slot) - 1;
+            if (id < 0 || (hashes.getInt(4L * id) == hash && termEquals(id, termBytes))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean termEquals(int id, byte[] termBytes) {
+        long start = offsets.getLong(8L * id);
+        long end = offsets.getLong(8L * (id + 1));
+        if (end - start != termBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < termBytes.length; i++) {
+            if (bytes.get(start + i) != termBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves all the terms to a new hash table with {@code newCapacity} slots.
+     */
+    private void rehash(int newCapacity) throws IOException {
+        MappedBuffer newTable = MappedBuffer.create(tableFile(newCapacity), 4L * newCapacity);
+        int mask = newCapacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes.getInt(4L * id) & mask;
+            while (newTable.getInt(4L * slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable.putInt(4L * slot, id + 1);
+        }
+        File oldFile = table.getFile();
+        table.close();
+        oldFile.delete();
+        this.table = newTable;
+        this.tableCapacity = newCapacity;
+    }
+
+    private File tableFile(int capacity) {
+        return new File(directory, "terms.table-" + capacity);
+    }
+
+    /**
+     * Grows the buffer (at least doubling it) so it can hold
+     * {@code minCapacity} bytes.
+     */
+    private static void ensureCapacity(MappedBuffer buffer, long minCapacity) throws IOException {
+        if (minCapacity > buffer.capacity()) {
+            buffer.ensureCapacity(Math.max(minCapacity, 2 * buffer.capacity()));
+        }
+    }
+
+    /**
+     * Hash function over the UTF-8 bytes of a term.
+     */
+    private static int hash(byte[] termBytes) {
+        int h = 0;
+        for (byte b : termBytes) {
+            h = 31 * h + b;
+        }
+        // Spread the bits (MurmurHash3 finalizer)
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
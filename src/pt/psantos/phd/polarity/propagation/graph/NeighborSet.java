@@ -0,0 +1,43 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+/**
+ * A set of ints that is cleared in constant time. Used for finding the
+ * repeated neighbors of a vertex.
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+class NeighborSet {
+
+    private int[] keys = new int[16];
+    private int[] stamps = new int[16];
+    private int stamp = 0;
+
+    void clear(int expectedSize) {
+        if (2 * expectedSize > keys.length) {
+            int capacity = Integer.highestOneBit(Math.max(16, 2 * expectedSize)) << 1;
+            keys = new int[capacity];
+            stamps = new int[capacity];
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Returns {@code true} if {@code key} was not in the set.
+     */
+    boolean add(int key) {
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) >>> 7 & mask;
+        while (stamps[slot] == stamp) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        stamps[slot] = stamp;
+        keys[slot] = key;
+        return true;
+    }
+}
@@ -0,0 +1,331 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the neighborhoods of the words most recently requested: the words up
+ * to {@code hops} relations away from a word, for browsing a graph
+ * interactively. The neighborhoods are found by a breadth-first search over
+ * a {@link LexicalGraph}, and kept in packed int arrays, up to a maximum
+ * number of ints. When that number is exceeded, the least recently used
+ * neighborhoods are removed.
+ *
+ * <p>
+ * A neighborhood is only kept the second time it is searched (as in the
+ * admission of TinyLFU), so the words requested once do not remove the ones
+ * requested often. The recent searches are remembered in a small table of
+ * keys, where a new key replaces the old key with the same hash.
+ * </p>
+ *
+ * <p>
+ * The {@link LexicalGraph} implementations do not change. When the words or
+ * relations change, a new graph must be given to {@link #setGraph(LexicalGraph)},
+ * which removes all the neighborhoods. A JGraphT graph is used through a
+ * {@link JGraphTLexicalGraph}, created again after each change.
+ * </p>
+ *
+ * <p>
+ * Each neighborhood is an int array: the number of hops {@code k}, the
+ * number of words up to each distance (from 1 to {@code k}), and the words,
+ * by increasing distance. A word is kept as {@code ~id} (a negative number) if
+ * it was reached through an odd number of antonyms, so its polarity is
+ * expected to be the opposite of the polarity of the first word.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class NeighborhoodCache {
+
+    /** Default maximum number of ints kept (64MB) */
+    public static final long DEFAULT_MAX_INTS = 16L << 20;
+    /** Number of recent searches remembered (a power of 2) */
+    private static final int RECENT_MISSES = 1 << 16;
+
+    private LexicalGraph graph;
+    private final long maxInts;
+    /** The neighborhoods, by (hops, vertex), the least recently used first */
+    private final LinkedHashMap<Long, int[]> entries = new LinkedHashMap<Long, int[]>(16, 0.75f, true);
+    private long cachedInts = 0;
+    /** Keys of the recent searches of neighborhoods not kept, by hash */
+    private final long[] recentMisses = new long[RECENT_MISSES];
+
+    /** Used by the searches: the last search that visited each vertex */
+    private int[] visited;
+    private int search = 0;
+    private int[] queue = new int[64];
+
+    /** Metrics */
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a cache of the neighborhoods of a graph, with up to
+     * {@link #DEFAULT_MAX_INTS} ints.
+     */
+    public NeighborhoodCache(LexicalGraph graph) {
+        this(graph, DEFAULT_MAX_INTS);
+    }
+
+    /**
+     * Creates a cache of the neighborhoods of a graph.
+     *
+     * @param graph a graph of words.
+     * @param maxInts maximum number of ints kept by the neighborhoods (4 bytes
+     * each).
+     */
+    public NeighborhoodCache(LexicalGraph graph, long maxInts) {
+        this.maxInts = maxInts;
+        setGraph(graph);
+    }
+
+    /**
+     * Replaces the graph, after its words or relations changed. All the
+     * neighborhoods are removed.
+     */
+    public synchronized void setGraph(LexicalGraph graph) {
+        this.graph = graph;
+        this.visited = new int[graph.vertexCount()];
+        this.search = 0;
+        invalidate();
+    }
+
+    /**
+     * Removes all the neighborhoods. The metrics are kept.
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        Arrays.fill(recentMisses, 0);
+        cachedInts = 0;
+    }
+
+    /**
+     * Returns the words up to {@code hops} relations away from the vertex
+     * {@code v} (not including {@code v}).
+     *
+     * @param v a vertex of the graph.
+     * @param hops maximum distance, at least 1.
+     */
+    public synchronized Neighborhood get(int v, int hops) {
+        if (hops < 1) {
+            throw new IllegalArgumentException("Invalid number of hops: " + hops);
+        }
+        long key = ((long) hops << 32) | (v & 0xFFFFFFFFL);
+        int[] entry = entries.get(key);
+        if (entry != null) {
+            hits++;
+            return new Neighborhood(entry);
+        }
+        misses++;
+        entry = search(v, hops);
+        if (!admit(key)) {
+            return new Neighborhood(entry);
+        }
+        if (entry.length <= maxInts) {
+            entries.put(key, entry);
+            cachedInts += entry.length;
+            Iterator<int[]> eldest = entries.values().iterator();
+            while (cachedInts > maxInts) {
+                cachedInts -= eldest.next().length;
+                eldest.remove();
+                evictions++;
+            }
+        }
+        return new Neighborhood(entry);
+    }
+
+    /**
+     * Returns the number of requests answered by a kept neighborhood.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of requests that searched the graph.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the fraction of the requests answered by a kept neighborhood.
+     */
+    public synchronized double getHitRate() {
+        return (hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+    }
+
+    /**
+     * Returns the number of neighborhoods removed to keep the maximum number
+     * of ints.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns the number of neighborhoods kept.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of ints kept by the neighborhoods.
+     */
+    public synchronized long getCachedInts() {
+        return cachedInts;
+    }
+
+    /**
+     * Returns {@code true} if the neighborhood {@code key} was searched
+     * recently, so it should be kept. Otherwise, remembers it.
+     */
+    private boolean admit(long key) {
+        // The key + 1, so the empty slots (0) are not a key
+        long h = (key + 1) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h >>> 48) & (RECENT_MISSES - 1);
+        if (recentMisses[slot] == key + 1) {
+            recentMisses[slot] = 0;
+            return true;
+        }
+        recentMisses[slot] = key + 1;
+        return false;
+    }
+
+    /**
+     * Breadth-first search from {@code v}, up to {@code hops} relations away.
+     * Returns the packed neighborhood.
+     */
+    private int[] search(int v, int hops) {
+        if (++search == 0) {
+            // The ids of the searches wrapped around
+            Arrays.fill(visited, 0);
+            search = 1;
+        }
+        visited[v] = search;
+        int[] levelEnd = new int[hops];
+        queue[0] = v;
+        int head = 0;
+        int tail = 1;
+        for (int d = 0; d < hops; d++) {
+            int end = tail;
+            while (head < end) {
+                int u = queue[head++];
+                boolean opposite = u < 0;
+                u = (opposite ? ~u : u);
+                for (int e = graph.edgesStart(u), last = graph.edgesEnd(u); e < last; e++) {
+                    int w = graph.target(e);
+                    if (visited[w] != search) {
+                        visited[w] = search;
+                        if (tail == queue.length) {
+                            queue = Arrays.copyOf(queue, 2 * queue.length);
+                        }
+                        boolean antonym = graph.relationCode(e) == LexicalGraph.ANTONYM;
+                        queue[tail++] = (opposite != antonym ? ~w : w);
+                    }
+                }
+            }
+            levelEnd[d] = tail;
+        }
+
+        // The first word (queue[0]) is not kept
+        int[] entry = new int[1 + hops + tail - 1];
+        entry[0] = hops;
+        for (int d = 0; d < hops; d++) {
+            entry[1 + d] = levelEnd[d] - 1;
+        }
+        System.arraycopy(queue, 1, entry, 1 + hops, tail - 1);
+        return entry;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "NEIGHBORHOOD CACHE: " + size() + " neighborhoods, " + getCachedInts() + " ints"
+                + "\nHits: " + getHits()
+                + "\nMisses: " + getMisses()
+                + "\nHit rate: " + String.format("%.4f", getHitRate())
+                + "\nEvictions: " + getEvictions();
+    }
+
+    /**
+     * A neighborhood returned by {@link NeighborhoodCache#get(int, int)}: the
+     * words by increasing distance to the first word.
+     */
+    public static class Neighborhood {
+
+        private final int[] entry;
+
+        Neighborhood(int[] entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the maximum distance of the words.
+         */
+        public int getHops() {
+            return entry[0];
+        }
+
+        /**
+         * Returns the number of words.
+         */
+        public int size() {
+            return entry.length - 1 - entry[0];
+        }
+
+        /**
+         * Returns the number of words up to {@code distance} relations away
+         * from the first word.
+         */
+        public int size(int distance) {
+            if (distance < 1) {
+                return 0;
+            }
+            return entry[Math.min(distance, entry[0])];
+        }
+
+        /**
+         * Returns the vertex of the {@code i}-th word.
+         */
+        public int vertex(int i) {
+            int v = entry[1 + entry[0] + i];
+            return (v < 0 ? ~v : v);
+        }
+
+        /**
+         * Returns the distance from the first word to the {@code i}-th word.
+         */
+        public int distance(int i) {
+            int d = 1;
+            while (entry[d] <= i) {
+                d++;
+            }
+            return d;
+        }
+
+        /**
+         * Returns {@code true} if the {@code i}-th word was reached through
+         * an odd number of antonyms, so it is expected to have the opposite
+         * polarity of the first word.
+         */
+        public boolean isOpposite(int i) {
+            return entry[1 + entry[0] + i] < 0;
+        }
+
+        /**
+         * Returns the vertices of the words, by increasing distance.
+         */
+        public int[] vertices() {
+            int[] vertices = new int[size()];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = vertex(i);
+            }
+            return vertices;
+        }
+    }
+}
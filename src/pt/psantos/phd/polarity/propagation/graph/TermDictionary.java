@@ -0,0 +1,246 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A dictionary of terms (words) kept in the Java heap. Each distinct term gets
+ * an int id, starting at 0, in the order the terms were added.
+ *
+ * <p>
+ * This is the in-memory counterpart of {@link MappedTermDictionary}: the
+ * terms are stored as UTF-8 bytes, one after the other, in a single growable
+ * byte array (the arena), together with an open addressing hash table for
+ * finding the id of a term. So there is no {@link String} (nor hash map entry)
+ * per term: the terms can be added and looked up straight from the bytes read
+ * from a file ({@link #intern(byte[], int, int)}), and a {@link String} is only
+ * created when {@link #term(int)} is called.
+ * </p>
+ *
+ * <p>
+ * The dictionary is not thread safe while terms are being added. After that,
+ * it can be read by many threads.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class TermDictionary {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_TABLE_CAPACITY = 1 << 10;
+
+    /** The bytes of all terms, one after the other */
+    private byte[] bytes;
+    /** The start of each term (plus the end of the last one) */
+    private int[] offsets;
+    /** The hash code of each term */
+    private int[] hashes;
+    /** The hash table: the id of the term in each slot plus 1 (0 is an empty slot) */
+    private int[] table;
+
+    /** number of terms */
+    private int size = 0;
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public TermDictionary() {
+        this(1024, 16 * 1024);
+    }
+
+    /**
+     * Creates an empty dictionary with room for {@code expectedTerms} terms,
+     * with {@code expectedBytes} bytes in total, before growing.
+     */
+    public TermDictionary(int expectedTerms, int expectedBytes) {
+        expectedTerms = Math.max(expectedTerms, 16);
+        this.bytes = new byte[Math.max(expectedBytes, 16)];
+        this.offsets = new int[expectedTerms + 1];
+        this.hashes = new int[expectedTerms];
+        int capacity = INITIAL_TABLE_CAPACITY;
+        while (capacity < 2L * expectedTerms) {
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+    }
+
+    /**
+     * Returns the number of terms in the dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes used by the terms (UTF-8).
+     */
+    public int byteSize() {
+        return offsets[size];
+    }
+
+    /**
+     * Returns the id of the term {@code term}, adding it to the dictionary if
+     * it does not exists yet.
+     *
+     * @param term a term.
+     * @return the id of the term.
+     */
+    public int intern(String term) {
+        byte[] termBytes = term.getBytes(UTF8);
+        return intern(termBytes, 0, termBytes.length);
+    }
+
+    /**
+     * Returns the id of the term with the UTF-8 bytes
+     * {@code buffer[start..start+length-1]}, adding it to the dictionary if it
+     * does not exists yet. The bytes are copied.
+     *
+     * @return the id of the term.
+     */
+    public int intern(byte[] buffer, int start, int length) {
+        int hash = hash(buffer, start, length);
+        int slot = findSlot(buffer, start, length, hash);
+        int id = table[slot] - 1;
+        if (id >= 0) {
+            return id;
+        }
+
+        // Add the new term
+        id = size;
+        int termStart = offsets[id];
+        if (termStart + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(termStart + length, 2 * bytes.length));
+        }
+        if (id + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * (id + 1));
+            hashes = Arrays.copyOf(hashes, offsets.length - 1);
+        }
+        System.arraycopy(buffer, start, bytes, termStart, length);
+        offsets[id + 1] = termStart + length;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        size++;
+
+        // Keep the load factor of the hash table under 0.5
+        if (2L * size > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the term {@code term}, or -1 if the dictionary does
+     * not contain it.
+     */
+    public int lookup(String term) {
+        byte[] termBytes = term.getBytes(UTF8);
+        return lookup(termBytes, 0, termBytes.length);
+    }
+
+    /**
+     * Returns the id of the term with the UTF-8 bytes
+     * {@code buffer[start..start+length-1]}, or -1 if the dictionary does not
+     * contain it.
+     */
+    public int lookup(byte[] buffer, int start, int length) {
+        return table[findSlot(buffer, start, length, hash(buffer, start, length))] - 1;
+    }
+
+    /**
+     * Returns the term with the id {@code id}. A new {@link String} is created
+     * on each call.
+     */
+    public String term(int id) {
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], UTF8);
+    }
+
+    /**
+     * Returns a dictionary with the same terms, renumbered: the term
+     * {@code order[i]} of this dictionary is the term {@code i} of the copy.
+     *
+     * @param order a permutation of the term ids.
+     */
+    public TermDictionary permute(int[] order) {
+        TermDictionary copy = new TermDictionary(size, byteSize());
+        for (int i = 0; i < order.length; i++) {
+            int id = order[i];
+            copy.intern(bytes, offsets[id], offsets[id + 1] - offsets[id]);
+        }
+        return copy;
+    }
+
+    /**
+     * Frees the unused capacity of the arrays, once all the terms are added.
+     */
+    public void trimToSize() {
+        bytes = Arrays.copyOf(bytes, offsets[size]);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        hashes = Arrays.copyOf(hashes, size);
+    }
+
+    /**
+     * Returns the slot of the hash table where the term is, or the empty slot
+     * where it should be added.
+     */
+    private int findSlot(byte[] buffer, int start, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int id = table[slot] - 1;
+            if (id < 0 || (hashes[id] == hash && termEquals(id, buffer, start, length))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean termEquals(int id, byte[] buffer, int start, int length) {
+        int termStart = offsets[id];
+        if (offsets[id + 1] - termStart != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[termStart + i] != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves all the terms to a new hash table with {@code newCapacity} slots.
+     */
+    private void rehash(int newCapacity) {
+        int[] newTable = new int[newCapacity];
+        int mask = newCapacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id + 1;
+        }
+        this.table = newTable;
+    }
+
+    /**
+     * Hash function over the UTF-8 bytes of a term. Same as the one used by
+     * {@link MappedTermDictionary}.
+     */
+    private static int hash(byte[] buffer, int start, int length) {
+        int h = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            h = 31 * h + buffer[i];
+        }
+        // Spread the bits (MurmurHash3 finalizer)
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
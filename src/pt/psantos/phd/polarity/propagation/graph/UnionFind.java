@@ -0,0 +1,110 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+
+/**
+ * Disjoint sets of int ids (union-find), used for finding the connected
+ * components of a graph while it is loaded. New ids are added with
+ * {@link #add()}, from 0 up.
+ *
+ * <p>
+ * Uses union by size and path halving, so each operation takes almost
+ * constant time.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class UnionFind {
+
+    private int[] parent;
+    /** Number of elements of each set, only valid for the root of the set */
+    private int[] sizes;
+    private int size = 0;
+
+    public UnionFind() {
+        this(1024);
+    }
+
+    public UnionFind(int initialCapacity) {
+        this.parent = new int[Math.max(1, initialCapacity)];
+        this.sizes = new int[parent.length];
+    }
+
+    /**
+     * Adds a new id, in a set of its own.
+     *
+     * @return the new id.
+     */
+    public int add() {
+        if (size == parent.length) {
+            parent = Arrays.copyOf(parent, 2 * size);
+            sizes = Arrays.copyOf(sizes, 2 * size);
+        }
+        parent[size] = size;
+        sizes[size] = 1;
+        return size++;
+    }
+
+    /**
+     * Returns the number of ids.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the root of the set of {@code id}.
+     */
+    public int find(int id) {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+        return id;
+    }
+
+    /**
+     * Joins the sets of {@code a} and {@code b}.
+     *
+     * @return {@code true} if they were in different sets.
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (sizes[rootA] < sizes[rootB]) {
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        sizes[rootA] += sizes[rootB];
+        return true;
+    }
+
+    /**
+     * Returns the set of each id, numbered from 0 in the order of the smallest
+     * id of each set.
+     *
+     * @param labels array where the set of each id is written, with at least
+     * {@link #size()} positions.
+     * @return the number of sets.
+     */
+    public int labels(int[] labels) {
+        int[] rootLabel = new int[size];
+        Arrays.fill(rootLabel, -1);
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            int root = find(id);
+            if (rootLabel[root] < 0) {
+                rootLabel[root] = count++;
+            }
+            labels[id] = rootLabel[root];
+        }
+        return count;
+    }
+}
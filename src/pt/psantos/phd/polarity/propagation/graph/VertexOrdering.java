@@ -0,0 +1,137 @@
+package pt.psantos.phd.polarity.propagation.graph;
+
+import java.util.Arrays;
+
+/**
+ * Vertex orderings that keep related words close in memory. After
+ * renumbering a graph with one of these orderings
+ * ({@link CsrGraph#permute(int[])}), the neighbors of a vertex have ids close
+ * to each other, and close to the ids of the vertices visited just before, so
+ * the propagation reads the adjacency and the counters of the words almost in
+ * sequence.
+ *
+ * <p>
+ * Each ordering is a permutation {@code order}, where {@code order[i]} is the
+ * vertex that gets the new id {@code i}.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class VertexOrdering {
+
+    /**
+     * Returns the breadth-first order from the vertices {@code roots}: the
+     * roots, then the vertices at distance 1, and so on, in the order the
+     * propagation visits them. The vertices not reached from the roots come
+     * at the end, in breadth-first order from the first vertex of each
+     * component.
+     */
+    public static int[] breadthFirst(LexicalGraph graph, int[] roots) {
+        int n = graph.vertexCount();
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        int tail = 0;
+        for (int v : roots) {
+            if (!seen[v]) {
+                seen[v] = true;
+                order[tail++] = v;
+            }
+        }
+        int head = 0;
+        int next = 0;
+        while (tail < n) {
+            if (head == tail) {
+                // A component not reached yet
+                while (seen[next]) {
+                    next++;
+                }
+                seen[next] = true;
+                order[tail++] = next;
+            }
+            int u = order[head++];
+            for (int e = graph.edgesStart(u), end = graph.edgesEnd(u); e < end; e++) {
+                int v = graph.target(e);
+                if (!seen[v]) {
+                    seen[v] = true;
+                    order[tail++] = v;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Returns the Reverse Cuthill-McKee order: a breadth-first order of each
+     * component, starting from a vertex with the smallest degree and visiting
+     * the neighbors of each vertex by increasing degree, reversed. This
+     * ordering reduces the bandwidth of the adjacency matrix (the distance
+     * between the ids of related vertices).
+     */
+    public static int[] reverseCuthillMcKee(LexicalGraph graph) {
+        int n = graph.vertexCount();
+
+        // The vertices sorted by degree, for choosing the first of each component
+        long[] byDegree = new long[n];
+        for (int v = 0; v < n; v++) {
+            byDegree[v] = ((long) degree(graph, v) << 32) | v;
+        }
+        Arrays.sort(byDegree);
+
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        long[] neighbors = new long[0];
+        int head = 0;
+        int tail = 0;
+        for (long start : byDegree) {
+            int root = (int) start;
+            if (seen[root]) {
+                continue;
+            }
+            seen[root] = true;
+            order[tail++] = root;
+            while (head < tail) {
+                int u = order[head++];
+                int count = 0;
+                if (neighbors.length < degree(graph, u)) {
+                    neighbors = new long[Math.max(degree(graph, u), 2 * neighbors.length)];
+                }
+                for (int e = graph.edgesStart(u), end = graph.edgesEnd(u); e < end; e++) {
+                    int v = graph.target(e);
+                    if (!seen[v]) {
+                        seen[v] = true;
+                        neighbors[count++] = ((long) degree(graph, v) << 32) | v;
+                    }
+                }
+                Arrays.sort(neighbors, 0, count);
+                for (int i = 0; i < count; i++) {
+                    order[tail++] = (int) neighbors[i];
+                }
+            }
+        }
+
+        // Reverse
+        for (int i = 0, j = n - 1; i < j; i++, j--) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * Returns the inverse of a permutation: the new id of each vertex.
+     */
+    public static int[] inverse(int[] order) {
+        int[] inverse = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            inverse[order[i]] = i;
+        }
+        return inverse;
+    }
+
+    private static int degree(LexicalGraph graph, int v) {
+        return graph.edgesEnd(v) - graph.edgesStart(v);
+    }
+}
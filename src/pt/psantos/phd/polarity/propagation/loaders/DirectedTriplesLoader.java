@@ -0,0 +1,104 @@
+package pt.psantos.phd.polarity.propagation.loaders;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
+import org.jgrapht.graph.DirectedPseudograph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.TermDictionary;
+
+/**
+ * This class represents a triple loader for directed graphs.
+ * This loader reads a file of triples, in the same format read by
+ * {@link TriplesLoader}, and loads them as a directed graph: each triple
+ * {@code <word1> <relation_name> <word2>} is a relation from
+ * {@code <word1>} to {@code <word2>}.
+ *
+ * <p>
+ * The filters ({@link #addFilter(LoadingFilter)}) are used as in
+ * {@link TriplesLoader}. Unlike the undirected graphs, the directed graphs
+ * allow self relations, so they are loaded unless
+ * {@link #setIgnoreSelfRelations(boolean)} is called. The same relation can be
+ * loaded more than once.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class DirectedTriplesLoader extends TriplesLoader {
+
+    public DirectedTriplesLoader() {
+        this.ignoreSelfRelations = false;
+    }
+
+    /**
+     * Loads a set of triples from file. Each line of the file must be in the
+     * form of: {@literal <word1> <RELATION> <word2>}. Lines starting by "#"
+     * are ignored.
+     *
+     * @param file file to load.
+     * @param charsetName a charset name or {@code null} to use the default charset.
+     * @return a directed graph.
+     * @throws java.io.FileNotFoundException
+     */
+    public DirectedPseudograph<Word, LexicalRelation> loadDirected(File file, String charsetName) throws FileNotFoundException, IOException {
+        final DirectedPseudograph<Word, LexicalRelation> graph
+                = new DirectedPseudograph<Word, LexicalRelation>(
+                        new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class));
+        // Each word is created once
+        final HashMap<String, Word> words = new HashMap<String, Word>();
+        readEdges(file, charsetName, new EdgeSink() {
+            @Override
+            public void addEdge(String from, String to, LexicalRelation.Type type) {
+                Word node1 = word(from);
+                Word node2 = word(to);
+                graph.addEdge(node1, node2, new LexicalRelation(node1, node2, type));
+            }
+
+            private Word word(String term) {
+                Word w = words.get(term);
+                if (w == null) {
+                    w = new Word(term);
+                    words.put(term, w);
+                    graph.addVertex(w);
+                }
+                return w;
+            }
+        });
+        return graph;
+    }
+
+    /**
+     * Loads a set of triples from file to a directed graph kept in primitive
+     * arrays. The graph has the same words and relations of the graph returned
+     * by {@link #loadDirected(java.io.File, java.lang.String)}, in the same
+     * order, but uses much less memory: the relations go straight from the file
+     * to the arrays of the graph, and the words to its dictionary.
+     *
+     * @param file file to load.
+     * @param charsetName a charset name or {@code null} to use the default charset.
+     * @return a directed graph.
+     * @throws java.io.FileNotFoundException
+     * @see DirectedCsrGraph
+     */
+    public DirectedCsrGraph loadDirectedCompact(File file, String charsetName) throws FileNotFoundException, IOException {
+        final DirectedCsrGraph.Builder builder = new DirectedCsrGraph.Builder();
+        readTermEdges(file, charsetName, new TermEdgeSink() {
+            @Override
+            public TermDictionary terms() {
+                return builder.getTerms();
+            }
+
+            @Override
+            public void addEdge(int from, int to, LexicalRelation.Type type) {
+                builder.addEdge(from, to, type);
+            }
+        });
+        return builder.build();
+    }
+}
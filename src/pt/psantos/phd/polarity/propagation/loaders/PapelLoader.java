@@ -3,8 +3,12 @@ package pt.psantos.phd.polarity.propagation.loaders;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumMap;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
 import org.jgrapht.graph.SimpleGraph;
 import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
 
 /**
  * Class for loading PAPEL 2.0. This class allows to load a set of relations
@@ -32,6 +36,9 @@ public class PapelLoader extends TriplesLoader implements LoadingFilter {
     
     private POS DEFAULT_POS = POS.ALL;
     
+    /** {@code true} if this object was already added as a filter */
+    private boolean filtered = false;
+    
      /**
      * Loads all triples from file {
      *
@@ -52,7 +59,28 @@ public class PapelLoader extends TriplesLoader implements LoadingFilter {
      * @throws java.lang.IllegalArgumentException if there are direct loops.
      * This is if there are words pointing to itself.
      */
-     public SimpleGraph load(File file, String charsetName, POS pos) throws IOException {
+     public SimpleGraph<Word, LexicalRelation> load(File file, String charsetName, POS pos) throws IOException {
+         setPos(pos);
+         return super.load(file, charsetName);
+     }
+     
+    /**
+     * Same as {@link #load(java.io.File, java.lang.String, POS)}, but the
+     * graph is kept in primitive arrays
+     * (see {@link #loadCompact(java.io.File, java.lang.String)}).
+     *
+     * @param file file to load.
+     * @param charsetName a charset.
+     * @param pos part of speech of the triples to load, or {@code null} for
+     * all.
+     * @return an undirected graph.
+     */
+    public CsrGraph loadCompact(File file, String charsetName, POS pos) throws IOException {
+        setPos(pos);
+        return super.loadCompact(file, charsetName);
+    }
+     
+    private void setPos(POS pos) {
          // If the pos argument is not null
          if(pos != null) {
              this.DEFAULT_POS = pos; // Set the POS tag of the triples that we want to load
@@ -60,11 +88,12 @@ public class PapelLoader extends TriplesLoader implements LoadingFilter {
          
          // Add a filter that allows to choose which triples to load from file.
          // @see loadThis(String[] tripleFields)
-         super.addFilter(this);
+         if(!filtered) {
+             super.addFilter(this);
+             filtered = true;
+         }
          super.setIgnoreSelfRelations(true);
-         
-         return super.load(file, charsetName);
-     }
+    }
             
     @Override
     public boolean loadThis(String[] tripleFields) {
@@ -76,19 +105,108 @@ public class PapelLoader extends TriplesLoader implements LoadingFilter {
         // If we want to load relations with a specif part of speech
         POS pos = this.DEFAULT_POS;
         if (!pos.equals(POS.ALL)) {
-            if (pos.equals(POS.NOUN) && !tripleFields[1].endsWith("N_DE")) {
-                return false;
-            } else if (pos.equals(POS.ADJECTIVE) && !tripleFields[1].endsWith("ADJ_DE")) {
-                return false;
-            } else if (pos.equals(POS.ADVERB) && !tripleFields[1].endsWith("ADV_DE")) {
-                return false;
-            } else if (pos.equals(POS.VERB) && !tripleFields[1].endsWith("ADV_DE")) {
-                return false;
-            }
+            return pos.equals(posOf(tripleFields[1]));
         }
             
         return true;
     }
     
+    /**
+     * Returns the part of speech of a PAPEL relation, given by the suffix of
+     * its name: "_N_DE" (noun), "_V_DE" (verb), "_ADJ_DE" (adjective) or
+     * "_ADV_DE" (adverb). For instance, {@code SINONIMO_V_DE} is a relation
+     * between verbs.
+     *
+     * @param relation the name of the relation.
+     * @return the part of speech, or {@code null} if the name does not end by
+     * any of the suffixes.
+     */
+    public static POS posOf(String relation) {
+        // "_ADV_DE" also ends by "V_DE", so the underscore is needed
+        if (relation.endsWith("_N_DE")) {
+            return POS.NOUN;
+        } else if (relation.endsWith("_V_DE")) {
+            return POS.VERB;
+        } else if (relation.endsWith("_ADJ_DE")) {
+            return POS.ADJECTIVE;
+        } else if (relation.endsWith("_ADV_DE")) {
+            return POS.ADVERB;
+        }
+        return null;
+    }
+    
+    /**
+     * Loads the graph of each part of speech, and the graph of all of them,
+     * reading the file only once. Each graph is the same graph returned by
+     * {@link #load(java.io.File, java.lang.String, POS)} with that part of
+     * speech, with its own {@link pt.psantos.phd.polarity.propagation.algorithm.Word}
+     * objects.
+     *
+     * @param file file to load.
+     * @param charsetName a charset.
+     * @return the graphs of {@link POS#NOUN}, {@link POS#VERB},
+     * {@link POS#ADJECTIVE}, {@link POS#ADVERB} and {@link POS#ALL}.
+     */
+    public EnumMap<POS, SimpleGraph<Word, LexicalRelation>> loadByPos(File file, String charsetName) throws IOException {
+        final EnumMap<POS, SimpleGraph<Word, LexicalRelation>> graphs
+                = new EnumMap<POS, SimpleGraph<Word, LexicalRelation>>(POS.class);
+        for (POS pos : POS.values()) {
+            graphs.put(pos, new SimpleGraph<Word, LexicalRelation>(
+                    new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class)));
+        }
+        readByPos(file, charsetName, new TripleSink() {
+            @Override
+            public void addTriple(String[] fields) {
+                PapelLoader.this.addTriple(graphs.get(POS.ALL), fields);
+                POS pos = posOf(fields[1]);
+                if (pos != null) {
+                    PapelLoader.this.addTriple(graphs.get(pos), fields);
+                }
+            }
+        });
+        return graphs;
+    }
+    
+    /**
+     * Same as {@link #loadByPos(java.io.File, java.lang.String)}, but the
+     * graphs are kept in primitive arrays. Each graph is the same graph
+     * returned by {@link #loadCompact(java.io.File, java.lang.String, POS)}
+     * with that part of speech.
+     */
+    public EnumMap<POS, CsrGraph> loadCompactByPos(File file, String charsetName) throws IOException {
+        final EnumMap<POS, CsrGraph.Builder> builders = new EnumMap<POS, CsrGraph.Builder>(POS.class);
+        for (POS pos : POS.values()) {
+            builders.put(pos, new CsrGraph.Builder());
+        }
+        readByPos(file, charsetName, new TripleSink() {
+            @Override
+            public void addTriple(String[] fields) {
+                LexicalRelation.Type relType = relationType(fields[1]);
+                if (relType.equals(LexicalRelation.Type.UNKNOWN)) {
+                    return; // Unknown relation type. Ignore it.
+                }
+                builders.get(POS.ALL).addEdge(fields[0], fields[2], relType);
+                POS pos = posOf(fields[1]);
+                if (pos != null) {
+                    builders.get(pos).addEdge(fields[0], fields[2], relType);
+                }
+            }
+        });
+        EnumMap<POS, CsrGraph> graphs = new EnumMap<POS, CsrGraph>(POS.class);
+        for (POS pos : POS.values()) {
+            graphs.put(pos, builders.get(pos).build());
+        }
+        return graphs;
+    }
+    
+    /**
+     * Reads the triples of all the parts of speech, with the same rules of
+     * {@link #load(java.io.File, java.lang.String, POS)}.
+     */
+    private void readByPos(File file, String charsetName, TripleSink sink) throws IOException {
+        setPos(POS.ALL);
+        readTriples(file, charsetName, sink);
+    }
+    
 
 }
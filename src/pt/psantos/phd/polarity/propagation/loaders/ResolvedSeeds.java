@@ -0,0 +1,83 @@
+package pt.psantos.phd.polarity.propagation.loaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Seed words read from file and resolved against the words of a graph by
+ * {@link SeedWordsLoader#load(java.io.File, java.lang.String, pt.psantos.phd.polarity.propagation.graph.LexicalGraph, pt.psantos.phd.polarity.propagation.algorithm.PropagationState)}:
+ * the vertices of the seed words found in the graph, and the seed words that
+ * were not found.
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class ResolvedSeeds {
+
+    /** Maximum number of unknown words kept by {@link #getUnknownWords()} */
+    static final int MAX_UNKNOWN_WORDS_KEPT = 1000;
+
+    private final int[] vertices;
+    private final int repeatedCount;
+    private final int unknownCount;
+    private final List<String> unknownWords;
+
+    ResolvedSeeds(int[] vertices, int repeatedCount, int unknownCount
+            , List<String> unknownWords) {
+        this.vertices = vertices;
+        this.repeatedCount = repeatedCount;
+        this.unknownCount = unknownCount;
+        this.unknownWords = unknownWords;
+    }
+
+    /**
+     * Returns the vertices of the seed words found in the graph, in the order
+     * they were read. If the same word is repeated, only the first one is
+     * used.
+     */
+    public int[] getVertices() {
+        return vertices.clone();
+    }
+
+    /**
+     * Returns the vertices of the seed words found in the graph, sorted by id
+     * (the order in which the undirected propagation visits them).
+     */
+    public int[] getSortedVertices() {
+        int[] sorted = vertices.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Returns the number of seed words repeated in the file (only the first
+     * one is used).
+     */
+    public int getRepeatedCount() {
+        return repeatedCount;
+    }
+
+    /**
+     * Returns the number of seed words not found in the graph.
+     */
+    public int getUnknownCount() {
+        return unknownCount;
+    }
+
+    /**
+     * Returns the first seed words not found in the graph (up to 1000).
+     */
+    public List<String> getUnknownWords() {
+        return Collections.unmodifiableList(new ArrayList<String>(unknownWords));
+    }
+
+    @Override
+    public String toString() {
+        return "SEED WORDS FOUND IN THE GRAPH: " + vertices.length +
+                "\nRepeated seed words: " + getRepeatedCount() +
+                "\nSeed words not found in the graph: " + getUnknownCount();
+    }
+}
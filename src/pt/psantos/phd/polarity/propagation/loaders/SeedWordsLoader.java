@@ -1,4 +1,3 @@
-
 package pt.psantos.phd.polarity.propagation.loaders;
 
 import java.io.BufferedReader;
@@ -11,8 +10,11 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
 import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
 
 /**
  * Class for loading a file of seed words.
@@ -32,12 +34,28 @@ import pt.psantos.phd.polarity.propagation.algorithm.Word;
  * 
  * </pre>
  * 
+ * <p>
+ * The lines are split by hand, without regular expressions, with the same
+ * rules as before: lines starting by "#", "//" or "/*" (after optional
+ * whitespace) are comments; the fields are separated by ";", ":", "," or
+ * whitespace, followed by optional whitespace; the polarity is an int or a
+ * float.
+ * </p>
+ * 
  * @since 0.6.0
- * @version 0.6.0
+ * @version 0.7.0
  * @author PSantos
  */
 public class SeedWordsLoader {
 
+    /**
+     * Receives the seed words read by {@link #read(java.io.File, java.lang.String, SeedSink)}.
+     */
+    private interface SeedSink {
+
+        void addSeed(String word, float polarity);
+    }
+
     /**
      * Return a list of seed words read from the file {@code file} passed as 
      * parameter.
@@ -53,7 +71,93 @@ public class SeedWordsLoader {
      */
     public static List<Word> load(File file, String charsetName) throws FileNotFoundException, UnsupportedEncodingException, IOException {
 
-        List<Word> seedWords = new ArrayList<Word>();
+        final List<Word> seedWords = new ArrayList<Word>();
+
+        read(file, charsetName, new SeedSink() {
+            @Override
+            public void addSeed(String seedWord, float polarity) {
+                Word w = new Word(seedWord);
+
+                if(polarity>0) {
+                    w.setAsPositiveSeed();
+                } else if(polarity<0) {
+                    w.setAsNegativeSeed();
+                } else if(polarity == 0) {
+                    w.setAsNeutralSeed();
+                }
+
+                seedWords.add(w);
+            }
+        });
+        
+        return seedWords;
+    }
+
+    /**
+     * Reads the seed words from the file {@code file} and finds them in the
+     * graph {@code graph}, in the same pass. The state of the seed words found
+     * is set in {@code state}, as done by
+     * {@link pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation#setSeedWords(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, java.util.List, pt.psantos.phd.polarity.propagation.algorithm.PropagationState)},
+     * without creating a {@link Word} per seed word.
+     * 
+     * @param file file with the seed words to load.
+     * @param charsetName the charset name of the file or {@code null} for using
+     * the default charset name.
+     * @param graph the graph where the seed words are searched.
+     * @param state where the counters and the iteration of each vertex are
+     * kept.
+     * @return the vertices of the seed words, and the seed words not found.
+     * @throws IllegalArgumentException if the graph does not contain any of the
+     * seed words.
+     */
+    public static ResolvedSeeds load(File file, String charsetName
+            , final LexicalGraph graph, final PropagationState state) throws IOException {
+
+        final boolean[] found = new boolean[graph.vertexCount()];
+        final int[][] vertices = {new int[1024]};
+        // found, repeated, unknown
+        final int[] counts = new int[3];
+        final List<String> unknownWords = new ArrayList<String>();
+
+        read(file, charsetName, new SeedSink() {
+            @Override
+            public void addSeed(String seedWord, float polarity) {
+                int v = graph.vertexId(seedWord);
+                if (v < 0) {
+                    if (counts[2]++ < ResolvedSeeds.MAX_UNKNOWN_WORDS_KEPT) {
+                        unknownWords.add(seedWord);
+                    }
+                    return;
+                }
+                // If the same word is repeated, the first one is used.
+                if (found[v]) {
+                    counts[1]++;
+                    return;
+                }
+                found[v] = true;
+                state.setSeed(v, polarity > 0 ? PropagationState.POSITIVE
+                        : polarity < 0 ? PropagationState.NEGATIVE
+                        : polarity == 0 ? PropagationState.NEUTRAL
+                        : PropagationState.NOT_SET);
+                if (counts[0] == vertices[0].length) {
+                    vertices[0] = Arrays.copyOf(vertices[0], 2 * counts[0]);
+                }
+                vertices[0][counts[0]++] = v;
+            }
+        });
+
+        // If no seed words were found in the graph
+        if (counts[0] <= 0) {
+            throw new IllegalArgumentException("Seed words not found in the graph.");
+        }
+        return new ResolvedSeeds(Arrays.copyOf(vertices[0], counts[0]), counts[1]
+                , counts[2], unknownWords);
+    }
+
+    /**
+     * Reads all the seed words from file, and sends them to {@code sink}.
+     */
+    private static void read(File file, String charsetName, SeedSink sink) throws FileNotFoundException, UnsupportedEncodingException, IOException {
 
         charsetName = (charsetName == null 
                 ? Charset.defaultCharset().name() : charsetName);
@@ -61,37 +165,117 @@ public class SeedWordsLoader {
         Reader reader = new InputStreamReader(new FileInputStream(file), charsetName);
         BufferedReader br = new BufferedReader(reader);
         String line;
-        String[] fields = null;
+        // Start and end of the first two fields
+        int[] bounds = new int[4];
+
+        try {
+            // For each line
+            while ((line = br.readLine()) != null) {
+                // If the line is a comment or is empty 
+                if (isCommentOrEmpty(line)) {
+                    continue; // ignore this line
+                }
+
+                if(split(line, bounds) < 2) {
+                    continue; // ignore this line
+                }
+
+                String seedWord = line.substring(bounds[0], bounds[1]).trim();
+                float polarity = parsePolarity(line.substring(bounds[2], bounds[3]).trim());
 
-        // For each line
-        while ((line = br.readLine()) != null) {
-            // If the line is a comment or is empty 
-            if (line.matches("^\\s{0,}(#|/\\*|//).{0,}") || line.trim().isEmpty()) {
-                continue; // ignore this line
+                sink.addSeed(seedWord, polarity);
             }
-            
-            fields = line.split("(;|:|,|\\s)\\s{0,}");
-            
-            if(fields.length < 2) {
-                continue; // ignore this line
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Same as {@code line.matches("^\\s{0,}(#|/\\*|//).{0,}") || line.trim().isEmpty()}.
+     */
+    private static boolean isCommentOrEmpty(String line) {
+        int n = line.length();
+        int i = 0;
+        while (i < n && isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i < n) {
+            char c = line.charAt(i);
+            if (c == '#' || (c == '/' && i + 1 < n
+                    && (line.charAt(i + 1) == '*' || line.charAt(i + 1) == '/'))) {
+                return true;
             }
-            
-            String seedWord = fields[0].trim();
-            float polarity = Float.valueOf(fields[1].trim());
-            
-            Word w = new Word(seedWord);
-            
-            if(polarity>0) {
-                w.setAsPositiveSeed();
-            } else if(polarity<0) {
-                w.setAsNegativeSeed();
-            } else if(polarity == 0) {
-                w.setAsNeutralSeed();
+        }
+        // trim() removes all the characters up to ' '
+        for (i = 0; i < n; i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
             }
-            
-            seedWords.add(w);
         }
-        
-        return seedWords;
+        return true;
+    }
+
+    /**
+     * Same as {@code line.split("(;|:|,|\\s)\\s{0,}")}, but only the bounds of
+     * the first two fields are kept, in {@code bounds}.
+     *
+     * @return the number of fields (without the empty fields at the end, as
+     * {@link String#split(java.lang.String)}).
+     */
+    private static int split(String line, int[] bounds) {
+        int n = line.length();
+        int fields = 0;
+        int nonEmptyFields = 0;
+        int start = 0;
+        int i = 0;
+        while (i <= n) {
+            char c = (i < n ? line.charAt(i) : ';');
+            if (c == ';' || c == ':' || c == ',' || isWhitespace(c)) {
+                if (fields < 2) {
+                    bounds[2 * fields] = start;
+                    bounds[2 * fields + 1] = Math.min(i, n);
+                }
+                fields++;
+                if (i > start) {
+                    nonEmptyFields = fields;
+                }
+                i++;
+                while (i < n && isWhitespace(line.charAt(i))) {
+                    i++;
+                }
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        return nonEmptyFields;
+    }
+
+    /**
+     * Same as {@code Float.valueOf(field)}, without the cost of parsing a float
+     * for the common case of an int.
+     */
+    private static float parsePolarity(String field) {
+        int n = field.length();
+        int i = (n > 0 && (field.charAt(0) == '-' || field.charAt(0) == '+') ? 1 : 0);
+        if (n > i && n - i <= 9) {
+            int value = 0;
+            for (int j = i; j < n; j++) {
+                char c = field.charAt(j);
+                if (c < '0' || c > '9') {
+                    return Float.valueOf(field);
+                }
+                value = 10 * value + (c - '0');
+            }
+            return (field.charAt(0) == '-' ? -value : value);
+        }
+        return Float.valueOf(field);
+    }
+
+    /**
+     * Same as the regular expression {@code \s}.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
     }
 }
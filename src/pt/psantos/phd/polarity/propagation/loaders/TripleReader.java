@@ -0,0 +1,232 @@
+package pt.psantos.phd.polarity.propagation.loaders;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads a file of triples encoded in UTF-8 as bytes, without decoding the
+ * lines to {@link String}s. The fields of each line are given as positions of
+ * a byte buffer, so the words can be added straight to a
+ * {@link pt.psantos.phd.polarity.propagation.graph.TermDictionary}.
+ *
+ * <p>
+ * The lines and the fields are split as in {@link TriplesLoader}: the lines
+ * end at "\n", "\r" or "\r\n", and the fields are separated by the same
+ * whitespace as the regular expression {@code \s+}. The empty lines are
+ * skipped.
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+class TripleReader implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final InputStream in;
+    private byte[] buffer = new byte[64 * 1024];
+    /** Bytes of the buffer not read yet: buffer[position..limit-1] */
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfFile = false;
+
+    /** Fields of the current line */
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int fieldCount = 0;
+    private int lineStart = 0;
+
+    TripleReader(File file) throws FileNotFoundException {
+        this.in = new FileInputStream(file);
+    }
+
+    /**
+     * Reads the next line that is not empty.
+     *
+     * @return {@code false} at the end of the file.
+     */
+    boolean next() throws IOException {
+        while (true) {
+            int end = findLineEnd();
+            if (end < 0) {
+                return false;
+            }
+            lineStart = position;
+            split(position, end);
+            position = end + 1;
+            if (end > lineStart) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the end of the next line, reading more of the
+     * file if needed, or -1 at the end of the file.
+     */
+    private int findLineEnd() throws IOException {
+        int i = position;
+        while (true) {
+            for (; i < limit; i++) {
+                byte b = buffer[i];
+                if (b == '\n' || b == '\r') {
+                    return i;
+                }
+            }
+            if (endOfFile) {
+                if (position == limit) {
+                    return -1;
+                }
+                // Last line, without line end: add one
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length + 1);
+                }
+                buffer[limit] = '\n';
+                return limit++;
+            }
+            // Move the current line to the start of the buffer and read more
+            int pending = limit - position;
+            if (pending == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            } else if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, pending);
+            }
+            i -= position;
+            position = 0;
+            limit = pending;
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfFile = true;
+            } else {
+                limit += read;
+            }
+        }
+    }
+
+    private void split(int start, int end) {
+        fieldCount = 0;
+        int i = start;
+        // As in String.split(), whitespace at the start gives an empty field
+        if (i < end && isWhitespace(buffer[i])) {
+            addField(i, i);
+        }
+        while (i < end) {
+            while (i < end && isWhitespace(buffer[i])) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            int fieldStart = i;
+            while (i < end && !isWhitespace(buffer[i])) {
+                i++;
+            }
+            addField(fieldStart, i);
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * fieldCount);
+            ends = Arrays.copyOf(ends, 2 * fieldCount);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * Returns {@code true} if the current line starts with {@code prefix}
+     * (ASCII).
+     */
+    boolean lineStartsWith(char prefix) {
+        return buffer[lineStart] == prefix;
+    }
+
+    /**
+     * Returns the number of fields of the current line.
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the buffer with the bytes of the current line. The buffer
+     * changes when the next line is read.
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int fieldStart(int field) {
+        return starts[field];
+    }
+
+    int fieldLength(int field) {
+        return ends[field] - starts[field];
+    }
+
+    /**
+     * Returns {@code true} if the fields {@code a} and {@code b} have the same
+     * bytes.
+     */
+    boolean fieldEquals(int a, int b) {
+        int length = fieldLength(a);
+        if (fieldLength(b) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[starts[a] + i] != buffer[starts[b] + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the field starts with the ASCII string
+     * {@code prefix} (in lower case), ignoring the case.
+     */
+    boolean fieldStartsWithIgnoreCase(int field, String prefix) {
+        if (fieldLength(field) < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            int b = buffer[starts[field] + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns all the fields of the current line as strings.
+     */
+    String[] fields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = new String(buffer, starts[i], fieldLength(i), UTF8);
+        }
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -11,10 +11,16 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import org.jgrapht.graph.ClassBasedEdgeFactory;
 import org.jgrapht.graph.SimpleGraph;
 import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
 import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.EdgeDeduplicator;
+import pt.psantos.phd.polarity.propagation.graph.MappedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.TermDictionary;
 
 /**
  * This class represents a triple loader.
@@ -68,6 +74,38 @@ public class TriplesLoader {
      * @see #loadWorker(java.io.File, java.lang.String) 
      */
     private List<LoadingFilter> filters = null;
+
+    /**
+     * If {@code true}, the file is read and parsed by a separate thread while
+     * the graph is being built.
+     * @see #setPipelined(boolean)
+     */
+    protected boolean pipelined = false;
+
+    /**
+     * Repeated relations removed by the last call to
+     * {@link #loadCompact(java.io.File, java.lang.String)}.
+     */
+    private EdgeDeduplicator deduplication = null;
+
+    /**
+     * Number of triples handed at once from the reading thread to the graph
+     * builder, when loading in pipelined mode.
+     */
+    private static final int PIPELINE_BATCH_SIZE = 4096;
+
+    /**
+     * Maximum number of batches waiting to be added to the graph, when loading
+     * in pipelined mode.
+     */
+    private static final int PIPELINE_QUEUE_CAPACITY = 16;
+
+    /**
+     * Marks the end of the file in the queue of batches.
+     */
+    private static final List<String[]> END_OF_FILE = new ArrayList<String[]>(0);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
     
     /**
      * Add a filter that allows to choose the triples to load.
@@ -89,6 +127,19 @@ public class TriplesLoader {
     public void setIgnoreSelfRelations(boolean ignoreSelfRelations) {
         this.ignoreSelfRelations = ignoreSelfRelations;
     }
+
+    /**
+     * Allows to read and parse the file in a separate thread, while the graph
+     * is being built. This overlaps the file reading with the graph building,
+     * which is faster for big files on machines with more than one core.
+     * Filters added by {@link #addFilter(LoadingFilter)} are called from the
+     * reading thread.
+     *
+     * @param pipelined {@code true} for loading in pipelined mode.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
     
     /**
      * Loads a set of triples from file. Each line of the file must be in the
@@ -106,103 +157,430 @@ public class TriplesLoader {
      * @throws java.lang.IllegalArgumentException if there are direct loops.
      * This is if there are words pointing to itself.
      */
-    public SimpleGraph load(File file, String charsetName) throws FileNotFoundException, IOException {
+    public SimpleGraph<Word, LexicalRelation> load(File file, String charsetName) throws FileNotFoundException, IOException {
         return loadWorker(file
                 , (charsetName != null ? charsetName : Charset.defaultCharset().name()));
     }
 
 
-    private SimpleGraph loadWorker(File file, String charsetName) throws FileNotFoundException, IOException {
+    /**
+     * Loads a set of triples from file to a graph kept on disk, on the
+     * directory {@code directory}. This allows to load graphs that do not fit
+     * in the Java heap. The graph has the same words and relations of the
+     * graph returned by {@link #load(java.io.File, java.lang.String)}.
+     *
+     * @param file file to load.
+     * @param charsetName a charset name or {@code null} to use the default charset.
+     * @param directory directory where the graph files are created.
+     * @return an undirected graph kept on disk.
+     * @throws java.io.FileNotFoundException
+     * @throws java.lang.IllegalArgumentException if there are direct loops.
+     * This is if there are words pointing to itself.
+     * @see MappedCsrGraph
+     */
+    public MappedCsrGraph loadMapped(File file, String charsetName, File directory) throws FileNotFoundException, IOException {
+        final MappedCsrGraph.Builder builder = new MappedCsrGraph.Builder(directory);
+        readEdges(file, charsetName, new EdgeSink() {
+            @Override
+            public void addEdge(String from, String to, LexicalRelation.Type type) throws IOException {
+                builder.addEdge(from, to, type);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Loads a set of triples from file to a graph kept in primitive arrays.
+     * The graph has the same words and relations of the graph returned by
+     * {@link #load(java.io.File, java.lang.String)}, in the same order, but
+     * uses much less memory.
+     *
+     * @param file file to load.
+     * @param charsetName a charset name or {@code null} to use the default charset.
+     * @return an undirected graph.
+     * @throws java.io.FileNotFoundException
+     * @throws java.lang.IllegalArgumentException if there are direct loops.
+     * This is if there are words pointing to itself.
+     * @see CsrGraph
+     */
+    public CsrGraph loadCompact(File file, String charsetName) throws FileNotFoundException, IOException {
+        final CsrGraph.Builder builder = new CsrGraph.Builder();
+        readTermEdges(file, charsetName, new TermEdgeSink() {
+            @Override
+            public TermDictionary terms() {
+                return builder.getTerms();
+            }
 
-        SimpleGraph simpleGraph
-                = new SimpleGraph<Word, LexicalRelation>(
-                        new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class));
+            @Override
+            public void addEdge(int from, int to, LexicalRelation.Type type) {
+                builder.addEdge(from, to, type);
+            }
+        });
+        CsrGraph graph = builder.build();
+        this.deduplication = builder.getDeduplication();
+        return graph;
+    }
+
+    /**
+     * Returns the repeated relations removed by the last call to
+     * {@link #loadCompact(java.io.File, java.lang.String)}, or {@code null}.
+     */
+    public EdgeDeduplicator getDeduplication() {
+        return deduplication;
+    }
+
+    /**
+     * Receives the edges read by {@link #readEdges(java.io.File, java.lang.String, EdgeSink)}.
+     */
+    protected interface EdgeSink {
+
+        void addEdge(String from, String to, LexicalRelation.Type type) throws IOException;
+    }
+
+    /**
+     * Reads all the valid triples from file, and sends them to {@code sink}.
+     */
+    protected void readEdges(File file, String charsetName, EdgeSink sink) throws FileNotFoundException, IOException {
+        charsetName = (charsetName != null ? charsetName : Charset.defaultCharset().name());
 
         Reader reader = new InputStreamReader(new FileInputStream(file), charsetName);
         BufferedReader br = new BufferedReader(reader);
         String line;
         String[] fields = null;
 
-        while ((line = br.readLine()) != null) {
-
-            // Ignore comments (lines starting by "#")
-            if (line.startsWith("#")) {
-                continue;
+        try {
+            while ((line = br.readLine()) != null) {
+                fields = parseTriple(line);
+                if (fields == null) {
+                    continue;
+                }
+                LexicalRelation.Type relType = relationType(fields[1]);
+                if (relType.equals(LexicalRelation.Type.UNKNOWN)) {
+                    continue; // Unknown relation type. Ignore it.
+                }
+                sink.addEdge(fields[0], fields[2], relType);
             }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Receives the triples read by
+     * {@link #readTriples(java.io.File, java.lang.String, TripleSink)}.
+     */
+    protected interface TripleSink {
 
-            // Split the triple in fields
-            fields = line.split("\\s+");
+        void addTriple(String[] fields) throws IOException;
+    }
+
+    /**
+     * Reads all the triples from file that are not ignored (comments, self
+     * relations and triples rejected by the filters), and sends their fields
+     * to {@code sink}. The relation type is not checked.
+     */
+    protected void readTriples(File file, String charsetName, TripleSink sink) throws FileNotFoundException, IOException {
+        charsetName = (charsetName != null ? charsetName : Charset.defaultCharset().name());
 
-            // Ignore relations such as: {@code ferreiro SINONIMO_N_DE ferreiro}
-            // because the word "ferreiro" is pointing to itself throught the 
-            // relation "SINONIMO_N_DE" (synonym of).
-            if (this.ignoreSelfRelations && fields[0].equals(fields[2])) {
-                continue;
+        Reader reader = new InputStreamReader(new FileInputStream(file), charsetName);
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+
+        try {
+            while ((line = br.readLine()) != null) {
+                String[] fields = parseTriple(line);
+                if (fields != null) {
+                    sink.addTriple(fields);
+                }
             }
+        } finally {
+            br.close();
+        }
+    }
 
-            // If we want to filter relations by part of speech
-            if(filters != null && !filters.isEmpty()) {
-                boolean loadThisTriple = true;
-                for(LoadingFilter filter : filters) {
-                    // If there is a filter that return false
-                    if(!filter.loadThis(fields)) {
-                        loadThisTriple = false;
-                        break;
-                    }
+    /**
+     * Receives the edges read by
+     * {@link #readTermEdges(java.io.File, java.lang.String, TermEdgeSink)}, as
+     * ids of the words in the dictionary {@link #terms()}.
+     */
+    protected interface TermEdgeSink {
+
+        TermDictionary terms();
+
+        void addEdge(int from, int to, LexicalRelation.Type type) throws IOException;
+    }
+
+    /**
+     * Same as {@link #readEdges(java.io.File, java.lang.String, EdgeSink)},
+     * but the words are added to the dictionary of {@code sink}. If the file
+     * is in UTF-8, the words go straight from the bytes read to the
+     * dictionary ({@link TripleReader}), without creating a {@link String}
+     * per word (unless there are filters).
+     */
+    protected void readTermEdges(File file, String charsetName, final TermEdgeSink sink) throws FileNotFoundException, IOException {
+        charsetName = (charsetName != null ? charsetName : Charset.defaultCharset().name());
+        final TermDictionary terms = sink.terms();
+
+        if (!Charset.forName(charsetName).equals(UTF8)) {
+            readEdges(file, charsetName, new EdgeSink() {
+                @Override
+                public void addEdge(String from, String to, LexicalRelation.Type type) throws IOException {
+                    int u = terms.intern(from);
+                    int v = terms.intern(to);
+                    sink.addEdge(u, v, type);
                 }
-                // If we do not want to load this triple
-                if(!loadThisTriple) {
+            });
+            return;
+        }
+
+        TripleReader reader = new TripleReader(file);
+        try {
+            while (reader.next()) {
+                // Same checks as parseTriple(String)
+                if (reader.lineStartsWith('#') || reader.fieldCount() < 3) {
                     continue;
                 }
-            }
-            
-            // Get the relation type
-            LexicalRelation.Type relType = relationType(fields[1]);            
-            // Check the relation type
-            if(relType.equals(LexicalRelation.Type.UNKNOWN)) {
-                continue; // Unknown relation type. Ignore it.
-            }
-            
-            
-            // Create two temporary nodes
-            Word node1 = new Word(fields[0]);
-            Word node2 = new Word(fields[2]);
-
-            // If the graph contains node1
-            if (simpleGraph.containsVertex(node1)) {
-                // Get all the edges touching node1
-                Set<LexicalRelation> edges = simpleGraph.edgesOf(node1);
-                // If node1 already exists in the graph
-                if (edges != null && !edges.isEmpty()) {
-                    // Get the first edge
-                    LexicalRelation edge = edges.iterator().next();
-                        // Replace the temporary node1 by the node already on the graph.
-                    // The temporary node1 and the returned have the word but
-                    // are diffrent Java objects. 
-                    node1 = edge.getNodeSelf(node1);
+                if (this.ignoreSelfRelations && reader.fieldEquals(0, 2)) {
+                    continue;
+                }
+                if (filters != null && !filters.isEmpty() && !loadThis(reader.fields())) {
+                    continue;
                 }
-            }
 
-            // If the graph contains node2
-            if (simpleGraph.containsVertex(node2)) {
-                Set<LexicalRelation> edges = simpleGraph.edgesOf(node2);
-                if (edges != null && !edges.isEmpty()) {
-                    LexicalRelation edge = edges.iterator().next();
-                    node2 = edge.getNodeSelf(node2);
+                LexicalRelation.Type relType;
+                if (reader.fieldStartsWithIgnoreCase(1, "syn")
+                        || reader.fieldStartsWithIgnoreCase(1, "sin")) {
+                    relType = LexicalRelation.Type.SYNONYM;
+                } else if (reader.fieldStartsWithIgnoreCase(1, "ant")) {
+                    relType = LexicalRelation.Type.ANTONYM;
+                } else {
+                    continue; // Unknown relation type. Ignore it.
                 }
+
+                byte[] buffer = reader.buffer();
+                int u = terms.intern(buffer, reader.fieldStart(0), reader.fieldLength(0));
+                int v = terms.intern(buffer, reader.fieldStart(2), reader.fieldLength(2));
+                sink.addEdge(u, v, relType);
             }
+        } finally {
+            reader.close();
+        }
+    }
 
-            simpleGraph.addVertex(node1);
-            simpleGraph.addVertex(node2);
-            
-            //System.out.println(node1 + " -> " + node2);
-            simpleGraph.addEdge(node1, node2
-                    , new LexicalRelation(node1, node2, relType));
+    private SimpleGraph<Word, LexicalRelation> loadWorker(File file, String charsetName) throws FileNotFoundException, IOException {
+
+        if (this.pipelined) {
+            return loadPipelinedWorker(file, charsetName);
+        }
+
+        SimpleGraph<Word, LexicalRelation> simpleGraph
+                = new SimpleGraph<Word, LexicalRelation>(
+                        new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class));
+
+        Reader reader = new InputStreamReader(new FileInputStream(file), charsetName);
+        BufferedReader br = new BufferedReader(reader);
+        String line;
+        String[] fields = null;
 
-        } // End while
+        try {
+            while ((line = br.readLine()) != null) {
+                fields = parseTriple(line);
+                if (fields != null) {
+                    addTriple(simpleGraph, fields);
+                }
+            } // End while
+        } finally {
+            br.close();
+        }
         return simpleGraph;
     } // End method
 
+    /**
+     * Same as {@link #loadWorker(java.io.File, java.lang.String)} but the file
+     * is read and parsed by a producer thread, while the calling thread builds
+     * the graph. Parsed triples are handed over in batches through a bounded
+     * queue, so the reading thread can never get too far ahead of the graph
+     * builder.
+     */
+    private SimpleGraph<Word, LexicalRelation> loadPipelinedWorker(File file, String charsetName) throws FileNotFoundException, IOException {
+
+        SimpleGraph<Word, LexicalRelation> simpleGraph
+                = new SimpleGraph<Word, LexicalRelation>(
+                        new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class));
+
+        Reader reader = new InputStreamReader(new FileInputStream(file), charsetName);
+        final BufferedReader br = new BufferedReader(reader);
+        final BlockingQueue<List<String[]>> batches
+                = new ArrayBlockingQueue<List<String[]>>(PIPELINE_QUEUE_CAPACITY);
+        // Keeps the exception thrown by the producer thread (if any)
+        final Throwable[] failure = new Throwable[1];
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<String[]> batch = new ArrayList<String[]>(PIPELINE_BATCH_SIZE);
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] fields = parseTriple(line);
+                        if (fields == null) {
+                            continue;
+                        }
+                        batch.add(fields);
+                        if (batch.size() >= PIPELINE_BATCH_SIZE) {
+                            batches.put(batch);
+                            batch = new ArrayList<String[]>(PIPELINE_BATCH_SIZE);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        batches.put(batch);
+                    }
+                } catch (InterruptedException ex) {
+                    // The graph builder gave up. Nothing else to do.
+                    return;
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                } finally {
+                    try {
+                        br.close();
+                    } catch (IOException ex) {
+                    }
+                }
+
+                try {
+                    batches.put(END_OF_FILE);
+                } catch (InterruptedException ex) {
+                }
+            }
+        }, "triples-reader");
+        producer.setDaemon(true);
+        producer.start();
+
+        try {
+            List<String[]> batch;
+            while ((batch = batches.take()) != END_OF_FILE) {
+                for (String[] fields : batch) {
+                    addTriple(simpleGraph, fields);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + file, ex);
+        } finally {
+            producer.interrupt();
+        }
+
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        } else if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        return simpleGraph;
+    }
+
+    /**
+     * Splits a line of the file in fields and checks if the triple should be
+     * loaded.
+     *
+     * @param line a line read from file.
+     * @return the fields of the triple, or {@code null} if the line should be
+     * ignored (comments, self relations and triples rejected by the filters).
+     */
+    private String[] parseTriple(String line) {
+
+        // Ignore comments (lines starting by "#")
+        if (line.startsWith("#")) {
+            return null;
+        }
+
+        // Split the triple in fields
+        String[] fields = line.split("\\s+");
+
+        // Ignore empty lines, and lines without a relation
+        if (fields.length < 3) {
+            return null;
+        }
+
+        // Ignore relations such as: {@code ferreiro SINONIMO_N_DE ferreiro}
+        // because the word "ferreiro" is pointing to itself throught the 
+        // relation "SINONIMO_N_DE" (synonym of).
+        if (this.ignoreSelfRelations && fields[0].equals(fields[2])) {
+            return null;
+        }
+
+        // If we want to filter relations by part of speech
+        if(filters != null && !filters.isEmpty() && !loadThis(fields)) {
+            // We do not want to load this triple
+            return null;
+        }
+        return fields;
+    }
+
+    /**
+     * Returns {@code true} if all the filters accept the triple.
+     */
+    private boolean loadThis(String[] fields) {
+        for(LoadingFilter filter : filters) {
+            // If there is a filter that return false
+            if(!filter.loadThis(fields)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the triple {@code fields} to the graph. Triples with an unknown
+     * relation type are ignored.
+     */
+    protected void addTriple(SimpleGraph<Word, LexicalRelation> simpleGraph, String[] fields) {
+
+        // Get the relation type
+        LexicalRelation.Type relType = relationType(fields[1]);            
+        // Check the relation type
+        if(relType.equals(LexicalRelation.Type.UNKNOWN)) {
+            return; // Unknown relation type. Ignore it.
+        }
+        
+        
+        // Create two temporary nodes
+        Word node1 = new Word(fields[0]);
+        Word node2 = new Word(fields[2]);
+
+        // If the graph contains node1
+        if (simpleGraph.containsVertex(node1)) {
+            // Get all the edges touching node1
+            Set<LexicalRelation> edges = simpleGraph.edgesOf(node1);
+            // If node1 already exists in the graph
+            if (edges != null && !edges.isEmpty()) {
+                // Get the first edge
+                LexicalRelation edge = edges.iterator().next();
+                    // Replace the temporary node1 by the node already on the graph.
+                // The temporary node1 and the returned have the word but
+                // are diffrent Java objects. 
+                node1 = edge.getNodeSelf(node1);
+            }
+        }
+
+        // If the graph contains node2
+        if (simpleGraph.containsVertex(node2)) {
+            Set<LexicalRelation> edges = simpleGraph.edgesOf(node2);
+            if (edges != null && !edges.isEmpty()) {
+                LexicalRelation edge = edges.iterator().next();
+                node2 = edge.getNodeSelf(node2);
+            }
+        }
+
+        simpleGraph.addVertex(node1);
+        simpleGraph.addVertex(node2);
+        
+        //System.out.println(node1 + " -> " + node2);
+        simpleGraph.addEdge(node1, node2
+                , new LexicalRelation(node1, node2, relType));
+    }
+
     protected LexicalRelation.Type relationType(String relation) {
         
             relation = relation.toLowerCase();
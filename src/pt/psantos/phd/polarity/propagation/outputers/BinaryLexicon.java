@@ -0,0 +1,242 @@
+package pt.psantos.phd.polarity.propagation.outputers;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import pt.psantos.phd.polarity.propagation.graph.MappedBuffer;
+
+/**
+ * A file written by {@link BinaryOutput}, mapped in memory. The words can be
+ * read by their position in the file (the same order as in {@link CsvOutput})
+ * or found by their term, without reading the whole file.
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class BinaryLexicon {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MappedBuffer buffer;
+    private final int size;
+    private final long termBytesLength;
+
+    /** Position of each column in the file */
+    private final long offsetsPosition;
+    private final long sortedPosition;
+    private final long negativePosition;
+    private final long neutralPosition;
+    private final long positivePosition;
+    private final long iterationPosition;
+    private final long polarityPosition;
+    private final long termBytesPosition;
+
+    private BinaryLexicon(MappedBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        File file = buffer.getFile();
+        if (buffer.capacity() < BinaryOutput.HEADER_SIZE
+                || buffer.getInt(0) != BinaryOutput.MAGIC) {
+            throw new IOException("Not a binary lexicon: " + file.getAbsolutePath());
+        }
+        if (buffer.getInt(4) != BinaryOutput.VERSION) {
+            throw new IOException("Unsupported binary lexicon version " + buffer.getInt(4)
+                    + ": " + file.getAbsolutePath());
+        }
+        this.size = buffer.getInt(8);
+        this.termBytesLength = buffer.getLong(16);
+
+        offsetsPosition = BinaryOutput.HEADER_SIZE;
+        sortedPosition = BinaryOutput.nextColumn(offsetsPosition, 8L * (size + 1));
+        negativePosition = BinaryOutput.nextColumn(sortedPosition, 4L * size);
+        neutralPosition = BinaryOutput.nextColumn(negativePosition, 4L * size);
+        positivePosition = BinaryOutput.nextColumn(neutralPosition, 4L * size);
+        iterationPosition = BinaryOutput.nextColumn(positivePosition, 4L * size);
+        polarityPosition = BinaryOutput.nextColumn(iterationPosition, 4L * size);
+        termBytesPosition = BinaryOutput.nextColumn(polarityPosition, size);
+
+        if (buffer.capacity() != termBytesPosition + termBytesLength) {
+            throw new IOException("Corrupted binary lexicon: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Maps the file {@code file} in memory, after checking its checksum.
+     */
+    public static BinaryLexicon open(File file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * Maps the file {@code file} in memory.
+     *
+     * @param file a file written by {@link BinaryOutput}.
+     * @param verifyChecksum {@code true} for reading the whole file once, for
+     * checking its checksum.
+     * @throws IOException if the file is not a binary lexicon or is corrupted.
+     */
+    public static BinaryLexicon open(File file, boolean verifyChecksum) throws IOException {
+        MappedBuffer buffer = MappedBuffer.open(file, true);
+        try {
+            BinaryLexicon lexicon = new BinaryLexicon(buffer);
+            if (verifyChecksum && lexicon.checksum() != buffer.getLong(24)) {
+                throw new IOException("Checksum error in binary lexicon: " + file.getAbsolutePath());
+            }
+            return lexicon;
+        } catch (IOException ex) {
+            buffer.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of words.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the word (term) at the position {@code i}.
+     */
+    public String term(int i) {
+        return new String(termBytes(i), UTF8);
+    }
+
+    /**
+     * Returns the polarity of the word at the position {@code i}, a
+     * {@link pt.psantos.phd.polarity.propagation.algorithm.PropagationState}
+     * code. See {@link CsvOutput#getPolarity(byte)}.
+     */
+    public byte polarity(int i) {
+        return buffer.get(polarityPosition + checkIndex(i));
+    }
+
+    public int getNegativeCounter(int i) {
+        return buffer.getInt(negativePosition + 4L * checkIndex(i));
+    }
+
+    public int getNeutralCounter(int i) {
+        return buffer.getInt(neutralPosition + 4L * checkIndex(i));
+    }
+
+    public int getPositiveCounter(int i) {
+        return buffer.getInt(positivePosition + 4L * checkIndex(i));
+    }
+
+    public int getIteration(int i) {
+        return buffer.getInt(iterationPosition + 4L * checkIndex(i));
+    }
+
+    /**
+     * Returns the position of the word {@code term}, or -1 if there is no
+     * such word. Binary search over the words sorted by term.
+     */
+    public int indexOf(String term) {
+        byte[] key = term.getBytes(UTF8);
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int i = buffer.getInt(sortedPosition + 4L * mid);
+            int cmp = compareTerm(i, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void close() throws IOException {
+        buffer.close();
+    }
+
+    /**
+     * Returns {@code true} if the file {@code file} starts as a file written
+     * by {@link BinaryOutput}.
+     */
+    public static boolean isBinaryLexicon(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return Integer.reverseBytes(in.readInt()) == BinaryOutput.MAGIC;
+        } catch (EOFException ex) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the position of the {@code k}-th word in the order of the
+     * UTF-8 bytes of the terms.
+     */
+    int sortedIndex(int k) {
+        return buffer.getInt(sortedPosition + 4L * checkIndex(k));
+    }
+
+    byte[] termBytes(int i) {
+        checkIndex(i);
+        long start = buffer.getLong(offsetsPosition + 8L * i);
+        long end = buffer.getLong(offsetsPosition + 8L * (i + 1));
+        byte[] bytes = new byte[(int) (end - start)];
+        buffer.get(termBytesPosition + start, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Compares the term of the word {@code i} with {@code key}, by their UTF-8
+     * bytes, as {@link BinaryOutput} sorted them.
+     */
+    private int compareTerm(int i, byte[] key) {
+        long start = termBytesPosition + buffer.getLong(offsetsPosition + 8L * i);
+        int length = (int) (buffer.getLong(offsetsPosition + 8L * (i + 1))
+                - buffer.getLong(offsetsPosition + 8L * i));
+        int n = Math.min(length, key.length);
+        for (int j = 0; j < n; j++) {
+            int cmp = (buffer.get(start + j) & 0xFF) - (key[j] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the CRC32 of everything after the header.
+     */
+    private long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1 << 16];
+        long position = 0;
+        for (int s = 0; s < buffer.segmentCount(); s++) {
+            ByteBuffer segment = buffer.segment(s).duplicate();
+            segment.clear();
+            if (position < BinaryOutput.HEADER_SIZE) {
+                segment.position((int) (BinaryOutput.HEADER_SIZE - position));
+            }
+            position += segment.capacity();
+            while (segment.hasRemaining()) {
+                int n = Math.min(chunk.length, segment.remaining());
+                segment.get(chunk, 0, n);
+                crc.update(chunk, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,362 @@
+package pt.psantos.phd.polarity.propagation.outputers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import org.jgrapht.graph.AbstractBaseGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Class for writing the graph nodes (words and their polarity) as a columnar
+ * binary file, which can be read back without parsing by
+ * {@link BinaryLexicon}. The words are written in the same order as in
+ * {@link CsvOutput}.
+ *
+ * <p>
+ * File format (little endian). Each column starts at a position multiple of
+ * 8:
+ * <ul>
+ * <li>header: magic, version, number of words, 0 (ints), number of bytes of
+ * the terms, CRC32 of everything after the header (longs);</li>
+ * <li>the start of each term in the term bytes, plus the end of the last term
+ * (longs);</li>
+ * <li>the words sorted by the UTF-8 bytes of their terms (ints), for finding
+ * a word by its term;</li>
+ * <li>the negative, neutral and positive counters and the iteration of each
+ * word (a column of ints each);</li>
+ * <li>the polarity of each word, a {@link PropagationState} code (bytes);</li>
+ * <li>the UTF-8 bytes of all terms, one after the other.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * All the columns are built in memory and written with a single gather write
+ * ({@link FileChannel#write(java.nio.ByteBuffer[])}).
+ * </p>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class BinaryOutput {
+
+    static final int MAGIC = 0x504C5831; // "PLX1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Binary file name
+     */
+    private final File outputFile;
+
+    /**
+     * Creates a BinaryOutput that writes to the file {@code file}.
+     *
+     * @param file a File.
+     */
+    public BinaryOutput(File file) {
+        this.outputFile = file;
+    }
+
+    /**
+     * Write all the words and their polarity to file.
+     *
+     * @param graph a graph where nodes are words.
+     */
+    public void write(AbstractBaseGraph<Word, LexicalRelation> graph) throws IOException {
+        write(Columns.of(graph));
+    }
+
+    /**
+     * Write all the words of a graph seen through int ids and their polarity
+     * to file. The word {@code v} of the graph is the word {@code v} of the
+     * file.
+     *
+     * @param graph a graph where nodes are words.
+     * @param state the counters and iteration of each word of the graph.
+     */
+    public void write(LexicalGraph graph, PropagationState state) throws IOException {
+        write(Columns.of(graph, state));
+    }
+
+    private void write(Columns columns) throws IOException {
+        ByteBuffer[] buffers = columns.toBuffers();
+
+        CRC32 crc = new CRC32();
+        for (int i = 1; i < buffers.length; i++) {
+            crc.update(buffers[i].array(), 0, buffers[i].limit());
+        }
+        buffers[0].putInt(MAGIC).putInt(VERSION).putInt(columns.size).putInt(0)
+                .putLong(columns.termBytesLength).putLong(crc.getValue());
+        buffers[0].flip();
+
+        FileOutputStream out = new FileOutputStream(outputFile);
+        try {
+            FileChannel channel = out.getChannel();
+            ByteBuffer last = buffers[buffers.length - 1];
+            // A gather write may write only part of the buffers
+            do {
+                channel.write(buffers);
+            } while (last.hasRemaining());
+            channel.force(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the position of the column that follows a column of
+     * {@code length} bytes starting at {@code position}.
+     */
+    static long nextColumn(long position, long length) {
+        return (position + length + 7) & ~7L;
+    }
+
+    /**
+     * The columns of the file (the words of a lexicon), built in memory.
+     */
+    static class Columns {
+
+        private int size = 0;
+        private long[] offsets;
+        private int[] negativeCounters;
+        private int[] neutralCounters;
+        private int[] positiveCounters;
+        private int[] iterations;
+        private byte[] polarities;
+        private byte[] termBytes = new byte[1 << 16];
+        private int termBytesLength = 0;
+
+        /**
+         * @param capacity expected number of words. More words can be added.
+         */
+        Columns(int capacity) {
+            capacity = Math.max(capacity, 16);
+            this.offsets = new long[capacity + 1];
+            this.negativeCounters = new int[capacity];
+            this.neutralCounters = new int[capacity];
+            this.positiveCounters = new int[capacity];
+            this.iterations = new int[capacity];
+            this.polarities = new byte[capacity];
+        }
+
+        /**
+         * Returns the words of the graph, in the same order as in
+         * {@link CsvOutput}.
+         */
+        static Columns of(AbstractBaseGraph<Word, LexicalRelation> graph) {
+            Columns columns = new Columns(graph.vertexSet().size());
+            for (Word w : graph.vertexSet()) {
+                columns.add(w.getWord(), w.getNegativeCounter(), w.getNeutralCounter()
+                        , w.getPositiveCounter(), w.getIteration());
+            }
+            return columns;
+        }
+
+        /**
+         * Returns the words of the graph, by vertex id.
+         */
+        static Columns of(LexicalGraph graph, PropagationState state) {
+            Columns columns = new Columns(graph.vertexCount());
+            for (int v = 0; v < graph.vertexCount(); v++) {
+                columns.add(graph.term(v), state.getNegativeCounter(v)
+                        , state.getNeutralCounter(v), state.getPositiveCounter(v)
+                        , state.getIteration(v));
+            }
+            return columns;
+        }
+
+        void add(String term, int negativeCounter, int neutralCounter
+                , int positiveCounter, int iteration) {
+            byte[] bytes = term.getBytes(UTF8);
+            if (termBytesLength + bytes.length > termBytes.length) {
+                termBytes = Arrays.copyOf(termBytes
+                        , Math.max(termBytesLength + bytes.length, 2 * termBytes.length));
+            }
+            System.arraycopy(bytes, 0, termBytes, termBytesLength, bytes.length);
+            termBytesLength += bytes.length;
+
+            if (size == polarities.length) {
+                int capacity = 2 * size;
+                offsets = Arrays.copyOf(offsets, capacity + 1);
+                negativeCounters = Arrays.copyOf(negativeCounters, capacity);
+                neutralCounters = Arrays.copyOf(neutralCounters, capacity);
+                positiveCounters = Arrays.copyOf(positiveCounters, capacity);
+                iterations = Arrays.copyOf(iterations, capacity);
+                polarities = Arrays.copyOf(polarities, capacity);
+            }
+            negativeCounters[size] = negativeCounter;
+            neutralCounters[size] = neutralCounter;
+            positiveCounters[size] = positiveCounter;
+            iterations[size] = iteration;
+            polarities[size] = PropagationState.polarity(positiveCounter
+                    , negativeCounter, neutralCounter);
+            offsets[++size] = termBytesLength;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] termBytes(int i) {
+            return Arrays.copyOfRange(termBytes, (int) offsets[i], (int) offsets[i + 1]);
+        }
+
+        byte polarity(int i) {
+            return polarities[i];
+        }
+
+        int getNegativeCounter(int i) {
+            return negativeCounters[i];
+        }
+
+        int getNeutralCounter(int i) {
+            return neutralCounters[i];
+        }
+
+        int getPositiveCounter(int i) {
+            return positiveCounters[i];
+        }
+
+        int getIteration(int i) {
+            return iterations[i];
+        }
+
+        /**
+         * Returns the words sorted by the UTF-8 bytes of their terms
+         * (unsigned).
+         */
+        int[] sortedIndex() {
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = i;
+            }
+            sort(sorted, 0, size, 0);
+            return sorted;
+        }
+
+        /**
+         * Three-way radix quicksort (Bentley and Sedgewick) of the words
+         * {@code ids[from..to[}, whose terms are equal up to the byte
+         * {@code depth}. Unlike a comparison sort, each byte of a term is
+         * compared about once, and the ids are never boxed.
+         */
+        private void sort(int[] ids, int from, int to, int depth) {
+            while (to - from > 1) {
+                if (to - from < 16) {
+                    insertionSort(ids, from, to, depth);
+                    return;
+                }
+                swap(ids, from, from + (to - from) / 2);
+                int pivot = byteAt(ids[from], depth);
+                int lt = from;
+                int gt = to - 1;
+                int i = from + 1;
+                while (i <= gt) {
+                    int b = byteAt(ids[i], depth);
+                    if (b < pivot) {
+                        swap(ids, lt++, i++);
+                    } else if (b > pivot) {
+                        swap(ids, i, gt--);
+                    } else {
+                        i++;
+                    }
+                }
+                sort(ids, from, lt, depth);
+                sort(ids, gt + 1, to, depth);
+                // The terms that ended (-1) are all equal
+                if (pivot < 0) {
+                    return;
+                }
+                from = lt;
+                to = gt + 1;
+                depth++;
+            }
+        }
+
+        private void insertionSort(int[] ids, int from, int to, int depth) {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compareTerms(termBytes
+                        , (int) offsets[ids[j]] + depth, (int) offsets[ids[j] + 1]
+                        , termBytes, (int) offsets[ids[j - 1]] + depth
+                        , (int) offsets[ids[j - 1] + 1]) < 0; j--) {
+                    swap(ids, j, j - 1);
+                }
+            }
+        }
+
+        /**
+         * Returns the byte {@code depth} of the term of the word {@code id}
+         * (unsigned), or -1 if the term is shorter.
+         */
+        private int byteAt(int id, int depth) {
+            int position = (int) offsets[id] + depth;
+            return (position < offsets[id + 1] ? termBytes[position] & 0xFF : -1);
+        }
+
+        private static void swap(int[] ids, int i, int j) {
+            int tmp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = tmp;
+        }
+
+        /**
+         * Returns the header (to be filled) and the columns, in file order.
+         * Each column is padded to a multiple of 8 bytes.
+         */
+        ByteBuffer[] toBuffers() {
+            ByteBuffer offsetsColumn = column(8L * (size + 1));
+            offsetsColumn.asLongBuffer().put(offsets, 0, size + 1);
+            return new ByteBuffer[]{
+                column(HEADER_SIZE),
+                offsetsColumn,
+                intColumn(sortedIndex(), size),
+                intColumn(negativeCounters, size),
+                intColumn(neutralCounters, size),
+                intColumn(positiveCounters, size),
+                intColumn(iterations, size),
+                ByteBuffer.wrap(Arrays.copyOf(polarities, (int) nextColumn(0, size))),
+                ByteBuffer.wrap(termBytes, 0, termBytesLength)
+            };
+        }
+
+        private static ByteBuffer intColumn(int[] values, int length) {
+            ByteBuffer column = column(4L * length);
+            column.asIntBuffer().put(values, 0, length);
+            return column;
+        }
+
+        private static ByteBuffer column(long length) {
+            if (nextColumn(0, length) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Column too big: " + length + " bytes");
+            }
+            return ByteBuffer.allocate((int) nextColumn(0, length))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Compares two terms by their UTF-8 bytes, as unsigned values.
+     */
+    static int compareTerms(byte[] a, int aStart, int aEnd, byte[] b, int bStart, int bEnd) {
+        int n = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[aStart + i] & 0xFF) - (b[bStart + i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+}
@@ -5,14 +5,32 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jgrapht.graph.AbstractBaseGraph;
 import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.WeightedScores;
 import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
 
 /**
  * Class for writing the graph nodes (words and their polarity) as a csv file.
@@ -60,6 +78,58 @@ public class CsvOutput {
      */
     private String encoding;
 
+    /**
+     * If {@code true}, the file is written by a separate thread.
+     * @see #setPipelined(boolean)
+     */
+    private boolean pipelined = false;
+
+    /**
+     * Number of words formatted per chunk, when writing in pipelined mode.
+     */
+    private static final int PIPELINE_CHUNK_SIZE = 4096;
+
+    /**
+     * Maximum number of formatted chunks waiting to be written, when writing
+     * in pipelined mode.
+     */
+    private static final int PIPELINE_QUEUE_CAPACITY = 8;
+
+    /**
+     * Marks the end of the output in the queue of chunks.
+     */
+    private static final String END_OF_OUTPUT = new String();
+
+    /**
+     * Number of ranges of words formatted in parallel.
+     * @see #setShards(int)
+     */
+    private int shards = 1;
+
+    /**
+     * If {@code true}, each range of words is written to its own file.
+     * @see #setPartFiles(boolean)
+     */
+    private boolean partFiles = false;
+
+    /**
+     * The error of the last write, or {@code null} if it succeeded.
+     * @see #getFailure()
+     */
+    private IOException failure;
+
+    /**
+     * The words to write, seen by their position.
+     */
+    private interface Rows {
+
+        int size();
+
+        /**
+         * Writes one line with the word at the position {@code i}.
+         */
+        void writeRow(Appendable out, int i) throws IOException;
+    }
 
 
 
@@ -114,84 +184,549 @@ public class CsvOutput {
         this.defaultCsvConfig = csvConfig;
    }
    
+    /**
+     * Allows to write the file in pipelined mode. In this mode the words are
+     * formatted in chunks by the calling thread, while a separate thread
+     * encodes and writes the previous chunks to the file.
+     *
+     * @param pipelined {@code true} for writing in pipelined mode.
+     * @return this object.
+     */
+    public CsvOutput setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * Allows to write the file in sharded mode. In this mode the words are
+     * split in {@code shards} ranges, each range is formatted and encoded by
+     * its own thread, and the ranges are written at their positions of the
+     * file (or to their own files, see {@link #setPartFiles(boolean)}). The
+     * file is the same as in the default mode. Takes precedence over the
+     * pipelined mode.
+     *
+     * @param shards number of ranges of words. 1 (the default) disables the
+     * sharded mode.
+     * @return this object.
+     */
+    public CsvOutput setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Invalid number of shards: " + shards);
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * In sharded mode, allows to write each range of words to its own file
+     * ({@link #getPartFile(int)}), each one with its own header line, instead
+     * of a single file.
+     *
+     * @param partFiles {@code true} for writing one file per range.
+     * @return this object.
+     */
+    public CsvOutput setPartFiles(boolean partFiles) {
+        this.partFiles = partFiles;
+        return this;
+    }
+
+    /**
+     * Returns the file where the range {@code shard} is written, when writing
+     * one file per range: the name of the output file with
+     * {@code -part-00000} (the number of the range) before the extension.
+     */
+    public File getPartFile(int shard) {
+        String name = outputFile.getName();
+        String part = String.format(Locale.ROOT, "-part-%05d", shard);
+        int dot = name.lastIndexOf('.');
+        name = (dot > 0 ? name.substring(0, dot) + part + name.substring(dot)
+                : name + part);
+        return new File(outputFile.getAbsoluteFile().getParentFile(), name);
+    }
+
+    /**
+     * Returns the error that stopped the last write, or {@code null} if the
+     * file was written. The write methods log their errors instead of
+     * throwing them.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Logs an error of the current write, and keeps it for
+     * {@link #getFailure()}.
+     */
+    private void fail(IOException ex) {
+        this.failure = ex;
+        Logger lgr = Logger.getLogger(CsvOutput.class.getName());
+        lgr.log(Level.SEVERE, ex.getMessage(), ex);
+    }
+
     /**
      * Write all the words and their polarity to file.
      * 
      * @param graph a graph where nodes are words.
+     * @see #setPipelined(boolean)
+     * @see #setShards(int)
      */
     //@TODO deal with the "FIELDS_ESCAPED_BY" character
     public void write(AbstractBaseGraph<Word, LexicalRelation> graph) {
 
+        this.failure = null;
+        if (this.shards > 1) {
+            final Word[] words = graph.vertexSet().toArray(new Word[0]);
+            writeSharded(new Rows() {
+                @Override
+                public int size() {
+                    return words.length;
+                }
+
+                @Override
+                public void writeRow(Appendable out, int i) throws IOException {
+                    writeWord(out, words[i]);
+                }
+            });
+            return;
+        }
+
+        if (this.pipelined) {
+            writePipelined(graph);
+            return;
+        }
+
         Set<Word> graphNodes = graph.vertexSet();
         Writer out = null;
         try {
             
-            // A não indicação do charSet, faz com que grave em UTF-8 (final parece
-            // que não grava em UTF-8, mas sim aquilo que o sistema mandar).
-            // Ao fazer o LOAD para o mysql indicar "CHARACTER SET utf8" 
-            FileOutputStream fos = new FileOutputStream(outputFile);
-            out = new BufferedWriter(encoding == null ? new OutputStreamWriter(fos)
-                    : new OutputStreamWriter(fos, encoding));//new OutputStreamWriter(new FileOutputStream(fileName));
+            out = openWriter();
 
             // If we want to write a header
             if (this.defaultCsvConfig.HEADER) {
-                out.write(this.defaultCsvConfig.LINES_STARTING_BY);
-                out.write("words");
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write("polarity");
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write("negativeCounter");
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write("neutralCounter");
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write("positiveCounter");
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write("iteration");
-                out.write(this.defaultCsvConfig.LINES_TERMINATED_BY);
+                writeHeader(out);
             }
 
             // For each word (graph node)
             for (Word w : graphNodes) {
-                out.write(this.defaultCsvConfig.LINES_STARTING_BY);
+                writeWord(out, w);
+            }
 
-                if (this.defaultCsvConfig.FIELDS_ENCLOSED_BY != NULL_CHAR) {
-                    out.write(this.defaultCsvConfig.FIELDS_ENCLOSED_BY);
+        } catch (IOException ex) {
+            fail(ex);
+        } finally {
+            if (out != null) {
+                try {
+                    out.flush();
+                    out.close();
+                } catch (IOException ex) {
+                    if (failure == null) {
+                        fail(ex);
+                    }
                 }
+            }
+        }
 
-                out.write(w.getWord());
+    }
 
-                if (this.defaultCsvConfig.FIELDS_ENCLOSED_BY != NULL_CHAR) {
-                    out.write(this.defaultCsvConfig.FIELDS_ENCLOSED_BY);
-                }
+    /**
+     * Write all the words of a graph seen through int ids (kept in primitive
+     * arrays, on disk, ...) and their polarity to file. The words are written
+     * in the same order as in
+     * {@link #write(org.jgrapht.graph.AbstractBaseGraph)}.
+     * 
+     * @param graph a graph where nodes are words.
+     * @param state the counters and iteration of each word of the graph.
+     * @see #setShards(int)
+     */
+    public void write(final LexicalGraph graph, final PropagationState state) {
+        write(new Rows() {
+            @Override
+            public int size() {
+                return graph.vertexCount();
+            }
 
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+            @Override
+            public void writeRow(Appendable out, int v) throws IOException {
+                writeWord(out, graph.term(v), getPolarity(state.polarity(v))
+                        , state.getNegativeCounter(v), state.getNeutralCounter(v)
+                        , state.getPositiveCounter(v), state.getIteration(v));
+            }
+        });
+    }
 
-                out.write(String.valueOf(getPolarity(w)));
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write(String.valueOf(w.getNegativeCounter()));
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write(String.valueOf(w.getNeutralCounter()));
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write(String.valueOf(w.getPositiveCounter()));
-                out.write(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
-                out.write(String.valueOf(w.getIteration()));
+    /**
+     * Write all the words of a graph and the scores computed by
+     * {@link pt.psantos.phd.polarity.propagation.algorithm.WeightedPropagation}
+     * to file. The scores are written in the counter columns, with 6 decimal
+     * places.
+     * 
+     * @param graph a graph where nodes are words.
+     * @param scores the scores of each word of the graph.
+     * @see #setShards(int)
+     */
+    public void write(final LexicalGraph graph, final WeightedScores scores) {
+        write(new Rows() {
+            @Override
+            public int size() {
+                return graph.vertexCount();
+            }
 
-                out.write(this.defaultCsvConfig.LINES_TERMINATED_BY);
+            @Override
+            public void writeRow(Appendable out, int v) throws IOException {
+                writeWord(out, graph.term(v), getPolarity(scores.polarity(v))
+                        , formatScore(scores.getNegativeScore(v))
+                        , formatScore(scores.getNeutralScore(v))
+                        , formatScore(scores.getPositiveScore(v))
+                        , scores.getIteration(v));
+            }
+        });
+    }
+
+    /**
+     * Write all the rows to file, in sharded mode if it was set.
+     */
+    private void write(Rows rows) {
+
+        this.failure = null;
+        if (this.shards > 1) {
+            writeSharded(rows);
+            return;
+        }
+
+        Writer out = null;
+        try {
+            
+            out = openWriter();
+
+            // If we want to write a header
+            if (this.defaultCsvConfig.HEADER) {
+                writeHeader(out);
+            }
+
+            // For each word (graph node)
+            for (int i = 0; i < rows.size(); i++) {
+                rows.writeRow(out, i);
             }
 
         } catch (IOException ex) {
-            Logger lgr = Logger.getLogger(CsvOutput.class.getName());
-            lgr.log(Level.SEVERE, ex.getMessage(), ex);
+            fail(ex);
         } finally {
             if (out != null) {
                 try {
                     out.flush();
                     out.close();
                 } catch (IOException ex) {
+                    if (failure == null) {
+                        fail(ex);
+                    }
                 }
             }
         }
+    }
 
+    private static String formatScore(double score) {
+        return String.format(Locale.ROOT, "%.6f", score);
+    }
+
+    /**
+     * Same as {@link #write(org.jgrapht.graph.AbstractBaseGraph)}, but the
+     * words are formatted in chunks of {@link #PIPELINE_CHUNK_SIZE} words by
+     * the calling thread and handed to a writer thread through a bounded queue.
+     */
+    private void writePipelined(AbstractBaseGraph<Word, LexicalRelation> graph) {
+
+        final BlockingQueue<String> chunks
+                = new ArrayBlockingQueue<String>(PIPELINE_QUEUE_CAPACITY);
+        // Keeps the exception thrown by the writer thread (if any)
+        final IOException[] failure = new IOException[1];
+        final Writer out;
+        try {
+            out = openWriter();
+        } catch (IOException ex) {
+            fail(ex);
+            return;
+        }
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String chunk;
+                    while ((chunk = chunks.take()) != END_OF_OUTPUT) {
+                        // After a failure, keep draining the queue so the
+                        // formatting thread never blocks.
+                        if (failure[0] == null) {
+                            try {
+                                out.write(chunk);
+                            } catch (IOException ex) {
+                                failure[0] = ex;
+                            }
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    try {
+                        out.flush();
+                        out.close();
+                    } catch (IOException ex) {
+                        if (failure[0] == null) {
+                            failure[0] = ex;
+                        }
+                    }
+                }
+            }
+        }, "csv-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        boolean formatted = false;
+        try {
+            StringBuilder chunk = new StringBuilder();
+            
+            // If we want to write a header
+            if (this.defaultCsvConfig.HEADER) {
+                writeHeader(chunk);
+            }
+
+            int wordsInChunk = 0;
+            // For each word (graph node)
+            for (Word w : graph.vertexSet()) {
+                writeWord(chunk, w);
+                if (++wordsInChunk >= PIPELINE_CHUNK_SIZE) {
+                    chunks.put(chunk.toString());
+                    chunk.setLength(0);
+                    wordsInChunk = 0;
+                }
+            }
+            chunks.put(chunk.toString());
+            chunks.put(END_OF_OUTPUT);
+            formatted = true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            // A StringBuilder never throws an IOException
+            throw new IllegalStateException(ex);
+        } finally {
+            // If the formatting failed, END_OF_OUTPUT was not queued: stops
+            // the writer thread, which closes the file.
+            if (!formatted) {
+                writer.interrupt();
+            }
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure[0] != null) {
+            fail(failure[0]);
+        }
+    }
+
+    /**
+     * Writes the rows in sharded mode (see {@link #setShards(int)}). Each range
+     * of rows is formatted and encoded by a task of a fixed thread pool. In a
+     * single file, a range is written at the position where the previous one
+     * ends, as soon as that position is known, so the ranges are written
+     * while the next ones are still formatted.
+     */
+    private void writeSharded(final Rows rows) {
+
+        final int size = rows.size();
+        final Charset charset = (encoding == null
+                ? Charset.defaultCharset() : Charset.forName(encoding));
+        // The end of each range in the single file (-1 if it failed), known
+        // when the latch of the range is released
+        final long[] ends = new long[shards];
+        final CountDownLatch[] endKnown = new CountDownLatch[shards];
+        for (int s = 0; s < shards; s++) {
+            endKnown[s] = new CountDownLatch(1);
+        }
+
+        RandomAccessFile file = null;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(shards, Runtime.getRuntime().availableProcessors()));
+        try {
+            final FileChannel channel;
+            if (partFiles) {
+                channel = null;
+            } else {
+                file = new RandomAccessFile(outputFile, "rw");
+                file.setLength(0);
+                channel = file.getChannel();
+            }
+
+            // The tasks run in the order they were submitted, so a task only
+            // waits for the ranges that are already being written.
+            List<Future<Void>> tasks = new ArrayList<Future<Void>>(shards);
+            for (int s = 0; s < shards; s++) {
+                final int shard = s;
+                tasks.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        ends[shard] = -1;
+                        try {
+                            ByteBuffer bytes = format(rows, charset
+                                    , (int) ((long) size * shard / shards)
+                                    , (int) ((long) size * (shard + 1) / shards)
+                                    , partFiles || shard == 0);
+                            if (partFiles) {
+                                writePartFile(shard, bytes);
+                                return null;
+                            }
+                            long start = 0;
+                            if (shard > 0) {
+                                endKnown[shard - 1].await();
+                                start = ends[shard - 1];
+                                if (start < 0) {
+                                    throw new IOException("Range " + (shard - 1) + " not written");
+                                }
+                            }
+                            ends[shard] = start + bytes.remaining();
+                            endKnown[shard].countDown();
+                            while (bytes.hasRemaining()) {
+                                channel.write(bytes, start + bytes.position());
+                            }
+                            return null;
+                        } finally {
+                            endKnown[shard].countDown();
+                        }
+                    }
+                }));
+            }
+            for (Future<Void> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException ex) {
+            fail(ex.getCause() instanceof IOException ? (IOException) ex.getCause()
+                    : new IOException(ex.getCause()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            fail(ex);
+        } finally {
+            executor.shutdownNow();
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ex) {
+                    if (failure == null) {
+                        fail(ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats the rows {@code from..to[} (and the header line, if
+     * {@code header} is {@code true} and the header is configured) and
+     * encodes them.
+     */
+    private ByteBuffer format(Rows rows, Charset charset, int from, int to
+            , boolean header) throws IOException {
+        StringBuilder chunk = new StringBuilder();
+        if (header && this.defaultCsvConfig.HEADER) {
+            writeHeader(chunk);
+        }
+        for (int i = from; i < to; i++) {
+            rows.writeRow(chunk, i);
+        }
+        return charset.encode(CharBuffer.wrap(chunk));
+    }
+
+    private void writePartFile(int shard, ByteBuffer bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(getPartFile(shard));
+        try {
+            FileChannel channel = out.getChannel();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Opens the output file for writing, using the configured encoding.
+     */
+    private Writer openWriter() throws IOException {
+        // A não indicação do charSet, faz com que grave em UTF-8 (final parece
+        // que não grava em UTF-8, mas sim aquilo que o sistema mandar).
+        // Ao fazer o LOAD para o mysql indicar "CHARACTER SET utf8" 
+        FileOutputStream fos = new FileOutputStream(outputFile);
+        return new BufferedWriter(encoding == null ? new OutputStreamWriter(fos)
+                : new OutputStreamWriter(fos, encoding));//new OutputStreamWriter(new FileOutputStream(fileName));
+    }
+
+    /**
+     * Writes the header line with the field names.
+     */
+    private void writeHeader(Appendable out) throws IOException {
+        out.append(this.defaultCsvConfig.LINES_STARTING_BY);
+        out.append("words");
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append("polarity");
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append("negativeCounter");
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append("neutralCounter");
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append("positiveCounter");
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append("iteration");
+        out.append(this.defaultCsvConfig.LINES_TERMINATED_BY);
+    }
+
+    /**
+     * Writes one line with the word {@code w} and its polarity.
+     */
+    private void writeWord(Appendable out, Word w) throws IOException {
+        writeWord(out, w.getWord(), getPolarity(w), w.getNegativeCounter()
+                , w.getNeutralCounter(), w.getPositiveCounter(), w.getIteration());
+    }
+
+    /**
+     * Writes one line with a word, its polarity, counters and iteration.
+     */
+    private void writeWord(Appendable out, String word, char polarity
+            , int negativeCounter, int neutralCounter, int positiveCounter
+            , int iteration) throws IOException {
+        writeWord(out, word, polarity, String.valueOf(negativeCounter)
+                , String.valueOf(neutralCounter), String.valueOf(positiveCounter)
+                , iteration);
+    }
+
+    private void writeWord(Appendable out, String word, char polarity
+            , String negativeCounter, String neutralCounter, String positiveCounter
+            , int iteration) throws IOException {
+        out.append(this.defaultCsvConfig.LINES_STARTING_BY);
+
+        if (this.defaultCsvConfig.FIELDS_ENCLOSED_BY != NULL_CHAR) {
+            out.append(this.defaultCsvConfig.FIELDS_ENCLOSED_BY);
+        }
+
+        out.append(word);
+
+        if (this.defaultCsvConfig.FIELDS_ENCLOSED_BY != NULL_CHAR) {
+            out.append(this.defaultCsvConfig.FIELDS_ENCLOSED_BY);
+        }
+
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+
+        out.append(polarity);
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append(negativeCounter);
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append(neutralCounter);
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append(positiveCounter);
+        out.append(this.defaultCsvConfig.FIELDS_TERMINATED_BY);
+        out.append(String.valueOf(iteration));
+
+        out.append(this.defaultCsvConfig.LINES_TERMINATED_BY);
     }
 
     /**
@@ -218,6 +753,27 @@ public class CsvOutput {
         }
     }
     
+    /**
+     * Returns a character that represents a polarity code of
+     * {@link PropagationState}. Same characters as {@link #getPolarity(Word)}.
+     * 
+     * @param polarity a polarity code, such as {@link PropagationState#POSITIVE}.
+     */
+    public static char getPolarity(byte polarity) {
+        switch (polarity) {
+            case PropagationState.POSITIVE:
+                return '+';
+            case PropagationState.NEGATIVE:
+                return '-';
+            case PropagationState.NEUTRAL:
+                return '0';
+            case PropagationState.AMBIGUOUS:
+                return 'A';
+            default:
+                return 'U';
+        }
+    }
+    
     public static void main(String args[]) {
         char ch1 = '\u0000';
         char ch2;
@@ -0,0 +1,406 @@
+package pt.psantos.phd.polarity.propagation.outputers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import org.jgrapht.graph.AbstractBaseGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Class for writing only the differences between a previous lexicon and the
+ * graph nodes (words and their polarity) of a new run, as a csv file: the
+ * words added, the words removed, and the words whose polarity changed, with
+ * their old and new polarity. Applying these lines to the previous lexicon
+ * gives the new one.
+ *
+ * <p>
+ * The previous lexicon can be a csv file written by {@link CsvOutput} (with
+ * the default csv configurations) or a file written by {@link BinaryOutput}.
+ * Both lexicons are visited in the order of the UTF-8 bytes of the terms (the
+ * order already kept by the binary file; the csv file and the new words are
+ * sorted in memory), and compared in a single merge pass. The lines are
+ * written in that order.
+ * </p>
+ *
+ * Example:
+ * <pre>
+ * words,change,oldPolarity,polarity,negativeCounter,neutralCounter,positiveCounter,iteration
+ * bom,changed,A,+,0,0,2,1
+ * novo,added,,U,0,0,0,-1
+ * velho,removed,-,,,,,
+ * </pre>
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ * @author PSantos
+ */
+public class DeltaOutput {
+
+    private static final String FIELDS_TERMINATED_BY = ",";
+    private static final String LINES_TERMINATED_BY = System.getProperty("line.separator");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Csv file name
+     */
+    private final File outputFile;
+    /**
+     * Encoding of the csv files (the delta and the previous lexicon)
+     */
+    private final String encoding;
+
+    /**
+     * If {@code true}, the words whose counters or iteration changed are also
+     * written, even if their polarity is the same.
+     */
+    private boolean compareCounters = false;
+
+    /** Report of the last delta */
+    private int addedWords = 0;
+    private int removedWords = 0;
+    private int changedWords = 0;
+    private int unchangedWords = 0;
+
+    /**
+     * A word of a lexicon.
+     */
+    private static class Entry {
+
+        byte[] term;
+        byte polarity;
+        int negativeCounter;
+        int neutralCounter;
+        int positiveCounter;
+        int iteration;
+    }
+
+    /**
+     * The words of a lexicon, in the order of the UTF-8 bytes of the terms.
+     */
+    private interface SortedEntries {
+
+        int size();
+
+        /**
+         * Reads the {@code k}-th word to {@code entry}.
+         */
+        void read(int k, Entry entry);
+    }
+
+    /**
+     * Creates a DeltaOutput that uses the character encoding passed on the
+     * parameter {@code encoding}.
+     *
+     * @param file a File.
+     * @param encoding the name of a supported {@link java.nio.charset.Charset},
+     * or {@code null} for the default one.
+     */
+    public DeltaOutput(File file, String encoding) {
+        this.outputFile = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Allows to also write the words whose counters or iteration changed,
+     * even if their polarity is the same.
+     *
+     * @return this object.
+     */
+    public DeltaOutput setCompareCounters(boolean compareCounters) {
+        this.compareCounters = compareCounters;
+        return this;
+    }
+
+    /**
+     * Returns the number of words of the new run that were not in the
+     * previous lexicon, in the last delta.
+     */
+    public int getAddedWords() {
+        return addedWords;
+    }
+
+    /**
+     * Returns the number of words of the previous lexicon that are not in the
+     * new run, in the last delta.
+     */
+    public int getRemovedWords() {
+        return removedWords;
+    }
+
+    /**
+     * Returns the number of words written as changed in the last delta.
+     */
+    public int getChangedWords() {
+        return changedWords;
+    }
+
+    /**
+     * Returns the number of words in both lexicons that were not written in
+     * the last delta.
+     */
+    public int getUnchangedWords() {
+        return unchangedWords;
+    }
+
+    /**
+     * Writes the differences between the previous lexicon and the words of
+     * the graph.
+     *
+     * @param previous a csv file written by {@link CsvOutput}, or a file
+     * written by {@link BinaryOutput}.
+     * @param graph a graph where nodes are words.
+     */
+    public void write(File previous, AbstractBaseGraph<Word, LexicalRelation> graph) throws IOException {
+        write(previous, BinaryOutput.Columns.of(graph));
+    }
+
+    /**
+     * Writes the differences between the previous lexicon and the words of a
+     * graph seen through int ids.
+     *
+     * @param previous a csv file written by {@link CsvOutput}, or a file
+     * written by {@link BinaryOutput}.
+     * @param graph a graph where nodes are words.
+     * @param state the counters and iteration of each word of the graph.
+     */
+    public void write(File previous, LexicalGraph graph, PropagationState state) throws IOException {
+        write(previous, BinaryOutput.Columns.of(graph, state));
+    }
+
+    private void write(File previous, BinaryOutput.Columns current) throws IOException {
+        if (BinaryLexicon.isBinaryLexicon(previous)) {
+            BinaryLexicon lexicon = BinaryLexicon.open(previous);
+            try {
+                write(entries(lexicon), entries(current));
+            } finally {
+                lexicon.close();
+            }
+        } else {
+            write(entries(readCsv(previous)), entries(current));
+        }
+    }
+
+    /**
+     * Merges the two lexicons, writing the words that are only in one of them
+     * or that changed.
+     */
+    private void write(SortedEntries previous, SortedEntries current) throws IOException {
+        addedWords = 0;
+        removedWords = 0;
+        changedWords = 0;
+        unchangedWords = 0;
+
+        Writer out = openWriter();
+        try {
+            writeHeader(out);
+
+            Entry a = new Entry();
+            Entry b = new Entry();
+            int i = 0;
+            int j = 0;
+            if (i < previous.size()) {
+                previous.read(i, a);
+            }
+            if (j < current.size()) {
+                current.read(j, b);
+            }
+            while (i < previous.size() || j < current.size()) {
+                int cmp = (i >= previous.size() ? 1 : j >= current.size() ? -1
+                        : BinaryOutput.compareTerms(a.term, 0, a.term.length
+                                , b.term, 0, b.term.length));
+                if (cmp < 0) {
+                    writeLine(out, a, "removed", null);
+                    removedWords++;
+                    if (++i < previous.size()) {
+                        previous.read(i, a);
+                    }
+                } else if (cmp > 0) {
+                    writeLine(out, b, "added", null);
+                    addedWords++;
+                    if (++j < current.size()) {
+                        current.read(j, b);
+                    }
+                } else {
+                    if (isChanged(a, b)) {
+                        writeLine(out, b, "changed", a);
+                        changedWords++;
+                    } else {
+                        unchangedWords++;
+                    }
+                    if (++i < previous.size()) {
+                        previous.read(i, a);
+                    }
+                    if (++j < current.size()) {
+                        current.read(j, b);
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private boolean isChanged(Entry previous, Entry current) {
+        return previous.polarity != current.polarity
+                || (compareCounters && (previous.negativeCounter != current.negativeCounter
+                || previous.neutralCounter != current.neutralCounter
+                || previous.positiveCounter != current.positiveCounter
+                || previous.iteration != current.iteration));
+    }
+
+    /**
+     * Reads a csv file written by {@link CsvOutput}. The word is everything
+     * before the last five fields, so the words with commas are read as they
+     * were written.
+     */
+    private BinaryOutput.Columns readCsv(File file) throws IOException {
+        BinaryOutput.Columns columns = new BinaryOutput.Columns(1 << 10);
+        BufferedReader br = new BufferedReader(encoding == null
+                ? new InputStreamReader(new FileInputStream(file))
+                : new InputStreamReader(new FileInputStream(file), encoding));
+        try {
+            String line = br.readLine();
+            // Skip the header line
+            if (line != null && line.startsWith("words" + FIELDS_TERMINATED_BY)) {
+                line = br.readLine();
+            }
+            int[] fields = new int[6];
+            for (; line != null; line = br.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // Start of each of the last 5 fields
+                int end = line.length();
+                for (int k = 5; k >= 1; k--) {
+                    end = line.lastIndexOf(FIELDS_TERMINATED_BY, end - 1);
+                    if (end < 0) {
+                        throw new IOException("Invalid line in " + file.getAbsolutePath() + ": " + line);
+                    }
+                    fields[k] = end + 1;
+                }
+                try {
+                    columns.add(line.substring(0, fields[1] - 1)
+                            , Integer.parseInt(line.substring(fields[2], fields[3] - 1))
+                            , Integer.parseInt(line.substring(fields[3], fields[4] - 1))
+                            , Integer.parseInt(line.substring(fields[4], fields[5] - 1))
+                            , Integer.parseInt(line.substring(fields[5])));
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid line in " + file.getAbsolutePath() + ": " + line, ex);
+                }
+            }
+        } finally {
+            br.close();
+        }
+        return columns;
+    }
+
+    private static SortedEntries entries(final BinaryOutput.Columns columns) {
+        final int[] sorted = columns.sortedIndex();
+        return new SortedEntries() {
+            @Override
+            public int size() {
+                return columns.size();
+            }
+
+            @Override
+            public void read(int k, Entry entry) {
+                int i = sorted[k];
+                entry.term = columns.termBytes(i);
+                entry.polarity = columns.polarity(i);
+                entry.negativeCounter = columns.getNegativeCounter(i);
+                entry.neutralCounter = columns.getNeutralCounter(i);
+                entry.positiveCounter = columns.getPositiveCounter(i);
+                entry.iteration = columns.getIteration(i);
+            }
+        };
+    }
+
+    private static SortedEntries entries(final BinaryLexicon lexicon) {
+        return new SortedEntries() {
+            @Override
+            public int size() {
+                return lexicon.size();
+            }
+
+            @Override
+            public void read(int k, Entry entry) {
+                int i = lexicon.sortedIndex(k);
+                entry.term = lexicon.termBytes(i);
+                entry.polarity = lexicon.polarity(i);
+                entry.negativeCounter = lexicon.getNegativeCounter(i);
+                entry.neutralCounter = lexicon.getNeutralCounter(i);
+                entry.positiveCounter = lexicon.getPositiveCounter(i);
+                entry.iteration = lexicon.getIteration(i);
+            }
+        };
+    }
+
+    private Writer openWriter() throws IOException {
+        FileOutputStream fos = new FileOutputStream(outputFile);
+        return new BufferedWriter(encoding == null ? new OutputStreamWriter(fos)
+                : new OutputStreamWriter(fos, encoding));
+    }
+
+    private static void writeHeader(Writer out) throws IOException {
+        out.write("words" + FIELDS_TERMINATED_BY + "change" + FIELDS_TERMINATED_BY
+                + "oldPolarity" + FIELDS_TERMINATED_BY + "polarity" + FIELDS_TERMINATED_BY
+                + "negativeCounter" + FIELDS_TERMINATED_BY + "neutralCounter"
+                + FIELDS_TERMINATED_BY + "positiveCounter" + FIELDS_TERMINATED_BY
+                + "iteration" + LINES_TERMINATED_BY);
+    }
+
+    /**
+     * Writes one line. The removed words have no new polarity, counters and
+     * iteration; the added words have no old polarity.
+     *
+     * @param word the word (the new one, unless it was removed).
+     * @param change "added", "removed" or "changed".
+     * @param previous the old word, for the changed words.
+     */
+    private static void writeLine(Writer out, Entry word, String change
+            , Entry previous) throws IOException {
+        boolean removed = "removed".equals(change);
+        out.write(new String(word.term, UTF8));
+        out.write(FIELDS_TERMINATED_BY);
+        out.write(change);
+        out.write(FIELDS_TERMINATED_BY);
+        if (removed) {
+            out.write(CsvOutput.getPolarity(word.polarity));
+            out.write(FIELDS_TERMINATED_BY + FIELDS_TERMINATED_BY + FIELDS_TERMINATED_BY
+                    + FIELDS_TERMINATED_BY + FIELDS_TERMINATED_BY);
+        } else {
+            if (previous != null) {
+                out.write(CsvOutput.getPolarity(previous.polarity));
+            }
+            out.write(FIELDS_TERMINATED_BY);
+            out.write(CsvOutput.getPolarity(word.polarity));
+            out.write(FIELDS_TERMINATED_BY);
+            out.write(String.valueOf(word.negativeCounter));
+            out.write(FIELDS_TERMINATED_BY);
+            out.write(String.valueOf(word.neutralCounter));
+            out.write(FIELDS_TERMINATED_BY);
+            out.write(String.valueOf(word.positiveCounter));
+            out.write(FIELDS_TERMINATED_BY);
+            out.write(String.valueOf(word.iteration));
+        }
+        out.write(LINES_TERMINATED_BY);
+    }
+
+    @Override
+    public String toString() {
+        return "WORDS CHANGED: " + getChangedWords() +
+                "\nWords added: " + getAddedWords() +
+                "\nWords removed: " + getRemovedWords() +
+                "\nWords unchanged: " + getUnchangedWords();
+    }
+}
@@ -0,0 +1,92 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.BatchRun;
+import pt.psantos.phd.polarity.propagation.algorithm.Run;
+
+/**
+ * Compares running the same jobs each in its own JVM ({@link Run}, in compact
+ * mode) with running them in one JVM ({@link BatchRun}), and checks that both
+ * write the same output files.
+ *
+ * <p>
+ * Arguments: graph file, seed words file, encoding and number of jobs (PAPEL
+ * and 8 jobs by default). All the jobs use the same files, as when the same
+ * graph is propagated with several seed words files.
+ * </p>
+ *
+ * @author PSantos
+ */
+public class BatchRunBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File graphFile = new File(args.length > 0 ? args[0]
+                : "examples/02-graph-portuguese/papel-2.0-relacoes_final_SINONIMIA-utf8.txt").getAbsoluteFile();
+        File seedsFile = new File(args.length > 1 ? args[1]
+                : "examples/02-graph-portuguese/seed-words-utf8.csv").getAbsoluteFile();
+        String encoding = (args.length > 2 ? args[2] : "utf-8");
+        int jobs = (args.length > 3 ? Integer.parseInt(args[3]) : 8);
+        File directory = new File(System.getProperty("java.io.tmpdir"), "batch-run-benchmark");
+        directory.mkdirs();
+
+        // One JVM per job
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        long start = System.nanoTime();
+        for (int i = 0; i < jobs; i++) {
+            List<String> command = new ArrayList<String>(Arrays.asList(java, "-cp"
+                    , System.getProperty("java.class.path"), Run.class.getName()
+                    , "-c", "-s", seedsFile.getPath(), "-g", graphFile.getPath(), "-e", encoding
+                    , "-o", new File(directory, "jvm-" + i + ".csv").getPath()));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            // Discards the output of the job
+            while (process.getInputStream().read() >= 0) {
+            }
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException("Job " + i + " failed");
+            }
+        }
+        long separateTime = System.nanoTime() - start;
+
+        // One JVM for all the jobs
+        File manifest = new File(directory, "manifest.csv");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(manifest), encoding);
+        for (int i = 0; i < jobs; i++) {
+            writer.write(graphFile.getPath() + "," + seedsFile.getPath() + ",batch-" + i + ".csv\n");
+        }
+        writer.close();
+        start = System.nanoTime();
+        BatchRun batch = new BatchRun().setEncoding(encoding);
+        List<BatchRun.Job> report = batch.run(batch.readManifest(manifest));
+        long batchTime = System.nanoTime() - start;
+        System.out.println(batch.report(report));
+
+        int different = 0;
+        for (int i = 0; i < jobs; i++) {
+            if (!Arrays.equals(readAll(new File(directory, "jvm-" + i + ".csv"))
+                    , readAll(new File(directory, "batch-" + i + ".csv")))) {
+                different++;
+            }
+        }
+        System.out.println(jobs + " jobs, one JVM per job: " + separateTime / 1000000 + " ms");
+        System.out.println(jobs + " jobs, one JVM: " + batchTime / 1000000 + " ms ("
+                + String.format("%.1f", (double) separateTime / batchTime) + "x)");
+        System.out.println("Different output files: " + different);
+    }
+
+    private static byte[] readAll(File file) throws Exception {
+        java.io.RandomAccessFile in = new java.io.RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.CrossValidation;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PolarityPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+import pt.psantos.phd.polarity.propagation.loaders.SeedWordsLoader;
+
+/**
+ * Compares the leave-one-out evaluation of {@link CrossValidation} (the graph
+ * is loaded once) with the same evaluation done by reloading the graph with
+ * {@link PapelLoader} and propagating it with {@link PolarityPropagation} for
+ * each held-out seed word. Checks that both give the same polarity to the
+ * held-out seed words.
+ *
+ * <p>
+ * Arguments: graph file, seed words file and encoding (PAPEL by default).
+ * </p>
+ *
+ * @author PSantos
+ */
+public class CrossValidationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File graphFile = new File(args.length > 0 ? args[0]
+                : "examples/02-graph-portuguese/papel-2.0-relacoes_final_SINONIMIA-utf8.txt");
+        File seedsFile = new File(args.length > 1 ? args[1]
+                : "examples/02-graph-portuguese/seed-words-utf8.csv");
+        String encoding = (args.length > 2 ? args[2] : "utf-8");
+
+        // Current evaluation: one reload and one propagation per held-out seed word
+        long start = System.nanoTime();
+        List<Word> seedWords = SeedWordsLoader.load(seedsFile, encoding);
+        List<Word> found = new ArrayList<Word>();
+        long[][] reloaded = new long[5][5];
+        long firstReload = 0;
+        for (int i = 0; i < seedWords.size(); i++) {
+            long reloadStart = System.nanoTime();
+            SimpleGraph<Word, LexicalRelation> graph = new PapelLoader().load(graphFile, encoding);
+            Word heldOut = null;
+            List<Word> training = new ArrayList<Word>();
+            for (Word w : SeedWordsLoader.load(seedsFile, encoding)) {
+                if (!w.getWord().equals(seedWords.get(i).getWord())) {
+                    training.add(w);
+                }
+            }
+            for (Word w : graph.vertexSet()) {
+                if (w.equals(seedWords.get(i))) {
+                    heldOut = w;
+                }
+            }
+            if (heldOut == null || found.contains(heldOut)) {
+                continue;
+            }
+            found.add(heldOut);
+            PolarityPropagation.propagate(graph, training);
+            if (firstReload == 0) {
+                firstReload = System.nanoTime() - reloadStart;
+            }
+            Word gold = seedWords.get(i);
+            reloaded[polarity(gold)][polarity(heldOut)]++;
+        }
+        long reloadTime = System.nanoTime() - start;
+
+        // Graph loaded once, folds propagated in parallel
+        start = System.nanoTime();
+        CsrGraph graph = new PapelLoader().loadCompact(graphFile, encoding);
+        CrossValidation validation = new CrossValidation().setFolds(0);
+        validation.evaluate(graph, SeedWordsLoader.load(seedsFile, encoding));
+        long compactTime = System.nanoTime() - start;
+
+        int different = 0;
+        for (byte g = 0; g < 5; g++) {
+            for (byte p = 0; p < 5; p++) {
+                if (reloaded[g][p] != validation.getConfusion(g, p)) {
+                    different++;
+                }
+            }
+        }
+        System.out.println(validation);
+        System.out.println("One reload and propagation: " + firstReload / 1000000 + " ms");
+        System.out.println("Reloading for each of the " + found.size() + " folds: "
+                + reloadTime / 1000000 + " ms");
+        System.out.println("Loading once (" + Runtime.getRuntime().availableProcessors()
+                + " threads): " + compactTime / 1000000 + " ms");
+        System.out.println("Different cells of the confusion matrix: " + different);
+    }
+
+    private static byte polarity(Word w) {
+        return PropagationState.polarity(w.getPositiveCounter(), w.getNegativeCounter()
+                , w.getNeutralCounter());
+    }
+}
@@ -0,0 +1,122 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jgrapht.graph.ClassBasedEdgeFactory;
+import org.jgrapht.graph.DirectedPseudograph;
+import pt.psantos.phd.polarity.propagation.algorithm.DirectedCsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PolarityPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.examples.ExampleTinyDirectedGraph;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+
+/**
+ * Compares the directed propagation over a {@link DirectedPseudograph}
+ * ({@link PolarityPropagation}) with the propagation over a
+ * {@link DirectedCsrGraph} ({@link DirectedCsrPropagation}): the counters must
+ * be the same. Then measures the propagation over a random graph with 10
+ * million relations, which the JGraphT version can not handle in useful time.
+ *
+ * @author PSantos
+ */
+public class DirectedCsrBenchmark {
+
+    public static void main(String[] args) {
+        ExampleTinyDirectedGraph example = new ExampleTinyDirectedGraph();
+        compare("tiny example", example.createDirectedGraph(), example.getSeedWords());
+
+        for (int words : new int[]{1000, 10000}) {
+            Random random = new Random(words);
+            DirectedPseudograph<Word, LexicalRelation> graph = randomPseudograph(words, 4, random);
+            List<Word> seeds = new ArrayList<Word>(graph.vertexSet()).subList(0, 20);
+            for (Word w : seeds) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        w.setAsPositiveSeed();
+                        break;
+                    case 1:
+                        w.setAsNegativeSeed();
+                        break;
+                    default:
+                        w.setAsNeutralSeed();
+                }
+            }
+            compare("random " + words + " words", graph, seeds);
+        }
+
+        DirectedCsrGraph graph = SyntheticGraphs.randomDirectedGraph(1250000, 8, 0.1, 1);
+        List<Word> seeds = SyntheticGraphs.randomSeeds(graph, 100, 2);
+        System.out.println("random: " + graph.vertexCount() + " words, "
+                + graph.edgeCount() + " relations");
+        for (boolean avoidBackPropagation : new boolean[]{false, true}) {
+            DirectedCsrPropagation propagation = new DirectedCsrPropagation()
+                    .setAvoidBackPropagation(avoidBackPropagation);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                PropagationState state = PropagationState.allocateDirect(graph.vertexCount());
+                int[] seedIds = SyntheticGraphs.setSeeds(graph, seeds, state);
+                long start = System.nanoTime();
+                propagation.propagate(graph, seedIds, state);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println("  avoid back propagation " + avoidBackPropagation
+                    + ": " + best / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Runs both propagations and counts the words with different counters.
+     */
+    private static void compare(String name, DirectedPseudograph<Word, LexicalRelation> graph
+            , List<Word> seedWords) {
+        // The graph must be copied before the propagation changes the words
+        DirectedCsrGraph csr = DirectedCsrGraph.fromGraph(graph);
+        PropagationState state = PropagationState.allocateDirect(csr.vertexCount());
+        int[] seeds = DirectedCsrPropagation.setSeedWords(csr, seedWords, state);
+
+        long start = System.nanoTime();
+        new DirectedCsrPropagation().propagate(csr, seeds, state);
+        long csrTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        PolarityPropagation.propagate(graph, seedWords);
+        long jgraphtTime = System.nanoTime() - start;
+
+        int different = 0;
+        int v = 0;
+        for (Word w : graph.vertexSet()) {
+            if (w.getPositiveCounter() != state.getPositiveCounter(v)
+                    || w.getNegativeCounter() != state.getNegativeCounter(v)
+                    || w.getNeutralCounter() != state.getNeutralCounter(v)
+                    || w.getIteration() != state.getIteration(v)) {
+                different++;
+            }
+            v++;
+        }
+        System.out.println(name + ": JGraphT " + jgraphtTime / 1000000 + " ms, CSR "
+                + csrTime / 1000000 + " ms, " + different + " words with different counters"
+                + (different == 0 ? " (OK)" : " (ERROR)"));
+    }
+
+    private static DirectedPseudograph<Word, LexicalRelation> randomPseudograph(int words
+            , int averageDegree, Random random) {
+        DirectedPseudograph<Word, LexicalRelation> graph
+                = new DirectedPseudograph<Word, LexicalRelation>(
+                        new ClassBasedEdgeFactory<Word, LexicalRelation>(LexicalRelation.class));
+        Word[] vertices = new Word[words];
+        for (int i = 0; i < words; i++) {
+            vertices[i] = new Word("w" + i);
+            graph.addVertex(vertices[i]);
+        }
+        for (int i = 0; i < words * averageDegree; i++) {
+            Word u = vertices[random.nextInt(words)];
+            Word v = vertices[random.nextInt(words)];
+            graph.addEdge(u, v, new LexicalRelation(u, v, random.nextInt(10) == 0
+                    ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM));
+        }
+        return graph;
+    }
+}
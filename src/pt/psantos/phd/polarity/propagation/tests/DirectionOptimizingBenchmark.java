@@ -0,0 +1,52 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.DirectionOptimizingPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Compares the direction-optimizing propagation
+ * ({@link DirectionOptimizingPropagation}) with the top-down propagation
+ * ({@link CsrPropagation}): checks that the counters and the iteration of every
+ * word are the same, and measures the time of each one.
+ *
+ * <p>
+ * Usage: {@code DirectionOptimizingBenchmark [graph_file seeds_file encoding]}.
+ * Without arguments, only random graphs are used.
+ * </p>
+ *
+ * @author PSantos
+ */
+public class DirectionOptimizingBenchmark extends PropagationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new DirectionOptimizingBenchmark().run(args, new int[]{100000, 1000000}, new int[]{4, 16});
+    }
+
+    @Override
+    protected void measure(String name, CsrGraph graph, List<Word> seedWords
+            , PropagationState topDown, long topDownTime) {
+        int[] reverse = DirectionOptimizingPropagation.reverseEdges(graph);
+        DirectionOptimizingPropagation propagation = new DirectionOptimizingPropagation();
+        PropagationState optimized = null;
+        long optimizedTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            optimized = PropagationState.allocateDirect(graph.vertexCount());
+            int[] seeds = SyntheticGraphs.setSeeds(graph, seedWords, optimized);
+            long start = System.nanoTime();
+            propagation.propagate(graph, reverse, seeds, optimized);
+            optimizedTime = Math.min(optimizedTime, System.nanoTime() - start);
+        }
+
+        int different = countDifferent(topDown, optimized);
+        System.out.println("  top-down..........: " + topDownTime / 1000000 + " ms");
+        System.out.println("  direction-optimizing: " + optimizedTime / 1000000 + " ms ("
+                + propagation.getTopDownLevels() + " top-down levels, "
+                + propagation.getBottomUpLevels() + " bottom-up levels)");
+        System.out.println("  words with different counters: " + different
+                + (different == 0 ? " (OK)" : " (ERROR)"));
+    }
+}
@@ -0,0 +1,99 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.Arrays;
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.LexiconIndex;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Measures the queries of {@link LexiconIndex} (and the time to build it)
+ * against going through all the words of the graph, and checks that both
+ * return the same words.
+ *
+ * @author PSantos
+ */
+public class LexiconQueryBenchmark {
+
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        CsrGraph graph = SyntheticGraphs.randomGraph(2000000, 8, 0.1, 1);
+        List<Word> seedWords = SyntheticGraphs.randomSeeds(graph, 100, 2);
+        PropagationState state = PropagationState.allocateDirect(graph.vertexCount());
+        CsrPropagation.propagate(graph, SyntheticGraphs.setSeeds(graph, seedWords, state), state);
+        System.out.println(graph.vertexCount() + " words, " + graph.edgeCount() + " relations");
+
+        long start = System.nanoTime();
+        LexiconIndex index = new LexiconIndex(graph, state);
+        System.out.println("Index built in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        String prefix = graph.term(0).substring(0, Math.min(3, graph.term(0).length()));
+        String[] queries = {"top:-:1000", "hops:A:2", "prefix:" + prefix};
+        for (String query : queries) {
+            int[] indexed = null;
+            long indexTime = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                start = System.nanoTime();
+                indexed = index.query(query);
+                indexTime = Math.min(indexTime, System.nanoTime() - start);
+            }
+            int[] scanned = null;
+            long scanTime = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                start = System.nanoTime();
+                scanned = scan(graph, state, index, query);
+                scanTime = Math.min(scanTime, System.nanoTime() - start);
+            }
+            int[] sortedIndexed = indexed.clone();
+            Arrays.sort(sortedIndexed);
+            System.out.println(query + ": " + indexed.length + " words, index "
+                    + indexTime / 1000 + " us, scan " + scanTime / 1000 + " us"
+                    + (Arrays.equals(sortedIndexed, scanned) ? "" : " DIFFERENT"));
+        }
+    }
+
+    /**
+     * Answers the query going through all the words. Returns the vertices by
+     * increasing id.
+     */
+    private static int[] scan(CsrGraph graph, PropagationState state, LexiconIndex index
+            , String query) {
+        String[] fields = query.split(":");
+        int n = graph.vertexCount();
+        int[] result = new int[n];
+        int count = 0;
+        if (fields[0].equals("prefix")) {
+            for (int v = 0; v < n; v++) {
+                if (graph.term(v).startsWith(fields[1])) {
+                    result[count++] = v;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+        byte polarity = LexiconIndex.parsePolarity(fields[1]);
+        int limit = Integer.parseInt(fields[2]);
+        for (int v = 0; v < n; v++) {
+            if (state.polarity(v) == polarity && (fields[0].equals("top")
+                    || (state.getIteration(v) >= 0 && state.getIteration(v) <= limit))) {
+                result[count++] = v;
+            }
+        }
+        if (fields[0].equals("top")) {
+            // The highest margins first, then by id (as the index)
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = ((Integer.MAX_VALUE - (long) index.margin(result[i])) << 32) | result[i];
+            }
+            Arrays.sort(keys);
+            count = Math.min(count, limit);
+            for (int i = 0; i < count; i++) {
+                result[i] = (int) keys[i];
+            }
+            Arrays.sort(result, 0, count);
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
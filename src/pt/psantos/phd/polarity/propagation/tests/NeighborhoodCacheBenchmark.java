@@ -0,0 +1,154 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.NeighborhoodCache;
+
+/**
+ * Measures repeated requests of 2-hop (or more) neighborhoods, with a skewed choice of
+ * words (a few words are requested most of the time), as when browsing a
+ * graph: walking the JGraphT graph ({@code edgesOf()} and
+ * {@code getNodeOther()}), searching the {@link CsrGraph} without keeping the
+ * neighborhoods, and with a {@link NeighborhoodCache}. Also checks that the
+ * three give the same words.
+ *
+ * @author PSantos
+ */
+public class NeighborhoodCacheBenchmark {
+
+    private static final int WORDS = 500000;
+    private static final int REQUESTS = 200000;
+    /** Maximum distance of the words of the neighborhoods (the first argument) */
+    private static int HOPS = 2;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            HOPS = Integer.parseInt(args[0]);
+        }
+        CsrGraph graph = SyntheticGraphs.randomGraph(WORDS, 8, 0.1, 1);
+        Word[] words = new Word[graph.vertexCount()];
+        SimpleGraph<Word, LexicalRelation> jgrapht = toJGraphT(graph, words);
+        System.out.println(graph.vertexCount() + " words, " + graph.edgeCount() + " relations");
+
+        // Skewed requests: the lower ids are requested much more often
+        Random random = new Random(3);
+        int[] requests = new int[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            double x = random.nextDouble();
+            requests[i] = (int) (x * x * x * x * graph.vertexCount());
+        }
+
+        long start = System.nanoTime();
+        long total = 0;
+        for (int v : requests) {
+            total += jgraphtNeighborhood(jgrapht, words[v]).size();
+        }
+        System.out.println("JGraphT walk: " + (System.nanoTime() - start) / 1000000 + " ms ("
+                + total + " words)");
+
+        // Same words
+        int different = 0;
+        NeighborhoodCache checked = new NeighborhoodCache(graph);
+        for (int i = 0; i < 1000; i++) {
+            int v = requests[i];
+            NeighborhoodCache.Neighborhood neighborhood = checked.get(v, HOPS);
+            Set<String> expected = jgraphtNeighborhood(jgrapht, words[v]);
+            Set<String> found = new HashSet<String>();
+            for (int j = 0; j < neighborhood.size(); j++) {
+                found.add(graph.term(neighborhood.vertex(j)));
+            }
+            if (!found.equals(expected)) {
+                different++;
+            }
+        }
+        System.out.println("Different neighborhoods: " + different);
+
+        // The JGraphT graph is not kept while the cache is measured
+        jgrapht = null;
+        words = null;
+        System.gc();
+
+        NeighborhoodCache uncached = new NeighborhoodCache(graph, 0);
+        start = System.nanoTime();
+        total = 0;
+        for (int v : requests) {
+            total += uncached.get(v, HOPS).size();
+        }
+        System.out.println("CSR search: " + (System.nanoTime() - start) / 1000000 + " ms ("
+                + total + " words)");
+
+        for (long maxInts : new long[]{1L << 20, NeighborhoodCache.DEFAULT_MAX_INTS}) {
+            NeighborhoodCache cache = new NeighborhoodCache(graph, maxInts);
+            start = System.nanoTime();
+            total = 0;
+            for (int v : requests) {
+                total += cache.get(v, HOPS).size();
+            }
+            System.out.println("Cache of " + (maxInts * 4 >> 20) + "MB: "
+                    + (System.nanoTime() - start) / 1000000 + " ms (" + total + " words), hit rate "
+                    + String.format("%.3f", cache.getHitRate()) + ", " + cache.getEvictions()
+                    + " evictions");
+        }
+
+    }
+
+    /**
+     * The words up to {@link #HOPS} relations away from {@code w}, walking
+     * the JGraphT graph.
+     */
+    private static Set<String> jgraphtNeighborhood(SimpleGraph<Word, LexicalRelation> graph, Word w) {
+        Set<Word> visited = new HashSet<Word>();
+        visited.add(w);
+        List<Word> level = new ArrayList<Word>();
+        level.add(w);
+        for (int d = 0; d < HOPS; d++) {
+            List<Word> next = new ArrayList<Word>();
+            for (Word u : level) {
+                for (LexicalRelation r : graph.edgesOf(u)) {
+                    Word other = r.getNodeOther(u);
+                    if (visited.add(other)) {
+                        next.add(other);
+                    }
+                }
+            }
+            level = next;
+        }
+        Set<String> terms = new HashSet<String>();
+        for (Word u : visited) {
+            if (u != w) {
+                terms.add(u.getWord());
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Copies the graph to a JGraphT graph. The word of each vertex is put in
+     * {@code words}.
+     */
+    private static SimpleGraph<Word, LexicalRelation> toJGraphT(CsrGraph csr, Word[] words) {
+        SimpleGraph<Word, LexicalRelation> graph
+                = new SimpleGraph<Word, LexicalRelation>(LexicalRelation.class);
+        for (int v = 0; v < words.length; v++) {
+            words[v] = new Word(csr.term(v));
+            graph.addVertex(words[v]);
+        }
+        for (int v = 0; v < words.length; v++) {
+            for (int e = csr.edgesStart(v); e < csr.edgesEnd(v); e++) {
+                int u = csr.target(e);
+                if (v < u) {
+                    graph.addEdge(words[v], words[u], new LexicalRelation(words[v], words[u]
+                            , csr.relation(e)));
+                }
+            }
+        }
+        return graph;
+    }
+}
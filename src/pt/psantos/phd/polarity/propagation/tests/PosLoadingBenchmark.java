@@ -0,0 +1,119 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Set;
+import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+
+/**
+ * Compares loading the graph of each part of speech (and of all of them) with
+ * one {@link PapelLoader#load(java.io.File, java.lang.String, PapelLoader.POS)}
+ * per part of speech, with loading all of them in one pass
+ * ({@link PapelLoader#loadByPos(java.io.File, java.lang.String)}), and checks
+ * that the graphs are the same. Same for the compact graphs.
+ *
+ * <p>
+ * Arguments: graph file and encoding (PAPEL by default).
+ * </p>
+ *
+ * @author PSantos
+ */
+public class PosLoadingBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        File file = new File(args.length > 0 ? args[0]
+                : "examples/02-graph-portuguese/papel-2.0-relacoes_final_SINONIMIA-utf8.txt");
+        String encoding = (args.length > 1 ? args[1] : "utf-8");
+
+        EnumMap<PapelLoader.POS, SimpleGraph<Word, LexicalRelation>> separate = null;
+        long separateTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            separate = new EnumMap<PapelLoader.POS, SimpleGraph<Word, LexicalRelation>>(PapelLoader.POS.class);
+            for (PapelLoader.POS pos : PapelLoader.POS.values()) {
+                separate.put(pos, new PapelLoader().load(file, encoding, pos));
+            }
+            separateTime = Math.min(separateTime, System.nanoTime() - start);
+        }
+
+        EnumMap<PapelLoader.POS, SimpleGraph<Word, LexicalRelation>> onePass = null;
+        long onePassTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            onePass = new PapelLoader().loadByPos(file, encoding);
+            onePassTime = Math.min(onePassTime, System.nanoTime() - start);
+        }
+
+        EnumMap<PapelLoader.POS, CsrGraph> compactSeparate = null;
+        long compactSeparateTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            compactSeparate = new EnumMap<PapelLoader.POS, CsrGraph>(PapelLoader.POS.class);
+            for (PapelLoader.POS pos : PapelLoader.POS.values()) {
+                compactSeparate.put(pos, new PapelLoader().loadCompact(file, encoding, pos));
+            }
+            compactSeparateTime = Math.min(compactSeparateTime, System.nanoTime() - start);
+        }
+
+        EnumMap<PapelLoader.POS, CsrGraph> compactOnePass = null;
+        long compactOnePassTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            compactOnePass = new PapelLoader().loadCompactByPos(file, encoding);
+            compactOnePassTime = Math.min(compactOnePassTime, System.nanoTime() - start);
+        }
+
+        for (PapelLoader.POS pos : PapelLoader.POS.values()) {
+            SimpleGraph<Word, LexicalRelation> graph = separate.get(pos);
+            CsrGraph compact = compactOnePass.get(pos);
+            System.out.println(pos + ": " + graph.vertexSet().size() + " words, "
+                    + graph.edgeSet().size() + " relations"
+                    + (edges(graph).equals(edges(onePass.get(pos))) ? "" : ", DIFFERENT graph")
+                    + (sameGraph(compactSeparate.get(pos), compact) ? "" : ", DIFFERENT compact graph"));
+        }
+        System.out.println("load per part of speech: " + separateTime / 1000000 + " ms");
+        System.out.println("loadByPos: " + onePassTime / 1000000 + " ms");
+        System.out.println("loadCompact per part of speech: " + compactSeparateTime / 1000000 + " ms");
+        System.out.println("loadCompactByPos: " + compactOnePassTime / 1000000 + " ms");
+    }
+
+    /**
+     * Returns the relations of the graph as text, in both directions.
+     */
+    private static Set<String> edges(SimpleGraph<Word, LexicalRelation> graph) {
+        Set<String> edges = new HashSet<String>();
+        for (LexicalRelation r : graph.edgeSet()) {
+            edges.add(r.getNodeFrom().getWord() + " " + r.getRelationType() + " " + r.getNodeTo().getWord());
+            edges.add(r.getNodeTo().getWord() + " " + r.getRelationType() + " " + r.getNodeFrom().getWord());
+        }
+        return edges;
+    }
+
+    /**
+     * Returns {@code true} if both graphs have the same words, with the same
+     * ids, and the same relations, in the same order.
+     */
+    private static boolean sameGraph(CsrGraph g1, CsrGraph g2) {
+        if (g1.vertexCount() != g2.vertexCount() || g1.edgeCount() != g2.edgeCount()) {
+            return false;
+        }
+        for (int v = 0; v < g1.vertexCount(); v++) {
+            if (!g1.term(v).equals(g2.term(v)) || g1.edgesEnd(v) != g2.edgesEnd(v)) {
+                return false;
+            }
+            for (int e = g1.edgesStart(v); e < g1.edgesEnd(v); e++) {
+                if (g1.target(e) != g2.target(e) || g1.relationCode(e) != g2.relationCode(e)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
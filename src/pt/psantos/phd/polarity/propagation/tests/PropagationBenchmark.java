@@ -0,0 +1,96 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+import pt.psantos.phd.polarity.propagation.loaders.SeedWordsLoader;
+
+/**
+ * Common part of the benchmarks that compare a variant of the propagation with
+ * {@link CsrPropagation}: loads the graph given in the command line (if any)
+ * and creates the random graphs ({@link SyntheticGraphs}), propagates each one
+ * {@link #RUNS} times with {@link CsrPropagation}, and gives the fastest time
+ * and the counters to {@link #measure(String, CsrGraph, List, PropagationState, long)},
+ * which measures the variant.
+ *
+ * @author PSantos
+ */
+public abstract class PropagationBenchmark {
+
+    /** Each propagation is repeated this number of times, and the fastest is kept */
+    public static final int RUNS = 5;
+
+    /**
+     * Measures the variant of the propagation over a graph, and prints the
+     * results.
+     *
+     * @param name name of the graph.
+     * @param graph the graph.
+     * @param seedWords the seed words.
+     * @param baseline the counters and the iteration of each word given by
+     * {@link CsrPropagation}.
+     * @param baselineTime the fastest time of {@link CsrPropagation}, in
+     * nanoseconds.
+     */
+    protected abstract void measure(String name, CsrGraph graph, List<Word> seedWords
+            , PropagationState baseline, long baselineTime);
+
+    /**
+     * Runs the benchmark over the graph given by {@code args} (graph file,
+     * seeds file and encoding), if any, and over a random graph with 100
+     * random seed words for each number of words and average degree.
+     */
+    public void run(String[] args, int[] words, int[] degrees) throws IOException {
+        if (args.length >= 3) {
+            CsrGraph graph = new PapelLoader().loadCompact(new File(args[0]), args[2]);
+            List<Word> seeds = SeedWordsLoader.load(new File(args[1]), args[2]);
+            run(args[0], graph, seeds);
+        }
+
+        for (int w : words) {
+            for (int degree : degrees) {
+                CsrGraph graph = SyntheticGraphs.randomGraph(w, degree, 0.1, 1);
+                List<Word> seeds = SyntheticGraphs.randomSeeds(graph, 100, 2);
+                run("random " + w + " words, degree " + degree, graph, seeds);
+            }
+        }
+    }
+
+    private void run(String name, CsrGraph graph, List<Word> seedWords) {
+        System.out.println(name + ": " + graph.vertexCount() + " words, "
+                + graph.edgeCount() + " relations");
+
+        PropagationState baseline = null;
+        long baselineTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            baseline = PropagationState.allocateDirect(graph.vertexCount());
+            int[] seeds = SyntheticGraphs.setSeeds(graph, seedWords, baseline);
+            long start = System.nanoTime();
+            CsrPropagation.propagate(graph, seeds, baseline);
+            baselineTime = Math.min(baselineTime, System.nanoTime() - start);
+        }
+        measure(name, graph, seedWords, baseline, baselineTime);
+    }
+
+    /**
+     * Returns the number of words whose counters or iteration are not the
+     * same in both states.
+     */
+    public static int countDifferent(PropagationState s1, PropagationState s2) {
+        int different = 0;
+        for (int v = 0; v < s1.size(); v++) {
+            if (s1.getPositiveCounter(v) != s2.getPositiveCounter(v)
+                    || s1.getNegativeCounter(v) != s2.getNegativeCounter(v)
+                    || s1.getNeutralCounter(v) != s2.getNeutralCounter(v)
+                    || s1.getIteration(v) != s2.getIteration(v)) {
+                different++;
+            }
+        }
+        return different;
+    }
+}
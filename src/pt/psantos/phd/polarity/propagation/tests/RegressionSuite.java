@@ -0,0 +1,483 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.jgrapht.graph.AbstractBaseGraph;
+import org.jgrapht.graph.DirectedPseudograph;
+import org.jgrapht.graph.SimpleGraph;
+import pt.psantos.phd.polarity.propagation.algorithm.ComponentPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.DirectedCsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.DirectionOptimizingPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PolarityPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.ReorderedPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.SignedCsrMatrix;
+import pt.psantos.phd.polarity.propagation.algorithm.SpmvPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.examples.ExampleTinyDirectedGraph;
+import pt.psantos.phd.polarity.propagation.examples.ExampleTinyUndirectedGraph;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+import pt.psantos.phd.polarity.propagation.loaders.PapelLoader;
+import pt.psantos.phd.polarity.propagation.loaders.ResolvedSeeds;
+import pt.psantos.phd.polarity.propagation.loaders.SeedWordsLoader;
+import pt.psantos.phd.polarity.propagation.outputers.CsvOutput;
+
+/**
+ * Regression checks of the propagation, to be run after each change. Exits
+ * with status 1 if any check fails. Needs only the files of the
+ * {@code examples} directory and a temporary directory.
+ *
+ * <p>
+ * Correctness: the counters of the words of {@link ExampleTinyUndirectedGraph}
+ * and {@link ExampleTinyDirectedGraph}, with each implementation of the
+ * propagation; the output file of the tiny English graph, against the
+ * committed {@code dic-output.csv}; and the output file of PAPEL (which has
+ * no committed output file), against the number of lines and the CRC-32 of
+ * the output of version 0.6.0.
+ * </p>
+ *
+ * <p>
+ * Performance: random graphs of increasing size are written to a file,
+ * loaded ({@link PapelLoader#loadCompact(java.io.File, java.lang.String)})
+ * and propagated ({@link CsrPropagation}). The time and the heap bytes
+ * allocated per relation must stay below fixed bounds, and must not grow
+ * with the size of the graph much more than expected from the caches. The
+ * bounds are a few times what a plain Linux box measures, so they only fail
+ * on real regressions (a copy of the graph, boxed ids, a quadratic step).
+ * </p>
+ *
+ * <p>
+ * Arguments: the {@code examples} directory ({@code examples} by default).
+ * </p>
+ *
+ * @author PSantos
+ */
+public class RegressionSuite {
+
+    /** Counters of the words of the tiny undirected graph: word, +, -, 0, iteration */
+    private static final String[] TINY_UNDIRECTED = {
+        "0 1 0 0 0", "1 0 1 0 0", "2 0 0 1 0", "3 0 0 1 1", "4 0 1 0 1", "5 1 1 0 1"
+        , "6 1 0 0 1", "7 1 1 0 1", "8 1 0 0 1", "9 1 0 0 2", "10 2 0 0 2", "11 0 0 0 -1"
+        , "12 0 0 0 -1"};
+    /** Counters of the words of the tiny directed graph: word, +, -, 0, iteration */
+    private static final String[] TINY_DIRECTED = {
+        "A 1 0 0 0", "B 0 1 0 0", "C 1 0 0 1", "D 1 1 0 1", "E 0 2 0 1", "F 1 0 0 2"
+        , "G 1 1 0 2", "H 0 1 0 2", "I 0 1 0 3"};
+
+    /** Output of PAPEL: number of lines and CRC-32 (with "\n" after each line) */
+    private static final int PAPEL_LINES = 43375;
+    private static final long PAPEL_CRC = 1727915678L;
+
+    /** Words of the random graphs, each 4 times the previous one */
+    private static final int[] FIXTURE_WORDS = {25000, 100000, 400000};
+    private static final int AVERAGE_DEGREE = 8;
+    /** Bounds per relation of the file */
+    private static final double MAX_LOAD_NS = 2500;
+    private static final double MAX_LOAD_BYTES = 600;
+    private static final double MAX_PROPAGATION_NS = 400;
+    private static final double MAX_PROPAGATION_BYTES = 8;
+    /**
+     * Maximum ratio between the time per relation of the largest and the
+     * smallest graph (16 times larger: a quadratic step would be 16 times
+     * slower per relation, the caches alone about 3 times)
+     */
+    private static final double MAX_GROWTH = 6;
+
+    private static int passed = 0;
+    private static final List<String> failed = new ArrayList<String>();
+
+    public static void main(String[] args) throws Exception {
+        File examples = new File(args.length > 0 ? args[0] : "examples");
+        File directory = new File(System.getProperty("java.io.tmpdir"), "regression-suite");
+        directory.mkdirs();
+
+        tinyUndirected();
+        tinyDirected();
+        tinyEnglish(new File(examples, "01-tiny-graph-english"), directory);
+        papel(new File(examples, "02-graph-portuguese"), directory);
+        performance(directory);
+
+        System.out.println(passed + " checks passed, " + failed.size() + " failed");
+        for (String name : failed) {
+            System.out.println("FAILED: " + name);
+        }
+        System.exit(failed.isEmpty() ? 0 : 1);
+    }
+
+    private static void check(String name, boolean condition, String detail) {
+        if (condition) {
+            passed++;
+        } else {
+            failed.add(name);
+        }
+        System.out.println((condition ? "ok    " : "FAIL  ") + name
+                + (detail != null ? " (" + detail + ")" : ""));
+    }
+
+    /**
+     * The tiny undirected graph, with the JGraphT graph, the compact graph,
+     * the connected components in parallel, the renumbered words and the
+     * direction-optimizing search.
+     */
+    private static void tinyUndirected() throws IOException {
+        ExampleTinyUndirectedGraph example = new ExampleTinyUndirectedGraph();
+        SimpleGraph<Word, LexicalRelation> graph = example.createUndirectedGraph();
+        List<Word> seedWords = example.getSeedWords();
+        CsrGraph compact = CsrGraph.fromGraph(graph);
+
+        PropagationState state = PropagationState.allocateDirect(compact.vertexCount());
+        CsrPropagation.propagate(compact, seedWords, state);
+        check("tiny undirected, CsrPropagation", sameCounters(compact, state, TINY_UNDIRECTED), null);
+        state.close();
+
+        ComponentPropagation components = new ComponentPropagation().setThreads(2);
+        state = PropagationState.allocateDirect(compact.vertexCount());
+        components.propagate(compact, seedWords, state);
+        check("tiny undirected, ComponentPropagation", sameCounters(compact, state, TINY_UNDIRECTED), null);
+        state.close();
+
+        for (ReorderedPropagation.Ordering ordering : ReorderedPropagation.Ordering.values()) {
+            state = PropagationState.allocateDirect(compact.vertexCount());
+            new ReorderedPropagation().setOrdering(ordering).propagate(compact, seedWords, state);
+            check("tiny undirected, ReorderedPropagation " + ordering
+                    , sameCounters(compact, state, TINY_UNDIRECTED), null);
+            state.close();
+        }
+
+        // Bottom-up at every level, and with the default threshold
+        for (int alpha : new int[]{0, DirectionOptimizingPropagation.DEFAULT_ALPHA}) {
+            state = PropagationState.allocateDirect(compact.vertexCount());
+            new DirectionOptimizingPropagation().setAlpha(alpha).propagate(compact, seedWords, state);
+            check("tiny undirected, DirectionOptimizingPropagation alpha " + alpha
+                    , sameCounters(compact, state, TINY_UNDIRECTED), null);
+            state.close();
+        }
+
+        state = PropagationState.allocateDirect(compact.vertexCount());
+        SpmvPropagation.propagate(compact, seedWords, state);
+        check("tiny undirected, SpmvPropagation", sameCounters(compact, state, TINY_UNDIRECTED), null);
+        state.close();
+
+        // Last, as it changes the words of the graph (and the seed words)
+        PolarityPropagation.propagate(graph, seedWords);
+        check("tiny undirected, PolarityPropagation", sameCounters(graph, TINY_UNDIRECTED), null);
+    }
+
+    /**
+     * The tiny directed graph, with the JGraphT graph and the compact graph.
+     */
+    private static void tinyDirected() throws IOException {
+        ExampleTinyDirectedGraph example = new ExampleTinyDirectedGraph();
+        DirectedPseudograph<Word, LexicalRelation> graph = example.createDirectedGraph();
+        List<Word> seedWords = example.getSeedWords();
+        DirectedCsrGraph compact = DirectedCsrGraph.fromGraph(graph);
+
+        PropagationState state = PropagationState.allocateDirect(compact.vertexCount());
+        new DirectedCsrPropagation().propagate(compact, seedWords, state);
+        check("tiny directed, DirectedCsrPropagation", sameCounters(compact, state, TINY_DIRECTED), null);
+        state.close();
+
+        PolarityPropagation.propagate(graph, seedWords);
+        check("tiny directed, PolarityPropagation", sameCounters(graph, TINY_DIRECTED), null);
+    }
+
+    /**
+     * The tiny English graph, against the committed output file.
+     */
+    private static void tinyEnglish(File example, File directory) throws IOException {
+        File graphFile = new File(example, "graph-edges-utf8.txt");
+        File seedsFile = new File(example, "seed-words-utf8.csv");
+        List<String> expected = readLines(new File(example, "dic-output.csv"));
+
+        SimpleGraph<Word, LexicalRelation> graph = new PapelLoader().load(graphFile, "utf-8");
+        PolarityPropagation.propagate(graph, SeedWordsLoader.load(seedsFile, "utf-8"));
+        File output = new File(directory, "tiny-jgrapht.csv");
+        new CsvOutput(output, "utf-8").write(graph);
+        check("tiny English, PolarityPropagation output", expected.equals(readLines(output)), null);
+
+        CsrGraph compact = new PapelLoader().loadCompact(graphFile, "utf-8");
+        PropagationState state = PropagationState.allocateDirect(compact.vertexCount());
+        ResolvedSeeds seeds = SeedWordsLoader.load(seedsFile, "utf-8", compact, state);
+        CsrPropagation.propagate(compact, seeds.getSortedVertices(), state);
+        output = new File(directory, "tiny-compact.csv");
+        new CsvOutput(output, "utf-8").write(compact, state);
+        check("tiny English, CsrPropagation output", expected.equals(readLines(output)), null);
+        state.close();
+    }
+
+    /**
+     * PAPEL, against the number of lines and the CRC-32 of its output file.
+     */
+    private static void papel(File example, File directory) throws IOException {
+        File graphFile = new File(example, "papel-2.0-relacoes_final_SINONIMIA-utf8.txt");
+        File seedsFile = new File(example, "seed-words-utf8.csv");
+
+        SimpleGraph<Word, LexicalRelation> graph = new PapelLoader().load(graphFile, "utf-8");
+        PolarityPropagation.propagate(graph, SeedWordsLoader.load(seedsFile, "utf-8"));
+        File output = new File(directory, "papel-jgrapht.csv");
+        new CsvOutput(output, "utf-8").write(graph);
+        checkPapel("PAPEL, PolarityPropagation output", output);
+        graph = null;
+
+        CsrGraph compact = new PapelLoader().loadCompact(graphFile, "utf-8");
+        for (int i = 0; i < 6; i++) {
+            PropagationState state = PropagationState.allocateDirect(compact.vertexCount());
+            ResolvedSeeds seeds = SeedWordsLoader.load(seedsFile, "utf-8", compact, state);
+            String name;
+            if (i == 0) {
+                name = "CsrPropagation";
+                CsrPropagation.propagate(compact, seeds.getSortedVertices(), state);
+            } else if (i == 1) {
+                name = "ComponentPropagation";
+                new ComponentPropagation().setThreads(2)
+                        .propagate(compact, seeds.getSortedVertices(), state);
+            } else if (i == 2) {
+                name = "ReorderedPropagation";
+                new ReorderedPropagation().setOrdering(ReorderedPropagation.Ordering.RCM)
+                        .propagate(compact, seeds.getSortedVertices(), state);
+            } else if (i == 5) {
+                name = "SpmvPropagation";
+                SpmvPropagation.propagate(SignedCsrMatrix.fromGraph(compact)
+                        , seeds.getSortedVertices(), state);
+            } else {
+                // Bottom-up at every level, and with the default threshold
+                int alpha = (i == 3 ? 0 : DirectionOptimizingPropagation.DEFAULT_ALPHA);
+                name = "DirectionOptimizingPropagation alpha " + alpha;
+                new DirectionOptimizingPropagation().setAlpha(alpha).propagate(compact
+                        , DirectionOptimizingPropagation.reverseEdges(compact)
+                        , seeds.getSortedVertices(), state);
+            }
+            output = new File(directory, "papel-" + i + ".csv");
+            new CsvOutput(output, "utf-8").write(compact, state);
+            checkPapel("PAPEL, " + name + " output", output);
+            state.close();
+        }
+    }
+
+    private static void checkPapel(String name, File output) throws IOException {
+        List<String> lines = readLines(output);
+        CRC32 crc = new CRC32();
+        for (String line : lines) {
+            crc.update((line + "\n").getBytes("utf-8"));
+        }
+        check(name, lines.size() == PAPEL_LINES && crc.getValue() == PAPEL_CRC
+                , lines.size() + " lines, CRC " + crc.getValue());
+    }
+
+    /**
+     * Loads and propagates random graphs of increasing size. The smallest one
+     * is run once before, so the times do not include the compilation of the
+     * code.
+     */
+    private static void performance(File directory) throws IOException {
+        measure(directory, FIXTURE_WORDS[0]);
+        double[] loadNs = new double[FIXTURE_WORDS.length];
+        double[] propagationNs = new double[FIXTURE_WORDS.length];
+        for (int i = 0; i < FIXTURE_WORDS.length; i++) {
+            double[] m = measure(directory, FIXTURE_WORDS[i]);
+            String size = FIXTURE_WORDS[i] + " words";
+            loadNs[i] = m[0];
+            propagationNs[i] = m[2];
+            check("load " + size + ", ns per relation", m[0] <= MAX_LOAD_NS
+                    , String.format("%.0f, at most %.0f", m[0], MAX_LOAD_NS));
+            if (m[1] >= 0) {
+                check("load " + size + ", bytes per relation", m[1] <= MAX_LOAD_BYTES
+                        , String.format("%.0f, at most %.0f", m[1], MAX_LOAD_BYTES));
+            }
+            check("propagation " + size + ", ns per relation", m[2] <= MAX_PROPAGATION_NS
+                    , String.format("%.0f, at most %.0f", m[2], MAX_PROPAGATION_NS));
+            if (m[3] >= 0) {
+                check("propagation " + size + ", bytes per relation", m[3] <= MAX_PROPAGATION_BYTES
+                        , String.format("%.1f, at most %.0f", m[3], MAX_PROPAGATION_BYTES));
+            }
+        }
+        int last = FIXTURE_WORDS.length - 1;
+        check("load, growth of ns per relation", loadNs[last] <= MAX_GROWTH * loadNs[0]
+                , String.format("%.1fx, at most %.0fx", loadNs[last] / loadNs[0], MAX_GROWTH));
+        check("propagation, growth of ns per relation"
+                , propagationNs[last] <= MAX_GROWTH * propagationNs[0]
+                , String.format("%.1fx, at most %.0fx", propagationNs[last] / propagationNs[0], MAX_GROWTH));
+    }
+
+    /**
+     * Writes a random graph with {@code words} words to a file, and loads and
+     * propagates it 3 times. Returns the best time and the heap bytes
+     * allocated per relation of the file: load ns, load bytes, propagation ns
+     * and propagation bytes (-1 if the JVM does not count the bytes).
+     */
+    private static double[] measure(File directory, int words) throws IOException {
+        File file = new File(directory, "random-" + words + ".txt");
+        long relations = writeRandomGraph(file, words, words);
+        int[] seeds = new int[words / 100];
+        Random random = new Random(words);
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextInt(words);
+        }
+
+        double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        for (int run = 0; run < 3; run++) {
+            System.gc();
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            CsrGraph graph = new PapelLoader().loadCompact(file, "utf-8");
+            best[0] = Math.min(best[0], (double) (System.nanoTime() - start) / relations);
+            best[1] = Math.min(best[1], perRelation(allocated, relations));
+
+            PropagationState state = PropagationState.allocateDirect(graph.vertexCount());
+            int[] vertices = setSeeds(graph, seeds, state);
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            CsrPropagation.propagate(graph, vertices, state);
+            best[2] = Math.min(best[2], (double) (System.nanoTime() - start) / relations);
+            best[3] = Math.min(best[3], perRelation(allocated, relations));
+            state.close();
+        }
+        file.delete();
+        return best;
+    }
+
+    /**
+     * Writes about {@code words * AVERAGE_DEGREE / 2} random relations
+     * between {@code words} words, 10% of them antonyms. Returns the number
+     * of relations written.
+     */
+    private static long writeRandomGraph(File file, int words, long seed) throws IOException {
+        Random random = new Random(seed);
+        long relations = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+        try {
+            for (long i = (long) words * AVERAGE_DEGREE / 2; i > 0; i--) {
+                int u = random.nextInt(words);
+                int v = random.nextInt(words);
+                if (u != v) {
+                    writer.write("w" + u + (random.nextDouble() < 0.1 ? " ANT " : " SYN ") + "w" + v + "\n");
+                    relations++;
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return relations;
+    }
+
+    /**
+     * Sets the words "w" + id of {@code seeds} as seed words, alternating
+     * positive and negative. Returns their vertices, sorted, without repeated
+     * ones.
+     */
+    private static int[] setSeeds(CsrGraph graph, int[] seeds, PropagationState state) {
+        int count = 0;
+        int[] vertices = new int[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            int v = graph.vertexId("w" + seeds[i]);
+            if (v >= 0 && state.polarity(v) == PropagationState.NOT_SET) {
+                state.setSeed(v, (i % 2 == 0 ? PropagationState.POSITIVE : PropagationState.NEGATIVE));
+                vertices[count++] = v;
+            }
+        }
+        vertices = java.util.Arrays.copyOf(vertices, count);
+        java.util.Arrays.sort(vertices);
+        return vertices;
+    }
+
+    private static double perRelation(long allocatedStart, long relations) {
+        long allocated = allocatedBytes();
+        return (allocatedStart >= 0 && allocated >= 0
+                ? (double) (allocated - allocatedStart) / relations : -1);
+    }
+
+    /**
+     * Returns the bytes allocated in the heap by the current thread, or -1 if
+     * the JVM does not count them.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported() && sun.isThreadAllocatedMemoryEnabled()) {
+                return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code true} if the words of the JGraphT graph have the
+     * expected counters.
+     */
+    private static boolean sameCounters(AbstractBaseGraph<Word, LexicalRelation> graph, String[] expected) {
+        if (graph.vertexSet().size() != expected.length) {
+            return false;
+        }
+        for (String e : expected) {
+            String term = e.substring(0, e.indexOf(' '));
+            Word found = null;
+            for (Word w : graph.vertexSet()) {
+                if (w.getWord().equals(term)) {
+                    found = w;
+                }
+            }
+            if (found == null || !e.equals(term + " " + found.getPositiveCounter() + " "
+                    + found.getNegativeCounter() + " " + found.getNeutralCounter() + " "
+                    + found.getIteration())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the vertices of the compact graph have the
+     * expected counters.
+     */
+    private static boolean sameCounters(LexicalGraph graph, PropagationState state, String[] expected) {
+        if (graph.vertexCount() != expected.length) {
+            return false;
+        }
+        for (String e : expected) {
+            String term = e.substring(0, e.indexOf(' '));
+            int v = graph.vertexId(term);
+            if (v < 0 || !e.equals(term + " " + state.getPositiveCounter(v) + " "
+                    + state.getNegativeCounter(v) + " " + state.getNeutralCounter(v) + " "
+                    + state.getIteration(v))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the lines of a file, so files written with other line
+     * separators are the same.
+     */
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "utf-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,58 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.ReorderedPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Measures the effect of renumbering the words before the propagation
+ * ({@link ReorderedPropagation}): time of the propagation over the original
+ * graph, and over the graph in BFS and RCM order (plus the time of the
+ * renumbering). Also checks that the results are the same.
+ *
+ * <p>
+ * The effect comes from fewer cache misses, which Java can not count. Run it
+ * with {@code perf stat -e cache-misses} for the miss counts.
+ * </p>
+ *
+ * <p>
+ * Usage: {@code ReorderingBenchmark [graph_file seeds_file encoding]}. Without
+ * arguments, only random graphs are used.
+ * </p>
+ *
+ * @author PSantos
+ */
+public class ReorderingBenchmark extends PropagationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new ReorderingBenchmark().run(args, new int[]{1000000, 4000000}, new int[]{8});
+    }
+
+    @Override
+    protected void measure(String name, CsrGraph graph, List<Word> seedWords
+            , PropagationState original, long originalTime) {
+        System.out.println("  original order: " + originalTime / 1000000 + " ms");
+
+        for (ReorderedPropagation.Ordering ordering : ReorderedPropagation.Ordering.values()) {
+            ReorderedPropagation propagation = new ReorderedPropagation().setOrdering(ordering);
+            PropagationState reordered = null;
+            long propagationTime = Long.MAX_VALUE;
+            long reorderingTime = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                reordered = PropagationState.allocateDirect(graph.vertexCount());
+                int[] seeds = SyntheticGraphs.setSeeds(graph, seedWords, reordered);
+                propagation.propagate(graph, seeds, reordered);
+                propagationTime = Math.min(propagationTime, propagation.getPropagationTime());
+                reorderingTime = Math.min(reorderingTime, propagation.getReorderingTime());
+            }
+
+            int different = countDifferent(original, reordered);
+            System.out.println("  " + ordering + " order....: " + propagationTime / 1000000
+                    + " ms (+ " + reorderingTime / 1000000 + " ms renumbering), "
+                    + different + " words with different counters"
+                    + (different == 0 ? " (OK)" : " (ERROR)"));
+        }
+    }
+}
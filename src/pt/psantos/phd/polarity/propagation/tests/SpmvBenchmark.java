@@ -0,0 +1,57 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.SignedCsrMatrix;
+import pt.psantos.phd.polarity.propagation.algorithm.SpmvPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Measures the propagation as sparse matrix-vector products
+ * ({@link SpmvPropagation}): time and throughput (entries of the adjacency
+ * matrix per second) of the propagation over the graph and over its signed
+ * adjacency matrix (plus the time of building the matrix). Also checks that the counters and the
+ * iteration of every word are the same.
+ *
+ * <p>
+ * Usage: {@code SpmvBenchmark [graph_file seeds_file encoding]}. Without
+ * arguments, only random graphs are used.
+ * </p>
+ *
+ * @author PSantos
+ */
+public class SpmvBenchmark extends PropagationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new SpmvBenchmark().run(args, new int[]{1000000, 4000000}, new int[]{4, 16});
+    }
+
+    @Override
+    protected void measure(String name, CsrGraph graph, List<Word> seedWords
+            , PropagationState original, long originalTime) {
+        long entries = graph.edgesEnd(graph.vertexCount() - 1);
+        System.out.println("  queue: " + originalTime / 1000000 + " ms, "
+                + entries * 1000 / Math.max(1, originalTime) + " M entries/s");
+
+        PropagationState spmv = null;
+        long time = Long.MAX_VALUE;
+        long buildTime = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            spmv = PropagationState.allocateDirect(graph.vertexCount());
+            int[] seeds = SyntheticGraphs.setSeeds(graph, seedWords, spmv);
+            long start = System.nanoTime();
+            SignedCsrMatrix matrix = SignedCsrMatrix.fromGraph(graph);
+            buildTime = Math.min(buildTime, System.nanoTime() - start);
+            start = System.nanoTime();
+            SpmvPropagation.propagate(matrix, seeds, spmv);
+            time = Math.min(time, System.nanoTime() - start);
+        }
+
+        int different = countDifferent(original, spmv);
+        System.out.println("  SpMV.: " + time / 1000000 + " ms (+ " + buildTime / 1000000
+                + " ms building the matrix), " + entries * 1000 / Math.max(1, time)
+                + " M entries/s, " + different + " words with different counters"
+                + (different == 0 ? " (OK)" : " (ERROR)"));
+    }
+}
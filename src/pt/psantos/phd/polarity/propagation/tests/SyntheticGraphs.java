@@ -0,0 +1,112 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import pt.psantos.phd.polarity.propagation.algorithm.LexicalRelation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.DirectedCsrGraph;
+import pt.psantos.phd.polarity.propagation.graph.LexicalGraph;
+
+/**
+ * Random graphs and seed words, for the benchmarks.
+ *
+ * @author PSantos
+ */
+public class SyntheticGraphs {
+
+    /**
+     * Creates a random graph with {@code words} words ("w0", "w1", ...) and
+     * about {@code words * averageDegree / 2} relations.
+     *
+     * @param antonymRatio fraction of the relations that are antonyms.
+     */
+    public static CsrGraph randomGraph(int words, int averageDegree
+            , double antonymRatio, long seed) {
+        Random random = new Random(seed);
+        CsrGraph.Builder builder = new CsrGraph.Builder();
+        long edges = (long) words * averageDegree / 2;
+        for (long i = 0; i < edges; i++) {
+            int u = random.nextInt(words);
+            int v = random.nextInt(words);
+            if (u == v) {
+                continue;
+            }
+            builder.addEdge("w" + u, "w" + v, random.nextDouble() < antonymRatio
+                    ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a random directed graph with {@code words} words ("w0", "w1",
+     * ...) and {@code words * averageDegree} relations. As in a pseudograph,
+     * the same relation can appear more than once, and there can be relations
+     * from a word to itself.
+     *
+     * @param antonymRatio fraction of the relations that are antonyms.
+     */
+    public static DirectedCsrGraph randomDirectedGraph(int words, int averageDegree
+            , double antonymRatio, long seed) {
+        Random random = new Random(seed);
+        DirectedCsrGraph.Builder builder = new DirectedCsrGraph.Builder();
+        long edges = (long) words * averageDegree;
+        for (long i = 0; i < edges; i++) {
+            int u = random.nextInt(words);
+            int v = random.nextInt(words);
+            builder.addEdge("w" + u, "w" + v, random.nextDouble() < antonymRatio
+                    ? LexicalRelation.Type.ANTONYM : LexicalRelation.Type.SYNONYM);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Picks {@code count} random words of the graph as seed words, with a
+     * random polarity.
+     */
+    public static List<Word> randomSeeds(LexicalGraph graph, int count, long seed) {
+        Random random = new Random(seed);
+        List<Word> seeds = new ArrayList<Word>();
+        for (int i = 0; i < count; i++) {
+            Word w = new Word(graph.term(random.nextInt(graph.vertexCount())));
+            switch (random.nextInt(3)) {
+                case 0:
+                    w.setAsPositiveSeed();
+                    break;
+                case 1:
+                    w.setAsNegativeSeed();
+                    break;
+                default:
+                    w.setAsNeutralSeed();
+            }
+            seeds.add(w);
+        }
+        return seeds;
+    }
+
+    /**
+     * Copies the seed words to the state, without printing them (unlike
+     * {@link pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation#setSeedWords(pt.psantos.phd.polarity.propagation.graph.LexicalGraph, java.util.List, pt.psantos.phd.polarity.propagation.algorithm.PropagationState)}).
+     *
+     * @return the seed vertices, sorted by id.
+     */
+    public static int[] setSeeds(LexicalGraph graph, List<Word> seedWords, PropagationState state) {
+        int[] seeds = new int[seedWords.size()];
+        boolean[] found = new boolean[graph.vertexCount()];
+        int count = 0;
+        for (Word w : seedWords) {
+            int v = graph.vertexId(w.getWord());
+            if (v >= 0 && !found[v]) {
+                found[v] = true;
+                state.copyState(v, w);
+                seeds[count++] = v;
+            }
+        }
+        seeds = Arrays.copyOf(seeds, count);
+        Arrays.sort(seeds);
+        return seeds;
+    }
+}
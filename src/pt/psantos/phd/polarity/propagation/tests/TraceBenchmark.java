@@ -0,0 +1,96 @@
+package pt.psantos.phd.polarity.propagation.tests;
+
+import java.util.List;
+import pt.psantos.phd.polarity.propagation.algorithm.CsrPropagation;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationState;
+import pt.psantos.phd.polarity.propagation.algorithm.PropagationTrace;
+import pt.psantos.phd.polarity.propagation.algorithm.Word;
+import pt.psantos.phd.polarity.propagation.graph.CsrGraph;
+
+/**
+ * Measures the cost of recording the contributions of the propagation
+ * ({@link PropagationTrace}): time of the propagation without a trace, with
+ * the parents only and with 4 contributions per word, and the memory of the
+ * trace. Also checks that the counters are the same, and that every path
+ * returned by the trace starts by a seed word and follows relations of the
+ * graph.
+ *
+ * <p>
+ * Usage: {@code TraceBenchmark [graph_file seeds_file encoding]}. Without
+ * arguments, only random graphs are used.
+ * </p>
+ *
+ * @author PSantos
+ */
+public class TraceBenchmark extends PropagationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        new TraceBenchmark().run(args, new int[]{1000000, 4000000}, new int[]{8});
+    }
+
+    @Override
+    protected void measure(String name, CsrGraph graph, List<Word> seedWords
+            , PropagationState original, long originalTime) {
+        int n = graph.vertexCount();
+        // Counters (16 bytes), status (1 byte) and queue (4 bytes) of each word
+        long propagationBytes = 21L * n;
+        System.out.println("  no trace: " + originalTime / 1000000 + " ms, "
+                + propagationBytes / (1 << 20) + " MB");
+
+        for (int k : new int[]{1, 4}) {
+            PropagationState traced = null;
+            PropagationTrace trace = null;
+            long time = Long.MAX_VALUE;
+            for (int i = 0; i < RUNS; i++) {
+                traced = PropagationState.allocateDirect(n);
+                int[] seeds = SyntheticGraphs.setSeeds(graph, seedWords, traced);
+                trace = new PropagationTrace(n, k);
+                long start = System.nanoTime();
+                CsrPropagation.propagate(graph, seeds, traced, null, trace);
+                time = Math.min(time, System.nanoTime() - start);
+            }
+
+            int different = countDifferent(original, traced);
+            int badPaths = 0;
+            int paths = 0;
+            for (int v = 0; v < n; v++) {
+                int[] path = trace.path(v, traced);
+                if (path.length > 0) {
+                    paths++;
+                    if (!isValidPath(graph, traced, trace, path)) {
+                        badPaths++;
+                    }
+                }
+            }
+            System.out.println("  trace with " + k + " contribution(s) per word: "
+                    + time / 1000000 + " ms, " + trace.byteSize() / (1 << 20) + " MB ("
+                    + String.format("%.2f", (double) trace.byteSize() / propagationBytes)
+                    + "x), " + different + " different words, " + paths + " paths, "
+                    + badPaths + " invalid paths");
+        }
+    }
+
+    /**
+     * Returns {@code true} if the path starts by a seed word, and each word is
+     * related to the next one by the relation recorded in the trace.
+     */
+    private static boolean isValidPath(CsrGraph graph, PropagationState state
+            , PropagationTrace trace, int[] path) {
+        if (state.getIteration(path[0]) != 0) {
+            return false;
+        }
+        for (int i = 1; i < path.length; i++) {
+            boolean found = false;
+            for (int e = graph.edgesStart(path[i - 1]); e < graph.edgesEnd(path[i - 1]); e++) {
+                if (graph.target(e) == path[i]
+                        && graph.relationCode(e) == trace.getParentRelation(path[i])) {
+                    found = true;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}